@@ -6,7 +6,8 @@ import io.netty.buffer.ByteBuf;
 
 public class Utils {
 
-    public static final int MAGIC = 0x6B3FA0FF;
+    public static final int MAGIC = 0x6B3FA0FF; // protocol v1
+    public static final int MAGIC_V2 = 0x6B3FA0F2; // protocol v2(숫자 header를 고정 길이 바이너리로 전송)
     
     /**
      * 기본적으로 null 체크
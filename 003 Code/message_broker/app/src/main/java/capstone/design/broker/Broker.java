@@ -8,7 +8,9 @@ import capstone.design.netty.server.NettyServer;
 import capstone.design.topic.Topic;
 import capstone.design.topic.TopicManager;
 import capstone.design.topic.disk.DiskTopic;
+import capstone.design.topic.hybrid.HybridTopic;
 import capstone.design.topic.memory.MemoryTopic;
+import capstone.design.topic.memory.WorkQueueTopic;
 
 public class Broker implements AutoCloseable {
 
@@ -66,6 +68,8 @@ public class Broker implements AutoCloseable {
                     topics.put(name, switch (type) {
                         case MEMORY -> MemoryTopic.of(name);
                         case DISK -> DiskTopic.of(name);
+                        case HYBRID -> HybridTopic.of(name);
+                        case QUEUE -> WorkQueueTopic.of(name);
                     });
                 } catch (Exception ignored) {}
             }
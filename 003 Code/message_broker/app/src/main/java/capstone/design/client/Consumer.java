@@ -5,8 +5,12 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
 import capstone.design.message.MessageType;
 import capstone.design.netty.client.NettyClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 
 public class Consumer implements AutoCloseable {
@@ -33,11 +37,47 @@ public class Consumer implements AutoCloseable {
         return responses;
     }
 
+    /**
+     * REQ_PULL_BATCH 한 번으로 연속된 메시지를 최대 message.count()개, maxBytes 이하로 요청.
+     * 응답 payload(MessageBatch)를 메시지 단위로 나누어 반환하며, 메시지가 없으면 빈 목록.
+     */
+    public List<Message> consumeBatch(Message message, long maxBytes) {
+        message.setType(MessageType.REQ_PULL_BATCH)
+            .addHeader("max.bytes", String.valueOf(maxBytes));
+
+        List<Message> messages = new ArrayList<>();
+        try {
+            Message response = client.fetch(message).get(0).join();
+            if (!(response.payload() instanceof byte[] bytes) || response.count() <= 0) {
+                return messages;
+            }
+
+            int offset = response.offset();
+            for (Message record : MessageBatch.decode(Unpooled.wrappedBuffer(bytes))) {
+                // 배치로 저장된 레코드는 offset header가 없으므로 응답의 첫 번째 offset 기준으로 설정
+                if (record.offset() < 0) {
+                    record.setOffset(offset);
+                }
+                offset = record.offset() + 1;
+
+                byte[] payload = (record.payload() instanceof ByteBuf buf) ? ByteBufUtil.getBytes(buf) : null;
+                record.release()
+                    .setType(MessageType.RES_PULL)
+                    .setPayload(payload);
+                messages.add(record);
+            }
+        } catch (Exception e) {
+            System.err.println("? Consumer.consumeBatch(): " + e);
+        }
+
+        return messages;
+    }
+
     public int find(Message message) {
         message.setType(MessageType.REQ_FIND);
         try {
             Message response = client.fetch(message).get(0).join();
-            return Integer.parseInt(response.header("offset", "-1"));
+            return response.offset();
         } catch (Exception e) {
             System.err.println("? Consumer.find(): " + e);
             return -1;
@@ -55,6 +95,37 @@ public class Consumer implements AutoCloseable {
         }
     }
 
+    /**
+     * 작업 큐 토픽에서 pull 한 메시지의 처리 완료를 알림(REQ_ACK, message의 offset 1개).
+     * @return 제거된 메시지 수(lease가 만료되어 다시 전달된 경우 0)
+     */
+    public int ack(Message message) {
+        return ack(message, 1);
+    }
+
+    /**
+     * 작업 큐 토픽에서 pull 한 메시지의 처리 완료를 알림(REQ_ACK, message의 offset부터 count개).
+     * 요청은 topic, partition, offset, count만 담은 header-only 메시지(pull 한 메시지의 payload, header는 보내지 않음).
+     * @return 제거된 메시지 수(lease가 만료되어 다시 전달된 경우 0)
+     */
+    public int ack(Message message, int count) {
+        Message request = Message.builder()
+            .type(MessageType.REQ_ACK)
+            .topicName(message.topicName())
+            .partition(message.partition())
+            .offset(message.offset())
+            .count(count)
+            .build();
+
+        try {
+            Message response = client.fetch(request).get(0).join();
+            return response.header("error", "").isEmpty() ? response.count() : 0;
+        } catch (Exception e) {
+            System.err.println("? Consumer.ack(): " + e);
+            return 0;
+        }
+    }
+
     @Override
     public void close() throws Exception { 
         client.shutdown();
@@ -1,23 +1,57 @@
 package capstone.design.client;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.Utils;
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
 import capstone.design.message.MessageType;
 import capstone.design.netty.client.NettyClient;
+import io.netty.buffer.ByteBufAllocator;
 
 public class Producer implements AutoCloseable {
 
     private final NettyClient client;
+    private final @Nullable RecordAccumulator accumulator;
 
     // constructor =====
     public Producer(String host, int port, String clientId) throws Exception {
         this.client = new NettyClient(host, port, clientId);
+        this.accumulator = null;
+    }
+
+    /**
+     * asyncProduce()를 topic/partition 별로 모아 REQ_PUSH_BATCH로 전송하는 producer.
+     * @param configurer 배치 크기, linger, buffer 크기 등 설정(예: builder -> builder.lingerMillis(10))
+     */
+    public Producer(String host, int port, String clientId, UnaryOperator<RecordAccumulator.Builder> configurer) throws Exception {
+        this.client = new NettyClient(host, port, clientId);
+        this.accumulator = configurer.apply(RecordAccumulator.builder(this::produceBatch)).build();
     }
 
     // method =====
-    // 요청 후 응답 무시
-    public void asyncProduce(Message message) {
-        produce(message);
+    /**
+     * 요청 후 응답을 기다리지 않음.
+     * 배치 모드인 경우 레코드는 배치에 추가되며, buffer가 가득 차면 설정된 시간만큼 대기 후 IllegalStateException.
+     * @return RES_PUSH 응답 future
+     */
+    public CompletableFuture<Message> asyncProduce(Message message) {
+        if (accumulator != null) {
+            return accumulator.append(message);
+        }
+
+        return produce(message);
+    }
+
+    // 배치 모드에서 누적된 레코드를 즉시 전송
+    public void flush() {
+        if (accumulator != null) {
+            accumulator.flush();
+        }
     }
 
     // 요청 후 응답까지 대기
@@ -25,13 +59,46 @@ public class Producer implements AutoCloseable {
         return produce(message).join();
     }
 
+    /**
+     * 같은 topic/partition의 메시지들을 REQ_PUSH_BATCH 하나로 요청 후 응답까지 대기.
+     * topic.name, partition은 첫 번째 메시지의 값을 사용.
+     * @return RES_PUSH_BATCH(offset: 첫 번째 메시지의 offset, count: 저장된 메시지 개수)
+     */
+    public Message syncProduceBatch(List<Message> messages) {
+        return produceBatch(messages).join();
+    }
+
     private CompletableFuture<Message> produce(Message message) {
         message.setType(MessageType.REQ_PUSH);
         return client.fetch(message).get(0);
     }   
+
+    private CompletableFuture<Message> produceBatch(List<Message> messages) {
+        Utils.validate(messages);
+
+        Message first = messages.get(0);
+        messages.forEach(message -> message.setType(MessageType.REQ_PUSH));
+
+        Message batch = Message.builder()
+            .type(MessageType.REQ_PUSH_BATCH)
+            .topicName(first.topicName())
+            .partition(first.partition())
+            .payload(MessageBatch.encode(ByteBufAllocator.DEFAULT, messages))
+            .build();
+
+        return produceBatch(batch);
+    }
+
+    private CompletableFuture<Message> produceBatch(Message batch) {
+        return client.fetch(batch).get(0);
+    }
     
     @Override
     public void close() throws Exception { 
+        if (accumulator != null) {
+            accumulator.close();
+        }
+
         client.shutdown();
     }
 }
\ No newline at end of file
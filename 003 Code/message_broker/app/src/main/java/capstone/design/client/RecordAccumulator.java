@@ -0,0 +1,259 @@
+package capstone.design.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * producer 측 배치 누적기.
+ * topic/partition 별로 레코드를 MessageBatch 포맷으로 모으고, 바이트 수/레코드 수/linger 시간 중
+ * 하나라도 도달하면 REQ_PUSH_BATCH 하나로 전송한 뒤 응답의 base offset으로 각 레코드의 future를 완료.
+ * 전송 대기 중인 레코드의 총 바이트는 bufferBytes로 제한되며, 초과 시 maxBlockMillis 동안 대기 후 실패.
+ */
+public class RecordAccumulator implements AutoCloseable {
+
+    private final Function<Message, CompletableFuture<Message>> sender;
+    private final ByteBufAllocator allocator;
+    private final int batchBytes;
+    private final int batchCount;
+    private final long lingerMillis;
+    private final int bufferBytes;
+    private final long maxBlockMillis;
+
+    private final Semaphore memory;
+    private final Map<String, Batch> batches = new HashMap<>(); // key: topic.name + "/" + partition
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "record-accumulator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed = false;
+
+    // constructor =====
+    private RecordAccumulator(Builder builder) {
+        this.sender = builder.sender;
+        this.allocator = builder.allocator;
+        this.batchBytes = builder.batchBytes;
+        this.batchCount = builder.batchCount;
+        this.lingerMillis = builder.lingerMillis;
+        this.bufferBytes = builder.bufferBytes;
+        this.maxBlockMillis = builder.maxBlockMillis;
+        this.memory = new Semaphore(bufferBytes);
+    }
+
+    // factory method =====
+    public static Builder builder(Function<Message, CompletableFuture<Message>> sender) {
+        return new Builder(sender);
+    }
+
+    // method =====
+    /**
+     * 레코드를 배치에 추가.
+     * 버퍼가 가득 찬 경우 최대 maxBlockMillis 동안 대기하며, 그래도 공간이 없으면 IllegalStateException.
+     * @return 배치 응답 수신 시 RES_PUSH(offset: 해당 레코드의 offset)로 완료되는 future
+     */
+    public CompletableFuture<Message> append(Message message) {
+        if (closed) {
+            throw new IllegalStateException("accumulator 종료됨");
+        }
+
+        // 레코드 인코딩은 lock 밖에서 수행하고, 배치에는 복사 없이 component로 추가
+        message.setType(MessageType.REQ_PUSH);
+        ByteBuf record = allocator.directBuffer();
+        int size;
+        try {
+            size = MessageBatch.write(record, message);
+            if (size > bufferBytes) {
+                throw new IllegalArgumentException("레코드 크기(" + size + ")가 buffer 크기(" + bufferBytes + ") 초과");
+            }
+
+            reserve(size);
+        } catch (RuntimeException e) {
+            record.release();
+            throw e;
+        } finally {
+            message.release();
+        }
+
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        String key = message.topicName() + "/" + message.partition();
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(key, message.topicName(), message.partition());
+                batches.put(key, batch);
+
+                Batch lingering = batch;
+                batch.linger = scheduler.schedule(() -> flush(lingering), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+
+            batch.add(record, size, future);
+            if (batch.futures.size() >= batchCount || batch.bytes >= batchBytes) {
+                batches.remove(key);
+                batch.linger.cancel(false);
+                send(batch);
+            }
+        }
+
+        return future;
+    }
+
+    // 대기 중인 모든 배치를 즉시 전송
+    public void flush() {
+        synchronized (batches) {
+            for (Batch batch : batches.values()) {
+                batch.linger.cancel(false);
+                send(batch);
+            }
+
+            batches.clear();
+        }
+    }
+
+    // 현재 전송 대기 중(응답 전 포함)인 레코드의 총 바이트
+    public int bufferedBytes() {
+        return bufferBytes - memory.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    private void flush(Batch batch) {
+        synchronized (batches) {
+            // 크기 제한 등으로 이미 전송된 배치인 경우 무시
+            if (batches.get(batch.key) != batch) {
+                return;
+            }
+
+            batches.remove(batch.key);
+            send(batch);
+        }
+    }
+
+    /**
+     * 같은 partition의 배치가 순서대로 채널에 쓰이도록 batches lock 안에서 호출.
+     * sender는 채널에 write만 요청하고 반환하므로 lock 점유 시간은 짧음.
+     */
+    private void send(Batch batch) {
+        Message request = Message.builder()
+            .type(MessageType.REQ_PUSH_BATCH)
+            .topicName(batch.topicName)
+            .partition(batch.partition)
+            .payload(batch.records)
+            .build();
+
+        CompletableFuture<Message> response;
+        try {
+            response = sender.apply(request);
+        } catch (RuntimeException e) {
+            request.release();
+            complete(batch, null, e);
+            return;
+        }
+
+        response.whenComplete((result, err) -> complete(batch, result, err));
+    }
+
+    private void complete(Batch batch, Message response, Throwable err) {
+        memory.release(batch.bytes);
+
+        List<CompletableFuture<Message>> futures = batch.futures;
+        if (err != null) {
+            futures.forEach(future -> future.completeExceptionally(err));
+            return;
+        }
+
+        // 에러 응답인 경우 단건 push와 동일하게 error header가 포함된 응답으로 완료
+        int base = response.offset();
+        boolean failed = !response.header("error", "").isEmpty();
+        for (int i = 0; i < futures.size(); i++) {
+            Message result = response.copy();
+            result.setType(MessageType.RES_PUSH);
+            if (!failed) {
+                result.setOffset(base + i);
+            }
+
+            futures.get(i).complete(result);
+        }
+    }
+
+    private void reserve(int size) {
+        try {
+            if (!memory.tryAcquire(size, maxBlockMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("producer buffer 가득 참(" + maxBlockMillis + "ms 대기)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("producer buffer 대기 중 인터럽트", e);
+        }
+    }
+
+    private class Batch {
+
+        private final String key;
+        private final String topicName;
+        private final String partition;
+        private final CompositeByteBuf records = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+        private final List<CompletableFuture<Message>> futures = new ArrayList<>();
+        private int bytes = 0;
+        private ScheduledFuture<?> linger;
+
+        private Batch(String key, String topicName, String partition) {
+            this.key = key;
+            this.topicName = topicName;
+            this.partition = partition;
+        }
+
+        private void add(ByteBuf record, int size, CompletableFuture<Message> future) {
+            records.addComponent(true, record);
+            futures.add(future);
+            bytes += size;
+        }
+    }
+
+    public static class Builder {
+
+        private final Function<Message, CompletableFuture<Message>> sender;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private int batchBytes = 64 * 1024;
+        private int batchCount = 500;
+        private long lingerMillis = 5;
+        private int bufferBytes = 32 * 1024 * 1024;
+        private long maxBlockMillis = 60_000;
+
+        private Builder(Function<Message, CompletableFuture<Message>> sender) {
+            this.sender = sender;
+        }
+
+        public Builder allocator(ByteBufAllocator allocator) { this.allocator = allocator; return this; }
+        public Builder batchBytes(int batchBytes) { this.batchBytes = batchBytes; return this; }
+        public Builder batchCount(int batchCount) { this.batchCount = batchCount; return this; }
+        public Builder lingerMillis(long lingerMillis) { this.lingerMillis = lingerMillis; return this; }
+        public Builder bufferBytes(int bufferBytes) { this.bufferBytes = bufferBytes; return this; }
+        // 0이면 buffer가 가득 찼을 때 대기하지 않고 즉시 실패
+        public Builder maxBlockMillis(long maxBlockMillis) { this.maxBlockMillis = maxBlockMillis; return this; }
+
+        public RecordAccumulator build() {
+            return new RecordAccumulator(this);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.jspecify.annotations.Nullable;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCountUtil;
 
 public class Frame {
     private final ByteBuf header;
@@ -43,6 +44,17 @@ public class Frame {
     }
     public long length() { return headerLength() + payloadLength(); }
 
+    /**
+     * header와 payload(ByteBuf, FileRegion)의 참조를 해제.
+     * 채널에 write하지 않고 직접 소비한 경우(Segment 등)에 사용.
+     */
+    public void release() {
+        ReferenceCountUtil.safeRelease(header);
+        if (payload != null) {
+            ReferenceCountUtil.safeRelease(payload);
+        }
+    }
+
     static class Builder {
         private ByteBuf header = null;
         private Object payload = null;
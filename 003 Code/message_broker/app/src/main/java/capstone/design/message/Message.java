@@ -10,16 +10,18 @@ import org.jspecify.annotations.Nullable;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 
 public class Message {
     private MessageType type; // non-null. builder에서 반드시 설정하도록 설계함
-    private final Map<String, String> header = new HashMap<>();
+    private final MessageHeader header;
     private @Nullable Object payload;
 
     // constructor =========================================
-    private Message(MessageType type, Map<String, String> header, @Nullable Object payload) {
+    private Message(MessageType type, MessageHeader header, @Nullable Object payload) {
         this.type = type;
-        this.header.putAll(header);
+        this.header = header.copy(); // 인코딩된 header 바이트는 공유하고 변경 사항만 따로 관리
         this.payload = payload;
     }
 
@@ -33,14 +35,16 @@ public class Message {
     public String header(String key, String defaultValue) { return header.getOrDefault(key, defaultValue); }
     public int header(String key, int defaultValue) { return parseHeader(key, defaultValue, Integer::parseInt); }
     public long header(String key, long defaultValue) { return parseHeader(key, defaultValue, Long::parseLong); }
+    public long header(MessageHeader.Field field, long defaultValue) { return header.getLong(field, defaultValue); }
     public @Nullable Object payload() { return payload; }
 
     public String topicName() { return header("topic.name", ""); }
     public String partition() { return header("partition", ""); }
     public String clientId() { return header("client.id", ""); }
-    public int offset() { return header("offset", -1); }
-    public long timeout() { return header("timeout", 0L); }
-    public int count() { return header("count", 1); }
+    public int offset() { return (int) header(MessageHeader.Field.OFFSET, -1); }
+    public long timeout() { return header(MessageHeader.Field.TIMEOUT, 0L); }
+    public int count() { return (int) header(MessageHeader.Field.COUNT, 1); }
+    public long timestamp() { return header("timestamp", -1L); } // 시각 기준 seek(REQ_SEEK) 등에서 사용, 없으면 -1
 
     public Map<String, String> condition() {
         Map<String, String> condition = new HashMap<>();
@@ -60,6 +64,11 @@ public class Message {
         return this;
     }
 
+    public Message setOffset(int offset) {
+        header.setLong(MessageHeader.Field.OFFSET, offset);
+        return this;
+    }
+
     public Message addHeader(String key, String value) {
         header.put(key, value);
         return this;
@@ -83,38 +92,55 @@ public class Message {
         return this;
     }
     
+    public Message setPayload(@Nullable Object payload) {
+        this.payload = payload;
+        return this;
+    }
+
     public Message removePayload() {
         this.payload = null;
         return this;
     }
 
+    /**
+     * payload가 ByteBuf, FileRegion 등 참조 카운트 객체인 경우 Message가 가진 참조를 해제.
+     * 해제 후 payload는 null이 되므로 여러 번 호출해도 안전함.
+     * byte[], String 등 참조 카운트가 없는 payload는 그대로 유지.
+     */
+    public Message release() {
+        if (payload instanceof ReferenceCounted counted) {
+            if (counted.refCnt() > 0) {
+                ReferenceCountUtil.release(counted);
+            }
+
+            this.payload = null;
+        }
+
+        return this;
+    }
+
     public Message copy() {
         return new Message(type, header, payload);
     }
 
+    /**
+     * Frame은 payload에 대한 별도의 참조를 가짐(ByteBuf는 retainedDuplicate, FileRegion은 retain).
+     * 따라서 Frame을 사용한 쪽(Segment, MessageEncoder)에서 Frame의 참조를 해제하더라도
+     * Message가 가진 참조는 유지되며, Message의 소유자가 release()를 따로 호출해야 함.
+     */
     public Frame toFrame() {
         Frame.Builder builder = Frame.builder();
 
         // type + header 부분을 ByteBuf로 인코딩
-        ByteBuf headerBuf = Unpooled.directBuffer()
-            .writeByte(type.getByte()) // 메시지 타입 추가
-            .writeByte(header.size()); // header 개수 추가
-        
-        for (Map.Entry<String, String> entry: header.entrySet()) {
-            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
-            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
-
-            // header의 key, value 추가
-            headerBuf.writeShort(key.length).writeBytes(key)
-                .writeInt(value.length).writeBytes(value);
-        }
+        ByteBuf headerBuf = Unpooled.directBuffer();
+        writeHeader(headerBuf);
 
         builder.header(headerBuf);
 
         switch (payload) {
             case byte[] bytes -> builder.payload(Unpooled.directBuffer().writeBytes(bytes));
-            case ByteBuf buf -> builder.payload(buf);
-            case FileRegion region -> builder.payload(region);
+            case ByteBuf buf -> builder.payload(buf.retainedDuplicate());
+            case FileRegion region -> builder.payload(region.retain());
             case null -> {}
             default -> {
                 byte[] bytes = String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
@@ -128,6 +154,19 @@ public class Message {
         return builder.build();
     }
 
+    /**
+     * type + header 개수 + header(key, value) 목록을 out에 기록.
+     * MessageEncoder처럼 하나의 버퍼에 여러 필드를 모아서 쓰는 경우에 사용.
+     */
+    public void writeHeader(ByteBuf out) {
+        writeHeader(out, Protocol.V1);
+    }
+
+    public void writeHeader(ByteBuf out, Protocol protocol) {
+        out.writeByte(type.getByte()); // 메시지 타입 추가
+        header.writeTo(out, protocol); // (v2: 숫자 field +) header 개수 + header 목록 추가
+    }
+
     private <T> T parseHeader(String key, T defaultValue, Function<String, T> parser) {
         String value = header.get(key);
         try {
@@ -153,7 +192,7 @@ public class Message {
     // inner class =========================================
     public static class Builder {
         private MessageType type = null;
-        private final Map<String, String> header = new HashMap<>();
+        private final MessageHeader header = new MessageHeader();
         private Object payload = null;
 
         private Builder() {}
@@ -205,7 +244,7 @@ public class Message {
         }
 
         public Builder partition(int partition) {
-            header.put("partition", String.valueOf(partition));
+            header.setLong(MessageHeader.Field.PARTITION, partition);
             return this;
         }
 
@@ -220,17 +259,22 @@ public class Message {
         }
 
         public Builder timeout(long timeout) {
-            header.put("timeout", String.valueOf(timeout));
+            header.setLong(MessageHeader.Field.TIMEOUT, timeout);
             return this;
         }
 
         public Builder count(int count) {
-            header.put("count", String.valueOf(count));
+            header.setLong(MessageHeader.Field.COUNT, count);
             return this;
         }
 
         public Builder offset(int offset) {
-            header.put("offset", String.valueOf(offset));
+            header.setLong(MessageHeader.Field.OFFSET, offset);
+            return this;
+        }
+
+        public Builder timestamp(long timestamp) {
+            header.put("timestamp", String.valueOf(timestamp));
             return this;
         }
 
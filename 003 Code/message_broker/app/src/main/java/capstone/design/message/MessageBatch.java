@@ -0,0 +1,190 @@
+package capstone.design.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
+
+/**
+ * 여러 메시지를 하나의 payload로 묶는 배치(REQ_PUSH_BATCH 등)의 인코딩/디코딩.
+ * 레코드 포맷은 segment의 .log 레코드와 같으므로 브로커는 배치를 풀지 않고 그대로 append 할 수 있음.
+ *
+ * [header length int][payload length int][checksum int][timestamp long][header(type + header 목록, v1)][payload] 를 레코드 개수만큼 반복
+ * checksum은 header, payload의 CRC32C이며 브로커가 배치를 받을 때, 그리고 segment 복구 시 검증.
+ * timestamp는 레코드를 만든 시각(ms)이며 DiskTopic은 segment에 append 할 때 append 시각으로 덮어씀(checksum에 포함되지 않음).
+ */
+public class MessageBatch {
+
+    public static final int TIMESTAMP_INDEX = Integer.BYTES * 3; // 레코드 시작으로부터 timestamp의 위치
+    public static final int RECORD_PREFIX = TIMESTAMP_INDEX + Long.BYTES; // header length + payload length + checksum + timestamp
+
+    private MessageBatch() {}
+
+    public static ByteBuf encode(ByteBufAllocator allocator, List<Message> messages) {
+        ByteBuf out = allocator.directBuffer();
+        try {
+            for (Message message : messages) {
+                write(out, message);
+            }
+
+            return out;
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * out에 레코드 하나를 추가(timestamp는 현재 시각).
+     * @return 추가된 레코드의 바이트 수
+     */
+    public static int write(ByteBuf out, Message message) {
+        return write(out, message, System.currentTimeMillis());
+    }
+
+    public static int write(ByteBuf out, Message message, long timestamp) {
+        int start = out.writerIndex();
+        out.writeInt(0).writeInt(0).writeInt(0); // 길이, checksum은 header, payload 기록 후 채움
+        out.writeLong(timestamp);
+
+        int headerStart = out.writerIndex();
+        message.writeHeader(out);
+        int headerLength = out.writerIndex() - headerStart;
+
+        int payloadStart = out.writerIndex();
+        switch (message.payload()) {
+            case byte[] bytes -> out.writeBytes(bytes);
+            case ByteBuf buf -> out.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+            case null -> {}
+            case FileRegion ignored -> throw new IllegalArgumentException("FileRegion payload는 배치에 담을 수 없음");
+            default -> out.writeBytes(String.valueOf(message.payload()).getBytes(StandardCharsets.UTF_8));
+        }
+        int payloadLength = out.writerIndex() - payloadStart;
+
+        out.setInt(start, headerLength)
+            .setInt(start + Integer.BYTES, payloadLength)
+            .setInt(start + Integer.BYTES * 2, checksum(out.nioBuffer(headerStart, headerLength + payloadLength)));
+
+        return out.writerIndex() - start;
+    }
+
+    // header, payload 버퍼(순서대로)의 CRC32C(버퍼의 position을 변경하므로 복제본을 전달)
+    public static int checksum(ByteBuffer... buffers) {
+        CRC32C crc = new CRC32C();
+        for (ByteBuffer buffer : buffers) {
+            crc.update(buffer);
+        }
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 배치의 레코드 경계, checksum, header(type, entry 목록)를 검증하고 레코드 개수를 반환(readerIndex는 변경하지 않음).
+     * 검증을 통과한 배치는 decode(), segment의 header index 등에서 예외 없이 읽을 수 있음.
+     * @throws IllegalStateException 레코드 길이가 배치 범위를 벗어나거나 checksum이 다르거나 header가 잘못된 경우
+     */
+    public static int count(ByteBuf batch) {
+        int position = batch.readerIndex();
+        int end = batch.writerIndex();
+        int count = 0;
+        while (position < end) {
+            if (end - position < RECORD_PREFIX) {
+                throw new IllegalStateException("잘못된 배치 레코드 길이");
+            }
+
+            int headerLength = batch.getInt(position);
+            int payloadLength = batch.getInt(position + Integer.BYTES);
+            if (headerLength < 2 || payloadLength < 0 || (long) end - position - RECORD_PREFIX < (long) headerLength + payloadLength) {
+                throw new IllegalStateException("잘못된 배치 레코드 길이");
+            }
+
+            if (batch.getInt(position + Integer.BYTES * 2) != checksum(batch.nioBuffer(position + RECORD_PREFIX, headerLength + payloadLength))) {
+                throw new IllegalStateException("배치 레코드 checksum 불일치");
+            }
+
+            if (!isValidHeader(batch, position + RECORD_PREFIX, headerLength)) {
+                throw new IllegalStateException("잘못된 배치 레코드 header");
+            }
+
+            position += RECORD_PREFIX + headerLength + payloadLength;
+            count++;
+        }
+
+        return count;
+    }
+
+    // type이 유효하고 header entry 목록이 header 끝에서 정확히 끝나는지 여부
+    private static boolean isValidHeader(ByteBuf batch, int start, int length) {
+        int end = start + length;
+        if (batch.getUnsignedByte(start) >= MessageType.values().length) {
+            return false;
+        }
+
+        int count = batch.getUnsignedByte(start + Byte.BYTES);
+        int position = start + Byte.BYTES * 2;
+        for (int i = 0; i < count; i++) {
+            if (end - position < Short.BYTES) {
+                return false;
+            }
+
+            int keyLength = batch.getShort(position);
+            position += Short.BYTES;
+            if (keyLength < 0 || end - position < keyLength + Integer.BYTES) {
+                return false;
+            }
+
+            position += keyLength;
+            int valueLength = batch.getInt(position);
+            position += Integer.BYTES;
+            if (valueLength < 0 || end - position < valueLength) {
+                return false;
+            }
+
+            position += valueLength;
+        }
+
+        return position == end;
+    }
+
+    /**
+     * 배치를 메시지 목록으로 디코딩.
+     * payload는 batch의 retained slice이므로 사용 후 각 메시지를 release() 해야 함.
+     * 디코딩에 실패하면 이미 만든 메시지를 해제한 뒤 예외를 던짐.
+     */
+    public static List<Message> decode(ByteBuf batch) {
+        List<Message> messages = new ArrayList<>();
+        try {
+            decode(batch, messages);
+            return messages;
+        } catch (RuntimeException e) {
+            messages.forEach(Message::release);
+            throw e;
+        }
+    }
+
+    private static void decode(ByteBuf batch, List<Message> messages) {
+        ByteBuf in = batch.duplicate();
+        while (in.isReadable()) {
+            int headerLength = in.readInt();
+            int payloadLength = in.readInt();
+            in.skipBytes(Integer.BYTES + Long.BYTES); // checksum, timestamp
+
+            int headerEnd = in.readerIndex() + headerLength;
+            Message.Builder builder = Message.builder()
+                .type(in.readByte())
+                .header(MessageHeader.read(in, in.readUnsignedByte()));
+            in.readerIndex(headerEnd);
+
+            if (payloadLength > 0) {
+                builder.payload(in.readRetainedSlice(payloadLength));
+            }
+
+            messages.add(builder.build());
+        }
+    }
+}
@@ -26,8 +26,9 @@ public class MessageCleaner {
                 return;
             }
 
+            long now = System.currentTimeMillis();
             topics.forEach(topic -> {
-                topic.clean();
+                topic.clean(now);
             });
         }, interval, interval, TimeUnit.MILLISECONDS);
     }
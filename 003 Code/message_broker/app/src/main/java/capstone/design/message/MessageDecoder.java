@@ -1,11 +1,9 @@
 package capstone.design.message;
 
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.jspecify.annotations.Nullable;
 
-import capstone.design.Utils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -14,11 +12,12 @@ public class MessageDecoder extends ByteToMessageDecoder {
 
     private long length;
     private State state = State.READ_MAGIC;
+    private Protocol protocol = Protocol.V1; // 현재 읽고 있는 프레임의 버전
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        List<Message> messages = new ArrayList<>();
         try {
-            List<Message> messages = new ArrayList<>();
             while (true) {
                 if (state == State.READ_MAGIC && !readMagic(in)) {
                     break;
@@ -39,12 +38,15 @@ public class MessageDecoder extends ByteToMessageDecoder {
             }
 
             if (!messages.isEmpty()) {
+                // 응답을 요청과 같은 버전으로 인코딩하도록 채널에 마지막으로 받은 버전 기록
+                ctx.channel().attr(Protocol.KEY).set(protocol);
                 out.add(messages);
             }
         } catch (Exception e) {
             System.err.println("? MessageDecoder.decode(): " + e); 
 
-            // 디코딩 중 예외가 발생하면 지금까지 읽은 데이터 버리고 다음 메시지부터 다시 디코딩
+            // 디코딩 중 예외가 발생하면 지금까지 읽은 데이터 버리고(이미 디코딩한 메시지의 payload도 해제) 다음 메시지부터 다시 디코딩
+            messages.forEach(Message::release);
             length = 0;
             state = State.READ_MAGIC;
         }
@@ -54,27 +56,28 @@ public class MessageDecoder extends ByteToMessageDecoder {
      * channel handler가 아닌 곳에서 직접 메시지를 디코딩해야 할 때 사용
      */
     public Message decode(ByteBuf in) throws Exception {
-        int magic = in.readInt();
-        if (magic != Utils.MAGIC) {
+        Protocol protocol = Protocol.of(in.readInt());
+        if (protocol == null) {
             return null;
         }
 
         long length = in.readLong();
 
-        return readMessage(length, in);
+        return readMessage(length, protocol, in);
     }
 
     private boolean readMagic(ByteBuf in) {
         while (in.readableBytes() >= Integer.BYTES) {
             in.markReaderIndex(); // 현재 readerIndex 저장
 
-            int magic = in.readInt();
-            if (magic != Utils.MAGIC) {
+            Protocol protocol = Protocol.of(in.readInt());
+            if (protocol == null) {
                 in.resetReaderIndex(); // readerIndex를 저장된 위치로 복원
                 in.skipBytes(1); // 1byte 버림
                 continue;
             }
 
+            this.protocol = protocol;
             this.state = State.READ_LENGTH;
             return true;
         }
@@ -94,10 +97,10 @@ public class MessageDecoder extends ByteToMessageDecoder {
     }
 
     private @Nullable Message readMessage(ByteBuf in) throws Exception {
-        return readMessage(length, in);
+        return readMessage(length, protocol, in);
     }
 
-    private @Nullable Message readMessage(long length, ByteBuf in) throws Exception {
+    private @Nullable Message readMessage(long length, Protocol protocol, ByteBuf in) throws Exception {
         if (in.readableBytes() < length) {
             return null;
         }
@@ -108,26 +111,18 @@ public class MessageDecoder extends ByteToMessageDecoder {
         byte type = in.readByte();
         builder.type(type);
 
-        // 헤더 읽기
-        byte headerCount = in.readByte();
-        for (int i = 0; i < headerCount; i++) {
-            short keyLength = in.readShort();
-            String key = in.readString(keyLength, StandardCharsets.UTF_8);
+        // 헤더 읽기(v2는 숫자 field를 바이너리로 읽고, 나머지 key-value는 조회 시점에 디코딩)
+        builder.header(MessageHeader.read(in, protocol));
 
-            int valueLength = in.readInt();
-            String value = in.readString(valueLength, StandardCharsets.UTF_8);
-
-            builder.header(key, value);
-        }
-
-        // payload 읽기
+        /**
+         * payload 읽기.
+         * 복사 없이 inbound 버퍼의 retained slice를 payload로 넘김.
+         * slice의 소유권은 Message에 있으며, 사용이 끝나면 Message.release()로 해제해야 함.
+         */
         if (in.readableBytes() >= Integer.BYTES) {
             int payloadLength = in.readInt();
             if (payloadLength > 0 && in.readableBytes() >= payloadLength) {
-                byte[] payload = new byte[payloadLength];
-                in.readBytes(payload);
-
-                builder.payload(payload);
+                builder.payload(in.readRetainedSlice(payloadLength));
             }
         }
 
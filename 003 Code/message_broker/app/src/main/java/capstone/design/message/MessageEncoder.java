@@ -1,39 +1,100 @@
 package capstone.design.message;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import capstone.design.Utils;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
 
 public class MessageEncoder extends ChannelOutboundHandlerAdapter {
+
+    // payload가 이 크기 이하이면 prefix 버퍼에 복사, 초과하면 CompositeByteBuf로 묶어서 복사 없이 전송
+    private static final int COPY_THRESHOLD = 8 * 1024;
+    private static final int HEADER_CAPACITY = 256;
+    private static final int LENGTH_INDEX = Integer.BYTES; // magic 다음 위치
+
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-        if (msg instanceof Message message) {
-            encode(ctx.alloc(), message).forEach(ctx::write);
+        if (!(msg instanceof Message message)) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        List<Object> out;
+        try {
+            Protocol protocol = ctx.channel().attr(Protocol.KEY).get();
+            out = encode(ctx.alloc(), message, (protocol == null) ? Protocol.V1 : protocol);
+        } finally {
+            // 채널에 쓰인 Message의 payload 참조는 인코딩 결과가 따로 가지므로 Message 쪽 참조는 여기서 해제
+            message.release();
         }
+
+        /**
+         * 대부분의 경우 out은 하나의 버퍼(혹은 CompositeByteBuf)이므로 pipeline을 한 번만 거침.
+         * payload가 FileRegion인 경우에만 prefix 버퍼와 FileRegion 두 번으로 나누어 write.
+         */
+        for (int i = 0; i < out.size() - 1; i++) {
+            ctx.write(out.get(i), ctx.voidPromise());
+        }
+        ctx.write(out.get(out.size() - 1), promise);
     }
 
+    /**
+     * protocol에 맞는 magic, length, type, header, payload length를 ctx.alloc()에서 얻은 하나의 버퍼에 기록.
+     * @return 인코딩된 버퍼 하나 혹은 [prefix 버퍼, FileRegion]
+     */
     public List<Object> encode(ByteBufAllocator allocator, Message message) {
-        List<Object> out = new ArrayList<>();
-        
-        Frame frame = message.toFrame();
-        ByteBuf headerBuf = allocator.directBuffer()
-            .writeInt(Utils.MAGIC)
-            .writeLong(frame.length() + Integer.BYTES);
-
-        out.add(headerBuf);
-        out.add(frame.header());
-
-        out.add(Unpooled.buffer().writeInt(frame.payloadLength()));
-        if (frame.isPayload()) {
-            out.add(frame.payload());
+        return encode(allocator, message, Protocol.V1);
+    }
+
+    public List<Object> encode(ByteBufAllocator allocator, Message message, Protocol protocol) {
+        Object payload = message.payload();
+        if (payload != null && !(payload instanceof byte[] || payload instanceof ByteBuf || payload instanceof FileRegion)) {
+            payload = String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
         }
 
-        return out;
+        int payloadLength = switch (payload) {
+            case byte[] bytes -> bytes.length;
+            case ByteBuf buf -> buf.readableBytes();
+            case FileRegion region -> (int) region.count();
+            case null, default -> 0;
+        };
+
+        boolean copyPayload = payload instanceof byte[] || (payload instanceof ByteBuf && payloadLength <= COPY_THRESHOLD);
+        ByteBuf buf = allocator.directBuffer(HEADER_CAPACITY + (copyPayload ? payloadLength : 0));
+        try {
+            buf.writeInt(protocol.magic())
+                .writeLong(0); // length는 header 기록 이후에 채움
+
+            int start = buf.writerIndex();
+            message.writeHeader(buf, protocol);
+            buf.writeInt(payloadLength);
+
+            long length = (buf.writerIndex() - start) + (long) payloadLength;
+            buf.setLong(LENGTH_INDEX, length);
+
+            switch (payload) {
+                case byte[] bytes -> buf.writeBytes(bytes);
+                case ByteBuf payloadBuf when copyPayload -> buf.writeBytes(payloadBuf, payloadBuf.readerIndex(), payloadLength);
+                case ByteBuf payloadBuf -> {
+                    CompositeByteBuf composite = allocator.compositeDirectBuffer(2);
+                    composite.addComponents(true, buf, payloadBuf.retainedDuplicate());
+                    return List.of(composite);
+                }
+                case FileRegion region -> {
+                    return List.of(buf, region.retain());
+                }
+                case null, default -> {}
+            }
+
+            return List.of(buf);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
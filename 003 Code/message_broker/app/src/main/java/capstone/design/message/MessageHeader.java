@@ -0,0 +1,606 @@
+package capstone.design.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jspecify.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 인코딩된 header 바이트를 그대로 보관하고, key가 처음 조회될 때만 디코딩하는 header 맵.
+ * 브로커는 topic.name, partition, client.id 등 일부 key만 조회하므로
+ * 메시지마다 모든 header를 String/HashMap으로 만들던 비용을 줄이기 위해 사용.
+ *
+ * raw: 디코딩된 적 없는 원본 entry 목록(short keyLength, key, int valueLength, value 반복)
+ * overrides: 이후 변경된 entry(value가 null이면 raw의 entry가 삭제되었다는 의미)
+ * 변경되지 않은 raw entry는 writeTo()에서 원본 바이트를 그대로 복사함.
+ * fields: offset, count 등 숫자 header(Field)는 문자열이 아닌 숫자로 보관하고,
+ *         protocol v2에서는 고정 길이 바이너리로, v1에서는 기존처럼 문자열 entry로 인코딩.
+ */
+public class MessageHeader extends AbstractMap<String, String> {
+
+    private static final int[] EMPTY_POSITIONS = new int[0];
+    private static final Field[] FIELDS = Field.values();
+    private static final long INVALID = Long.MIN_VALUE; // 숫자 파싱 실패 표시
+
+    private byte[] raw;
+    private int[] positions = EMPTY_POSITIONS; // raw 내 각 entry의 시작 위치(entry 개수 + 1, 마지막은 끝 위치)
+    private String[] keys; // 디코딩된 key 캐시
+    private String[] values; // 디코딩된 value 캐시
+    private @Nullable Map<String, @Nullable String> overrides;
+    private final long[] fields = new long[FIELDS.length];
+    private int fieldMask; // fields 중 값이 설정된 항목(Field.ordinal() 비트)
+
+    public MessageHeader() {}
+
+    private MessageHeader(byte[] raw, int[] positions) {
+        this.raw = raw;
+        this.positions = positions;
+    }
+
+    // factory method =====
+    /**
+     * protocol에 맞게 header를 읽음.
+     * v1: header 개수 + entry 목록
+     * v2: field 마스크 + 고정 길이 field + header 개수 + entry 목록
+     */
+    public static MessageHeader read(ByteBuf in, Protocol protocol) {
+        if (protocol == Protocol.V1) {
+            return read(in, in.readUnsignedByte());
+        }
+
+        int mask = in.readUnsignedByte();
+        long[] values = new long[FIELDS.length];
+        for (Field field : FIELDS) {
+            values[field.ordinal()] = (field.width == Long.BYTES) ? in.readLong() : in.readInt();
+        }
+
+        MessageHeader header = read(in, in.readUnsignedByte());
+        for (Field field : FIELDS) {
+            if ((mask & field.bit()) != 0) {
+                header.setLong(field, values[field.ordinal()]);
+            }
+        }
+
+        return header;
+    }
+
+    /**
+     * in의 readerIndex부터 count개의 entry를 읽어 raw 바이트로 보관(디코딩하지 않음).
+     */
+    public static MessageHeader read(ByteBuf in, int count) {
+        int start = in.readerIndex();
+        int[] positions = new int[count + 1];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            positions[i] = position;
+
+            int keyLength = in.getShort(start + position);
+            int valueLength = in.getInt(start + position + Short.BYTES + keyLength);
+            position += Short.BYTES + keyLength + Integer.BYTES + valueLength;
+            if (keyLength < 0 || valueLength < 0 || position > in.readableBytes()) {
+                throw new IndexOutOfBoundsException("잘못된 header 길이");
+            }
+        }
+        positions[count] = position;
+
+        byte[] raw = new byte[position];
+        in.readBytes(raw);
+
+        return new MessageHeader(raw, positions);
+    }
+
+    /**
+     * bytes[offset]부터 count개의 entry를 raw 바이트로 보관(디코딩하지 않음).
+     */
+    public static MessageHeader read(byte[] bytes, int offset, int count) {
+        int[] positions = new int[count + 1];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            positions[i] = position;
+
+            int keyLength = getShort(bytes, position);
+            int valueLength = getInt(bytes, position + Short.BYTES + keyLength);
+            position += Short.BYTES + keyLength + Integer.BYTES + valueLength;
+            if (keyLength < 0 || valueLength < 0 || position > bytes.length) {
+                throw new IndexOutOfBoundsException("잘못된 header 길이");
+            }
+        }
+        positions[count] = position;
+
+        return new MessageHeader(bytes, positions);
+    }
+
+    // method =====
+    public MessageHeader copy() {
+        MessageHeader copy = new MessageHeader(raw, positions);
+        if (overrides != null) {
+            copy.overrides = new HashMap<>(overrides);
+        }
+
+        System.arraycopy(fields, 0, copy.fields, 0, fields.length);
+        copy.fieldMask = fieldMask;
+
+        return copy;
+    }
+
+    /**
+     * 숫자 header 값 조회.
+     * field로 설정된 값이 있으면 그대로 반환하고, 없으면 문자열 entry를 예외 없이 파싱.
+     */
+    public long getLong(Field field, long defaultValue) {
+        if ((fieldMask & field.bit()) != 0) {
+            return fields[field.ordinal()];
+        }
+
+        long value = parse(getString(field.key), field);
+        return value == INVALID ? defaultValue : value;
+    }
+
+    public void setLong(Field field, long value) {
+        shadow(field.key);
+        fields[field.ordinal()] = value;
+        fieldMask |= field.bit();
+    }
+
+    public void writeTo(ByteBuf out, Protocol protocol) {
+        if (protocol == Protocol.V1) {
+            writeTo(out);
+            return;
+        }
+
+        out.writeByte(fieldMask);
+        for (Field field : FIELDS) {
+            long value = fields[field.ordinal()];
+            if (field.width == Long.BYTES) {
+                out.writeLong(value);
+            } else {
+                out.writeInt((int) value);
+            }
+        }
+
+        out.writeByte(size() - Integer.bitCount(fieldMask));
+        writeEntries(out);
+    }
+
+    /**
+     * header 개수 + entry 목록을 out에 기록.
+     * 변경되지 않은 raw entry는 디코딩/재인코딩 없이 원본 바이트를 복사.
+     */
+    public void writeTo(ByteBuf out) {
+        out.writeByte(size());
+        writeEntries(out);
+
+        // v1에서는 field도 문자열 entry로 기록
+        for (Field field : FIELDS) {
+            if ((fieldMask & field.bit()) == 0) {
+                continue;
+            }
+
+            byte[] key = field.key.getBytes(StandardCharsets.UTF_8);
+            byte[] value = String.valueOf(fields[field.ordinal()]).getBytes(StandardCharsets.UTF_8);
+            out.writeShort(key.length).writeBytes(key)
+                .writeInt(value.length).writeBytes(value);
+        }
+    }
+
+    // field를 제외한 entry 목록 기록
+    private void writeEntries(ByteBuf out) {
+        for (int i = 0; i < rawCount(); i++) {
+            if (isShadowed(i)) {
+                continue;
+            }
+
+            out.writeBytes(raw, positions[i], positions[i + 1] - positions[i]);
+        }
+
+        if (overrides == null) {
+            return;
+        }
+
+        for (Map.Entry<String, @Nullable String> entry : overrides.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(key.length).writeBytes(key)
+                .writeInt(value.length).writeBytes(value);
+        }
+    }
+
+    // override =====
+    @Override
+    public @Nullable String get(Object key) {
+        if (!(key instanceof String string)) {
+            return null;
+        }
+
+        Field field = Field.of(string);
+        if (field != null && (fieldMask & field.bit()) != 0) {
+            return String.valueOf(fields[field.ordinal()]);
+        }
+
+        return getString(string);
+    }
+
+    private @Nullable String getString(String string) {
+        if (overrides != null && overrides.containsKey(string)) {
+            return overrides.get(string);
+        }
+
+        int index = indexOf(string);
+        return index < 0 ? null : rawValue(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Field에 해당하는 key이고 값이 정규화된 숫자 문자열이면 field로 저장, 아니면 문자열 entry로 저장.
+     */
+    @Override
+    public @Nullable String put(String key, String value) {
+        String old = get(key);
+
+        Field field = Field.of(key);
+        long parsed = (field == null) ? INVALID : parse(value, field);
+        if (parsed != INVALID) {
+            setLong(field, parsed);
+            return old;
+        }
+
+        if (field != null) {
+            fieldMask &= ~field.bit();
+        }
+
+        overrides().put(key, value);
+        return old;
+    }
+
+    @Override
+    public @Nullable String remove(Object key) {
+        if (!(key instanceof String string)) {
+            return null;
+        }
+
+        String old = get(string);
+        if (old == null) {
+            return null;
+        }
+
+        Field field = Field.of(string);
+        if (field != null) {
+            fieldMask &= ~field.bit();
+        }
+
+        shadow(string);
+        return old;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> map) {
+        // 비어있는 header에 다른 MessageHeader를 넣는 경우 디코딩 없이 raw 바이트를 공유
+        if (map instanceof MessageHeader other && raw == null && fieldMask == 0 && (overrides == null || overrides.isEmpty())) {
+            raw = other.raw;
+            positions = other.positions;
+            keys = null;
+            values = null;
+            overrides = (other.overrides == null) ? null : new HashMap<>(other.overrides);
+            System.arraycopy(other.fields, 0, fields, 0, fields.length);
+            fieldMask = other.fieldMask;
+            return;
+        }
+
+        super.putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        raw = null;
+        positions = EMPTY_POSITIONS;
+        keys = null;
+        values = null;
+        overrides = null;
+        fieldMask = 0;
+    }
+
+    @Override
+    public int size() {
+        int size = rawCount() + Integer.bitCount(fieldMask);
+        if (overrides == null) {
+            return size;
+        }
+
+        for (Map.Entry<String, @Nullable String> entry : overrides.entrySet()) {
+            boolean inRaw = indexOf(entry.getKey()) >= 0;
+            if (inRaw && entry.getValue() == null) {
+                size--;
+            } else if (!inRaw && entry.getValue() != null) {
+                size++;
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() { return new EntryIterator(); }
+
+            @Override
+            public int size() { return MessageHeader.this.size(); }
+        };
+    }
+
+    // private method =====
+    // raw/overrides에 있는 key의 문자열 entry를 제거(raw entry는 삭제 표시)
+    private void shadow(String key) {
+        if (indexOf(key) >= 0) {
+            overrides().put(key, null);
+        } else if (overrides != null) {
+            overrides.remove(key);
+        }
+    }
+
+    /**
+     * 정규화된 10진수 문자열만 숫자로 변환("+1", "01", "-0" 등은 문자열 그대로 보관해야 원본이 유지되므로 제외).
+     * @return 변환된 값 혹은 INVALID
+     */
+    private static long parse(@Nullable String value, Field field) {
+        if (value == null || value.isEmpty() || value.length() > 18) {
+            return INVALID;
+        }
+
+        boolean negative = value.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (start == value.length() || (value.charAt(start) == '0' && value.length() > start + 1) || (negative && value.equals("-0"))) {
+            return INVALID;
+        }
+
+        long result = 0;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        result = negative ? -result : result;
+        if (field.width == Integer.BYTES && (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE)) {
+            return INVALID;
+        }
+
+        return result;
+    }
+
+    private Map<String, @Nullable String> overrides() {
+        if (overrides == null) {
+            overrides = new HashMap<>();
+        }
+
+        return overrides;
+    }
+
+    private int rawCount() {
+        return positions.length == 0 ? 0 : positions.length - 1;
+    }
+
+    // raw entry가 overrides에 의해 변경/삭제되었는지 여부(key를 디코딩하지 않고 비교)
+    private boolean isShadowed(int index) {
+        if (overrides == null) {
+            return false;
+        }
+
+        for (String key : overrides.keySet()) {
+            if (keyEquals(index, key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < rawCount(); i++) {
+            if (keyEquals(i, key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * raw key를 디코딩하지 않고 비교.
+     * ASCII key는 바이트와 문자를 직접 비교하고, 그 외에는 UTF-8로 인코딩해서 비교.
+     */
+    private boolean keyEquals(int index, String key) {
+        int position = positions[index];
+        int keyLength = getShort(raw, position);
+        int keyStart = position + Short.BYTES;
+
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                return keyBytes.length == keyLength
+                    && Arrays.equals(raw, keyStart, keyStart + keyLength, keyBytes, 0, keyLength);
+            }
+
+            if (i >= keyLength || raw[keyStart + i] != c) {
+                return false;
+            }
+        }
+
+        return key.length() == keyLength;
+    }
+
+    private String rawKey(int index) {
+        if (keys == null) {
+            keys = new String[rawCount()];
+        }
+
+        if (keys[index] == null) {
+            int position = positions[index];
+            int keyLength = getShort(raw, position);
+            keys[index] = new String(raw, position + Short.BYTES, keyLength, StandardCharsets.UTF_8);
+        }
+
+        return keys[index];
+    }
+
+    private String rawValue(int index) {
+        if (values == null) {
+            values = new String[rawCount()];
+        }
+
+        if (values[index] == null) {
+            int position = positions[index];
+            int valuePosition = position + Short.BYTES + getShort(raw, position);
+            int valueLength = getInt(raw, valuePosition);
+            values[index] = new String(raw, valuePosition + Integer.BYTES, valueLength, StandardCharsets.UTF_8);
+        }
+
+        return values[index];
+    }
+
+    private static int getShort(byte[] bytes, int index) {
+        return (short) (((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF));
+    }
+
+    private static int getInt(byte[] bytes, int index) {
+        return ((bytes[index] & 0xFF) << 24)
+            | ((bytes[index + 1] & 0xFF) << 16)
+            | ((bytes[index + 2] & 0xFF) << 8)
+            | (bytes[index + 3] & 0xFF);
+    }
+
+    // inner class =====
+    /**
+     * protocol v2에서 고정 길이 바이너리로 전송되는 숫자 header.
+     */
+    public enum Field {
+        REQUEST_ID("request.id", Long.BYTES),
+        OFFSET("offset", Long.BYTES),
+        COUNT("count", Integer.BYTES),
+        TIMEOUT("timeout", Long.BYTES),
+        PARTITION("partition", Integer.BYTES);
+
+        private final String key;
+        private final int width;
+
+        Field(String key, int width) {
+            this.key = key;
+            this.width = width;
+        }
+
+        public String key() { return key; }
+        private int bit() { return 1 << ordinal(); }
+
+        public static @Nullable Field of(String key) {
+            return switch (key) {
+                case "request.id" -> REQUEST_ID;
+                case "offset" -> OFFSET;
+                case "count" -> COUNT;
+                case "timeout" -> TIMEOUT;
+                case "partition" -> PARTITION;
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * raw entry(삭제/변경되지 않은 것) -> overrides entry(value가 null이 아닌 것) -> field 순서로 순회.
+     * value는 getValue() 호출 시점에 디코딩.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int rawIndex = 0;
+        private int fieldIndex = 0;
+        private final Iterator<Map.Entry<String, @Nullable String>> overrideIterator =
+            (overrides == null) ? null : overrides.entrySet().iterator();
+        private Map.Entry<String, String> next = advance();
+
+        @Override
+        public boolean hasNext() { return next != null; }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<String, String> current = next;
+            next = advance();
+            return current;
+        }
+
+        private Map.Entry<String, String> advance() {
+            while (rawIndex < rawCount()) {
+                int index = rawIndex++;
+                if (!isShadowed(index)) {
+                    return new RawEntry(index);
+                }
+            }
+
+            while (overrideIterator != null && overrideIterator.hasNext()) {
+                Map.Entry<String, @Nullable String> entry = overrideIterator.next();
+                if (entry.getValue() != null) {
+                    return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+                }
+            }
+
+            while (fieldIndex < FIELDS.length) {
+                Field field = FIELDS[fieldIndex++];
+                if ((fieldMask & field.bit()) != 0) {
+                    return new SimpleImmutableEntry<>(field.key, String.valueOf(fields[field.ordinal()]));
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private class RawEntry implements Map.Entry<String, String> {
+        private final int index;
+
+        private RawEntry(int index) { this.index = index; }
+
+        @Override
+        public String getKey() { return rawKey(index); }
+
+        @Override
+        public String getValue() { return rawValue(index); }
+
+        @Override
+        public String setValue(String value) { return put(getKey(), value); }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> entry
+                && getKey().equals(entry.getKey())
+                && getValue().equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode() { return getKey().hashCode() ^ getValue().hashCode(); }
+
+        @Override
+        public String toString() { return getKey() + "=" + getValue(); }
+    }
+}
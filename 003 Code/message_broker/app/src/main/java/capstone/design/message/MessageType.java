@@ -4,7 +4,10 @@ public enum MessageType {
     REQ_PULL, RES_PULL, // topic/partition에서 메시지 요청
     REQ_PUSH, RES_PUSH, // topic/partition에 메시지 저장
     REQ_FIND, RES_FIND, // topic/partition에서 메시지 검색
-    REQ_SEEK, RES_SEEK; // topic/partition에서 특정 오프셋으로 이동
+    REQ_SEEK, RES_SEEK, // topic/partition에서 특정 오프셋으로 이동
+    REQ_PUSH_BATCH, RES_PUSH_BATCH, // topic/partition에 여러 메시지를 한 번에 저장(MessageBatch)
+    REQ_PULL_BATCH, RES_PULL_BATCH, // topic/partition에서 연속된 메시지를 한 번에 요청(MessageBatch)
+    REQ_ACK, RES_ACK; // 작업 큐 topic(WorkQueueTopic)에서 lease 받은 메시지의 처리 완료(offset부터 count개 제거)
 
     public byte getByte() { return (byte) this.ordinal(); }
     public static int SIZE = Byte.BYTES;
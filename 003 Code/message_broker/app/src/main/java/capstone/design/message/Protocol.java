@@ -0,0 +1,39 @@
+package capstone.design.message;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.Utils;
+import io.netty.util.AttributeKey;
+
+/**
+ * 프레임 포맷 버전. magic 값으로 구분함.
+ * V1: 모든 header를 문자열 key-value로 전송(py_client 등 기존 클라이언트)
+ * V2: offset, count, timeout, partition, request.id를 고정 길이 바이너리 field로 전송하고 나머지만 key-value로 전송
+ *
+ * 서버는 채널에서 마지막으로 받은 프레임의 버전으로 응답하므로 v1, v2 클라이언트가 함께 접속할 수 있음.
+ */
+public enum Protocol {
+    V1(Utils.MAGIC),
+    V2(Utils.MAGIC_V2);
+
+    // 채널별로 사용 중인 버전(MessageDecoder가 설정, MessageEncoder가 참조)
+    public static final AttributeKey<Protocol> KEY = AttributeKey.valueOf("capstone.design.protocol");
+
+    private final int magic;
+
+    Protocol(int magic) {
+        this.magic = magic;
+    }
+
+    public int magic() { return magic; }
+
+    public static @Nullable Protocol of(int magic) {
+        for (Protocol protocol : values()) {
+            if (protocol.magic == magic) {
+                return protocol;
+            }
+        }
+
+        return null;
+    }
+}
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import capstone.design.message.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 
@@ -15,27 +17,43 @@ public class ClientInboundHandler extends ChannelInboundHandlerAdapter {
         this.requests = requests;
     }
     
+    // 디코더는 한 번에 읽은 메시지를 List<Message>로 전달
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (msg instanceof Message message) {
-            String requestId = message.header("request.id", "");
-            if (requestId.isEmpty()) {
-                return;
-            }
+        for (Object object : (List<?>) msg) {
+            Message message = (Message) object;
 
-            List<CompletableFuture<Message>> futures = requests.apply(requestId);
-            if (futures == null || futures.isEmpty()) {
-                return;
+            /**
+             * 디코더는 payload를 inbound 버퍼의 slice로 넘기지만,
+             * 클라이언트 사용자는 참조 카운트를 관리하지 않으므로 byte[]로 복사 후 slice를 해제.
+             */
+            if (message.payload() instanceof ByteBuf payload) {
+                byte[] bytes = ByteBufUtil.getBytes(payload);
+                message.release().setPayload(bytes);
             }
 
-            message.removeHeader("request.id");
+            complete(message);
+        }
+    }
+
+    private void complete(Message message) {
+        String requestId = message.header("request.id", "");
+        if (requestId.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<Message>> futures = requests.apply(requestId);
+        if (futures == null || futures.isEmpty()) {
+            return;
+        }
+
+        message.removeHeader("request.id");
 
-            // 완료되지 않은 future를 찾아서 완료시킴
-            for (CompletableFuture<Message> future : futures) {
-                if (!future.isDone()) {
-                    future.complete(message);
-                    break;
-                }
+        // 완료되지 않은 future를 찾아서 완료시킴
+        for (CompletableFuture<Message> future : futures) {
+            if (!future.isDone()) {
+                future.complete(message);
+                break;
             }
         }
     }
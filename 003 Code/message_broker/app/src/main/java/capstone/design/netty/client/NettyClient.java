@@ -12,6 +12,8 @@ import java.util.function.Function;
 import capstone.design.message.Message;
 import capstone.design.message.MessageDecoder;
 import capstone.design.message.MessageEncoder;
+import capstone.design.message.MessageType;
+import capstone.design.message.Protocol;
 import capstone.design.netty.NettyInitializer;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
@@ -49,7 +51,12 @@ public class NettyClient {
             .handler(initializer);
 
         ChannelFuture future = bootstrap.connect(InetAddress.getByName(host), port).sync();
-        return future.channel();
+
+        // 자바 클라이언트는 protocol v2로 요청(서버는 요청과 같은 버전으로 응답)
+        Channel channel = future.channel();
+        channel.attr(Protocol.KEY).set(Protocol.V2);
+
+        return channel;
     }
 
     // public CompletableFuture<List<Message>> fetch(Message message) {
@@ -64,8 +71,9 @@ public class NettyClient {
          * consumer.consume() 등에서 여러 개의 메시지를 요청할 수 있음
          * 이러한 경우를 대비해 요청 개수만큼 future를 생성하여 처리
          * 단, count가 없거나 1인 경우에도 List<Message> 형태이며, 내부 요소는 1개임
+         * pull 이외의 요청(배치 push 등)은 count와 관계없이 응답이 하나임
          */
-        int count = Integer.parseInt(message.header("count", "1"));
+        int count = (message.type() == MessageType.REQ_PULL) ? message.count() : 1;
         List<CompletableFuture<Message>> futures = new ArrayList<>();
         for (int i = 0; i < count; i++) {
             CompletableFuture<Message> future = new CompletableFuture<>();
@@ -0,0 +1,14 @@
+package capstone.design.topic;
+
+/**
+ * 일시적인 이유(메모리 한도 초과 등)로 요청을 처리하지 못한 경우.
+ * 응답에 error와 함께 retryable header가 포함되며, 클라이언트는 잠시 후 같은 요청을 다시 보낼 수 있음.
+ */
+public class RetryableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RetryableException(String message) {
+        super(message);
+    }
+}
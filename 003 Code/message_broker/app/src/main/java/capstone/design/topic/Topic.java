@@ -1,25 +1,97 @@
 package capstone.design.topic;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import org.jspecify.annotations.Nullable;
 
 import capstone.design.message.Message;
+import io.netty.buffer.ByteBuf;
 
 public interface Topic {
     String name();
     int push(String partition, Message message);
+    /**
+     * MessageBatch 포맷의 레코드 count개를 연속된 offset으로 저장.
+     * records는 호출 동안에만 사용할 수 있으며 해제는 호출자가 수행.
+     * @return 첫 번째 레코드의 offset 혹은 -1(실패 시)
+     */
+    int pushBatch(String partition, ByteBuf records, int count);
     @Nullable TopicRecord peek(String partition, String clientId, Message message);
+    /**
+     * client의 현재 offset부터 최대 maxCount개, maxBytes 이하(첫 레코드는 크기와 관계없이 포함)의 레코드를 한 번에 조회.
+     * client offset은 변경하지 않으므로 처리 후 commit(lastOffset) 필요.
+     * @return 레코드 묶음 혹은 null(읽을 레코드가 없는 경우)
+     */
+    @Nullable TopicBatch peekBatch(String partition, String clientId, int maxCount, long maxBytes);
     void commit(String partition, String clientId, int offset, Message message);
-    int find(String partition, Map<String, String> condition, Message message);
     boolean seek(String partition, String clientId, int offset, Message message);
+    /**
+     * client offset을 저장 시각이 timestamp(ms) 이상인 첫 레코드로 이동.
+     * @return 이동한 offset(이후의 레코드가 없으면 다음에 저장될 offset) 혹은 -1(실패 시)
+     */
+    int seekTime(String partition, String clientId, long timestamp, Message message);
     int subscribe(String partition, Supplier<Boolean> callback);
     void unsubscribe(String partition, int key);
     void notify(String partition);
     int count(String partition, Message message);
     void clean();
 
+    /**
+     * now(ms)를 기준 시각으로 만료된 레코드를 제거.
+     * MessageCleaner가 주기마다 시각을 한 번 읽어 모든 토픽에 전달(레코드마다 시각을 읽지 않도록).
+     * 기본적으로 clean()을 호출(segment 단위로 만료를 확인하는 DiskTopic 등).
+     */
+    default void clean(long now) {
+        clean();
+    }
+
+    /**
+     * partition을 event loop를 막지 않고 사용할 수 있게 되면 완료되는 future(기본은 항상 완료).
+     * DiskTopic은 시작 시 로딩 중인 partition이면 로딩이 끝난 뒤 완료되며,
+     * 완료되지 않았다면 TopicManager는 채널의 읽기를 멈추고 완료된 뒤 요청을 처리.
+     */
+    default CompletableFuture<Void> ready(String partition) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * partition에 저장할 공간이 생기면 완료되는 future(기본은 항상 완료).
+     * 완료되지 않았다면 TopicManager는 producer 채널의 읽기를 멈추고 완료된 뒤 push를 처리하며,
+     * 예외로 완료되면(대기 시간 초과) retryable 에러로 응답.
+     */
+    default CompletableFuture<Void> capacity(String partition) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * push(혹은 pushBatch)의 ack를 보내도 되는 시점에 완료되는 future.
+     * 기본적으로 즉시 완료되며, fsync 이후 ack 하는 토픽(DiskTopic, Durability.ACK)은 fsync 이후 완료.
+     */
+    default CompletableFuture<Void> sync(String partition) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * condition을 만족하는 첫 레코드의 offset(없으면 -1)을 호출 스레드(event loop)를 막지 않고 찾음.
+     * 메모리 토픽은 바로 완료된 future를 반환하며, 스캔이 필요한 토픽(DiskTopic)은 별도 스레드에서 수행하고 완료 시 offset을 전달.
+     * 결과를 기다리는 동기 버전은 제공하지 않음(event loop가 스캔 전체를 기다리지 않도록).
+     */
+    CompletableFuture<Integer> findAsync(String partition, Map<String, String> condition, Message message);
+
+    /**
+     * clientId가 lease 중인 [offset, offset + count) 범위의 레코드를 처리 완료로 제거(REQ_ACK).
+     * 작업 큐 토픽(WorkQueueTopic)만 지원하며, 기본적으로 -1 반환.
+     * @return 제거한 레코드 수 혹은 -1(지원하지 않는 토픽)
+     */
+    default int ack(String partition, String clientId, int offset, int count) {
+        return -1;
+    }
+
+    // 브로커 종료 시 호출(기본적으로 아무것도 하지 않음)
+    default void close() {}
+
     // @Nullable TopicRecord peek(Message message);
     // void commit(Message message);
     // boolean seek(Message message);
@@ -29,5 +101,5 @@ public interface Topic {
     // int count(Message message);
     // void clean();
 
-    public enum Type { MEMORY, DISK }
+    public enum Type { MEMORY, DISK, HYBRID, QUEUE }
 }
@@ -0,0 +1,38 @@
+package capstone.design.topic;
+
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * 연속된 레코드 묶음(REQ_PULL_BATCH 응답용).
+ * payload는 MessageBatch 포맷이며, DiskTopic은 segment log 구간을 그대로 가리키는 FileRegion,
+ * MemoryTopic은 레코드를 복사한 ByteBuf.
+ * payload의 참조는 호출자가 가지므로 응답 메시지에 담거나 release()로 해제해야 함.
+ */
+public class TopicBatch {
+
+    private final int offset;
+    private final int lastOffset;
+    private final int count;
+    private final Object payload;
+
+    public TopicBatch(int offset, int lastOffset, int count, Object payload) {
+        this.offset = offset;
+        this.lastOffset = lastOffset;
+        this.count = count;
+        this.payload = payload;
+    }
+
+    public int offset() { return offset; } // 첫 번째 레코드의 offset
+    public int lastOffset() { return lastOffset; } // 마지막 레코드의 offset(commit 대상)
+    public int count() { return count; }
+    public Object payload() { return payload; }
+
+    public void release() {
+        ReferenceCountUtil.safeRelease(payload);
+    }
+
+    @Override
+    public String toString() {
+        return "{offset=" + offset + ", lastOffset=" + lastOffset + ", count=" + count + "}";
+    }
+}
@@ -1,10 +1,12 @@
 package capstone.design.topic;
 
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
 import capstone.design.message.MessageCleaner;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -13,6 +15,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import capstone.design.message.MessageProcessor;
@@ -20,12 +23,19 @@ import capstone.design.message.MessageType;
 
 import org.jspecify.annotations.Nullable;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
 
 public class TopicManager implements MessageProcessor {
 
     // static field =====
     private static final long DEFAULT_CLEAN_INTERVAL = 3 * (60 * 1000); // 3분
+    private static final long DEFAULT_PULL_BATCH_BYTES = 1024 * 1024; // pullBatch 응답 하나의 최대 크기(max.bytes header가 없는 경우)
+    // 채널에서 partition 로딩을 기다리는 마지막 요청(처리되면 완료), 없으면 null
+    private static final AttributeKey<CompletableFuture<Void>> PENDING_READY = AttributeKey.valueOf("pendingReady");
+    // 채널에서 저장 공간을 기다리는 마지막 push 요청(처리되면 완료), 없으면 null
+    private static final AttributeKey<CompletableFuture<Void>> PENDING_PUSH = AttributeKey.valueOf("pendingPush");
 
     // field =====
     private final Map<String, Topic> topics = new ConcurrentHashMap<>();
@@ -48,27 +58,131 @@ public class TopicManager implements MessageProcessor {
     public @Nullable Topic topic(String name) { return topics.get(name); }
 
     // public method =====
-    public void shutdownNow() { cleaner.shutdownNow(); }
+    public void shutdownNow() {
+        cleaner.shutdownNow();
+        topics.values().forEach(Topic::close);
+    }
 
     // override =====
     @Override
     public void process(ChannelHandlerContext context, Message message) {
         Map<MessageType, BiConsumer<ChannelHandlerContext, Message>> handlers = Map.of(
-            MessageType.REQ_PUSH, this::push,
+            MessageType.REQ_PUSH, (ctx, msg) -> withCapacity(ctx, msg, this::push),
+            MessageType.REQ_PUSH_BATCH, (ctx, msg) -> withCapacity(ctx, msg, this::pushBatch),
             MessageType.REQ_PULL, this::pull,
+            MessageType.REQ_PULL_BATCH, this::pullBatch,
             MessageType.REQ_FIND, this::find,
-            MessageType.REQ_SEEK, this::seek
+            MessageType.REQ_SEEK, this::seek,
+            MessageType.REQ_ACK, this::acknowledge
         );
 
         BiConsumer<ChannelHandlerContext, Message> handler = handlers.get(message.type());
         if (handler == null) {
+            message.release();
             return;
         }
 
-        handler.accept(context, message);
+        // payload는 push에서만 사용하므로 그 외의 요청은 디코더가 넘겨준 payload 참조를 즉시 해제
+        if (message.type() != MessageType.REQ_PUSH && message.type() != MessageType.REQ_PUSH_BATCH) {
+            message.release();
+        }
+
+        whenReady(context, message, handler);
     }
 
     // private method =====
+    /**
+     * partition이 로딩 중이면(Topic.ready()) 채널의 읽기를 멈추고 로딩이 끝난 뒤 event loop에서 handler를 호출(event loop에서 로딩하거나 대기하지 않음).
+     * withCapacity와 같이 이미 기다리는 요청이 있는 채널의 요청은 그 뒤에 처리하여 순서를 유지.
+     */
+    private void whenReady(ChannelHandlerContext context, Message message, BiConsumer<ChannelHandlerContext, Message> handler) {
+        inOrder(context, message, handler, PENDING_READY, this::ready, handler);
+    }
+
+    /**
+     * topic에 저장할 공간이 있으면(Topic.capacity()) 바로 handler(push, pushBatch)를 호출하고,
+     * 없으면 채널의 읽기를 멈추고 공간이 생긴 뒤 event loop에서 호출(backpressure, event loop는 대기하지 않음).
+     * 이미 기다리는 요청이 있는 채널의 요청은 그 뒤에 처리하여 순서를 유지하며, 기다리는 요청이 모두 처리되면 읽기를 재개.
+     */
+    private void withCapacity(ChannelHandlerContext context, Message message, BiConsumer<ChannelHandlerContext, Message> handler) {
+        inOrder(context, message, handler, PENDING_PUSH, this::capacity, (ctx, msg) -> rejectPush(ctx, msg, "메모리 한도 초과(대기 시간 초과)"));
+    }
+
+    /**
+     * condition이 완료되어 있고 채널(key)에서 기다리는 요청이 없으면 바로 handler를 호출하고,
+     * 아니면 채널의 읽기를 멈추고 앞선 요청과 condition이 완료된 뒤 event loop에서 호출.
+     * @param onTimeout condition이 예외로 완료된 경우 handler 대신 호출
+     */
+    private void inOrder(ChannelHandlerContext context, Message message, BiConsumer<ChannelHandlerContext, Message> handler,
+            AttributeKey<CompletableFuture<Void>> key, Function<Message, CompletableFuture<Void>> condition, BiConsumer<ChannelHandlerContext, Message> onTimeout) {
+        CompletableFuture<Void> pending = context.channel().attr(key).get();
+        CompletableFuture<Void> waiting = (pending != null) ? pending : condition.apply(message);
+        if (pending == null && waiting.isDone()) {
+            handler.accept(context, message);
+            return;
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        context.channel().attr(key).set(done);
+        context.channel().config().setAutoRead(false);
+        await(context, message, handler, key, condition, onTimeout, waiting, done);
+    }
+
+    private void await(ChannelHandlerContext context, Message message, BiConsumer<ChannelHandlerContext, Message> handler,
+            AttributeKey<CompletableFuture<Void>> key, Function<Message, CompletableFuture<Void>> condition, BiConsumer<ChannelHandlerContext, Message> onTimeout,
+            CompletableFuture<Void> waiting, CompletableFuture<Void> done) {
+        waiting.whenComplete((ignored, e) -> context.executor().execute(() -> {
+            // 앞선 요청을 기다렸거나 다른 채널이 먼저 공간을 사용한 경우 다시 확인
+            CompletableFuture<Void> next = (e == null) ? condition.apply(message) : null;
+            if (next != null && !next.isDone()) {
+                await(context, message, handler, key, condition, onTimeout, next, done);
+                return;
+            }
+
+            if (e != null) {
+                onTimeout.accept(context, message);
+            } else {
+                handler.accept(context, message);
+            }
+
+            // 다른 조건(로딩, 저장 공간)을 기다리는 요청이 없을 때만 읽기를 재개
+            if (context.channel().attr(key).compareAndSet(done, null)
+                    && context.channel().attr(PENDING_READY).get() == null
+                    && context.channel().attr(PENDING_PUSH).get() == null) {
+                context.channel().config().setAutoRead(true);
+            }
+            done.complete(null);
+        }));
+    }
+
+    private CompletableFuture<Void> ready(Message message) {
+        Topic topic = topics.get(message.topicName());
+        return (topic == null) ? CompletableFuture.completedFuture(null) : topic.ready(message.partition());
+    }
+
+    private CompletableFuture<Void> capacity(Message message) {
+        Topic topic = topics.get(message.topicName());
+        return (topic == null) ? CompletableFuture.completedFuture(null) : topic.capacity(message.partition());
+    }
+
+    // 저장하지 않고 retryable 에러로 응답
+    private void rejectPush(ChannelHandlerContext context, Message message, String error) {
+        System.err.println("? TopicManager.rejectPush(): " + error);
+        Message.Builder builder = Message.builder()
+            .type((message.type() == MessageType.REQ_PUSH) ? MessageType.RES_PUSH : MessageType.RES_PUSH_BATCH)
+            .header(message.header())
+            .error(error)
+            .header("retryable", "true");
+        message.release();
+
+        context.channel().writeAndFlush(builder.build());
+    }
+
+    /**
+     * message의 payload(디코더가 넘겨준 inbound 버퍼의 slice) 소유권은 push가 가짐.
+     * topic.push()는 호출 동안에만 payload를 사용할 수 있고, 이후에도 필요하면 직접 복사해야 함.
+     * 처리 결과와 관계없이 push 종료 시 payload 참조를 해제.
+     */
     private void push(ChannelHandlerContext context, Message message) {
         Message.Builder builder = Message.builder()
             .type(MessageType.RES_PUSH)
@@ -93,14 +207,89 @@ public class TopicManager implements MessageProcessor {
         } catch (Exception e) {
             System.err.println("? TopicManager.push(): " + e);
             builder.error(e.getMessage());
+            if (e instanceof RetryableException) {
+                builder.header("retryable", "true");
+            }
+        } finally {
+            message.release();
+        }
+
+        ack(context, builder, success ? topic : null, message.partition());
+    }
+
+    /**
+     * payload(MessageBatch)에 담긴 레코드들을 연속된 offset으로 저장하고,
+     * 첫 번째 offset과 레코드 개수를 RES_PUSH_BATCH 하나로 응답.
+     * payload 소유권은 push와 동일하게 pushBatch가 가짐.
+     */
+    private void pushBatch(ChannelHandlerContext context, Message message) {
+        Message.Builder builder = Message.builder()
+            .type(MessageType.RES_PUSH_BATCH)
+            .header(message.header());
+        Topic topic = null;
+        boolean success = false;
+
+        try {
+            topic = topics.get(message.topicName());
+            if (topic == null) {
+                throw new Exception("topic.name 없음");
+            }
+
+            if (!(message.payload() instanceof ByteBuf records)) {
+                throw new Exception("배치 payload 없음");
+            }
+
+            int count = MessageBatch.count(records);
+            int offset = topic.pushBatch(message.partition(), records, count);
+            if (offset < 0) {
+                throw new Exception("배치 저장 실패");
+            }
+
+            success = true;
+            builder.offset(offset)
+                .count(count);
+        } catch (Exception e) {
+            System.err.println("? TopicManager.pushBatch(): " + e);
+            builder.error(e.getMessage());
+            if (e instanceof RetryableException) {
+                builder.header("retryable", "true");
+            }
+        } finally {
+            message.release();
         }
 
-        context.channel().writeAndFlush(builder.build());
+        ack(context, builder, success ? topic : null, message.partition());
+    }
 
-        // 알림 전송(실제로는 callback 호출) 로직은 푸시 성공 후, ack 전송 이후에 수행
-        if (topic != null && success) {
-            topic.notify(message.partition());
+    /**
+     * push, pushBatch의 응답 전송.
+     * topic.sync()가 완료된 이후(DiskTopic이 Durability.ACK인 경우 fsync 이후) ack를 보내고 채널의 event loop에서 구독자에게 알림.
+     * topic이 null이면(저장 실패) 즉시 응답.
+     */
+    private void ack(ChannelHandlerContext context, Message.Builder builder, @Nullable Topic topic, String partition) {
+        if (topic == null) {
+            context.channel().writeAndFlush(builder.build());
+            return;
         }
+
+        topic.sync(partition).whenComplete((ignored, e) -> {
+            if (e != null) {
+                System.err.println("? TopicManager.ack(): " + e);
+                builder.error("fsync 실패");
+            }
+
+            context.channel().writeAndFlush(builder.build());
+
+            /*
+             * 알림 전송(실제로는 callback 호출) 로직은 푸시 성공 후, ack 전송 이후에 수행
+             * Durability.ACK이면 GroupCommitter 스레드에서 완료되므로, 구독자의 peek, write가 fsync 뒤에 줄 서지 않도록 채널의 event loop에서 수행
+             */
+            if (context.executor().inEventLoop()) {
+                topic.notify(partition);
+            } else {
+                context.executor().execute(() -> topic.notify(partition));
+            }
+        });
     }
 
     private void pull(ChannelHandlerContext context, Message message) {
@@ -196,6 +385,96 @@ public class TopicManager implements MessageProcessor {
         callback.get();
     }
 
+    /**
+     * client offset부터 연속된 레코드를 RES_PULL_BATCH 하나로 응답.
+     * payload는 MessageBatch 포맷이며(DiskTopic은 segment log 구간을 FileRegion 하나로 그대로 전송),
+     * offset, count header로 첫 번째 레코드의 offset과 레코드 수를 전달.
+     * 레코드가 없으면 timeout 동안 구독하며 대기하고, 그래도 없으면 count 0과 error로 응답.
+     */
+    private void pullBatch(ChannelHandlerContext context, Message message) {
+        Topic topic = topics.get(message.topicName());
+        if (topic == null) {
+            message.setType(MessageType.RES_PULL_BATCH)
+                .addHeader("error", "topic is null");
+            context.channel().writeAndFlush(message);
+            return;
+        }
+
+        String partition = message.partition();
+        String clientId = message.clientId();
+        int maxCount = Math.max(1, message.count());
+        long maxBytes;
+        try {
+            maxBytes = Long.parseLong(message.header("max.bytes", String.valueOf(DEFAULT_PULL_BATCH_BYTES)));
+        } catch (NumberFormatException e) {
+            maxBytes = DEFAULT_PULL_BATCH_BYTES;
+        }
+        long budget = maxBytes;
+
+        AtomicInteger subscribeKey = new AtomicInteger();
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicBoolean isWrite = new AtomicBoolean(false);
+        Consumer<TopicBatch> write = (batch) -> {
+            if (!isWrite.compareAndSet(false, true)) {
+                if (batch != null) {
+                    batch.release();
+                }
+
+                return;
+            }
+
+            Message.Builder builder = Message.builder()
+                .type(MessageType.RES_PULL_BATCH)
+                .header(message.header());
+
+            if (batch == null) {
+                builder.count(0)
+                    .error("메시지 획득 실패");
+            } else {
+                builder.offset(batch.offset())
+                    .count(batch.count())
+                    .payload(batch.payload());
+            }
+
+            context.channel().writeAndFlush(builder.build());
+
+            // pull과 동일하게 전송한 레코드까지 커밋
+            if (batch != null) {
+                topic.commit(partition, clientId, batch.lastOffset(), message);
+            }
+        };
+        Supplier<Boolean> callback = new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                if (cancel.get()) {
+                    return false;
+                }
+
+                TopicBatch batch = topic.peekBatch(partition, clientId, maxCount, budget);
+                if (batch == null) {
+                    int key = topic.subscribe(partition, this);
+                    subscribeKey.set(key);
+                } else {
+                    write.accept(batch);
+                }
+
+                return true;
+            }
+        };
+
+        // 이미 레코드가 있다면 timeout과 관계없이 바로 응답하도록 최초 호출을 먼저 수행
+        callback.get();
+        if (isWrite.get()) {
+            return;
+        }
+
+        scheduler.schedule(() -> {
+            cancel.set(true);
+            topic.unsubscribe(partition, subscribeKey.get());
+            write.accept(null);
+        }, message.timeout(), TimeUnit.MILLISECONDS);
+    }
+
     private void find(ChannelHandlerContext context, Message message) {
         Topic topic = topics.get(message.topicName());
         if (topic == null) {
@@ -207,13 +486,13 @@ public class TopicManager implements MessageProcessor {
         AtomicBoolean cancel = new AtomicBoolean(false);
         AtomicBoolean isWrite = new AtomicBoolean(false);
         Consumer<Integer> write = (offset) -> {
-            if (isWrite.get()) {
+            // find 완료(스캔 스레드)와 timeout(scheduler)이 동시에 호출할 수 있음
+            if (!isWrite.compareAndSet(false, true)) {
                 return;
             }
 
-            isWrite.set(true);
             message.setType(MessageType.RES_FIND)
-                .addHeader("offset", offset);
+                .setOffset(offset);
 
             if (offset < 0) {
                 message.addHeader("error", "find 실패");
@@ -224,17 +503,28 @@ public class TopicManager implements MessageProcessor {
         Supplier<Boolean> callback = new Supplier<Boolean>() {
             @Override
             public Boolean get() {
-                int offset = topic.find(message.partition(), message.condition(), message);
                 if (cancel.get()) {
                     return false;
                 }
 
-                if (offset < 0) {
-                    int key = topic.subscribe(message.partition(), this);
-                    subscribeKey.set(key);
-                } else {
-                    write.accept(offset);
-                }
+                // 스캔이 필요한 find는 별도 스레드에서 수행되므로 결과는 완료 시점에 처리
+                topic.findAsync(message.partition(), message.condition(), message).whenComplete((offset, e) -> {
+                    if (e != null) {
+                        System.err.println("? TopicManager.find(): " + e);
+                        return;
+                    }
+
+                    if (cancel.get()) {
+                        return;
+                    }
+
+                    if (offset < 0) {
+                        int key = topic.subscribe(message.partition(), this);
+                        subscribeKey.set(key);
+                    } else {
+                        write.accept(offset);
+                    }
+                });
 
                 return true;
             }
@@ -260,7 +550,16 @@ public class TopicManager implements MessageProcessor {
                 throw new NullPointerException("topic is null");
             }
 
-            if (!topic.seek(message.partition(), message.clientId(), message.offset(), message)) {
+            // timestamp header가 있으면 해당 시각 이후의 첫 레코드로 이동하고 이동한 offset을 응답
+            long timestamp = message.timestamp();
+            if (timestamp >= 0) {
+                int offset = topic.seekTime(message.partition(), message.clientId(), timestamp, message);
+                if (offset < 0) {
+                    throw new IllegalStateException("seek 실패");
+                }
+
+                builder.offset(offset);
+            } else if (!topic.seek(message.partition(), message.clientId(), message.offset(), message)) {
                 throw new IllegalStateException("seek 실패");
             }
         } catch (Exception e) {
@@ -271,6 +570,38 @@ public class TopicManager implements MessageProcessor {
         context.channel().writeAndFlush(builder.build());
     }
 
+    /**
+     * 작업 큐 토픽에서 lease 받은 offset부터 count개의 레코드를 처리 완료로 제거하고, 제거한 개수를 RES_ACK로 응답.
+     * lease가 만료되어 다시 전달된(혹은 전달 대기 중인) 레코드는 제거되지 않으며, 하나도 제거하지 못하면 error로 응답.
+     */
+    private void acknowledge(ChannelHandlerContext context, Message message) {
+        Message.Builder builder = Message.builder()
+            .type(MessageType.RES_ACK)
+            .header(message.header());
+
+        try {
+            Topic topic = topics.get(message.topicName());
+            if (topic == null) {
+                throw new NullPointerException("topic is null");
+            }
+
+            int acked = topic.ack(message.partition(), message.clientId(), message.offset(), message.count());
+            if (acked < 0) {
+                throw new UnsupportedOperationException("ack를 지원하지 않는 토픽: " + topic.name());
+            }
+
+            builder.count(acked);
+            if (acked == 0) {
+                builder.error("lease 없음(만료 혹은 다른 client의 lease)");
+            }
+        } catch (Exception e) {
+            System.err.println("? TopicManager.acknowledge(): " + e);
+            builder.error(e.getMessage());
+        }
+
+        context.channel().writeAndFlush(builder.build());
+    }
+
     /**
      * 토픽/파티션에서 count 만큼 pull 시도.
      * 다만, 메시지가 만료되는 등 실패 가능성이 있기 때문에 반환 메시지의 개수는 count보다 작을 수 있음.
@@ -11,15 +11,27 @@ public class TopicRecord {
     private final long createdAt;
 
     public TopicRecord(Message message) {
+        this(message, System.currentTimeMillis());
+    }
+
+    // 저장된 시각으로 복원하는 레코드(DiskTopic 등)
+    public TopicRecord(Message message, long createdAt) {
         this.message = message;
-        this.createdAt = System.currentTimeMillis();
+        this.createdAt = createdAt;
     }
 
     public Message message() { return message; }
-    public boolean isExpired(long retention) { return (System.currentTimeMillis() - createdAt) > retention; }
+    public long createdAt() { return createdAt; }
+    public boolean isExpired(long retention) { return isExpired(retention, System.currentTimeMillis()); }
+    // 여러 레코드를 확인할 때는 시각을 한 번만 읽어서 전달
+    public boolean isExpired(long retention, long now) { return (now - createdAt) > retention; }
 
     public boolean matches(Map<String, String> condition) {
-        Map<String, String> header = message.header();
+        return matches(message.header(), condition);
+    }
+
+    // header가 condition의 모든 key-value를 포함하는지 여부(레코드를 만들지 않고 header만으로 확인할 때 사용)
+    public static boolean matches(Map<String, String> header, Map<String, String> condition) {
         for (Map.Entry<String, String> entry : condition.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
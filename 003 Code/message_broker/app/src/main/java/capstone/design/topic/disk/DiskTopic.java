@@ -1,5 +1,6 @@
 package capstone.design.topic.disk;
 
+import capstone.design.topic.TopicBatch;
 import capstone.design.topic.TopicRecord;
 import capstone.design.topic.disk.segment.SegmentManager;
 import capstone.design.topic.subscribe.SubscribeManager;
@@ -13,12 +14,20 @@ import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import org.jspecify.annotations.Nullable;
 import capstone.design.message.Message;
 import capstone.design.topic.Topic;
+import io.netty.buffer.ByteBuf;
 
 public class DiskTopic implements Topic {
 
@@ -26,57 +35,159 @@ public class DiskTopic implements Topic {
     private static final String SEGMENT_MANAGERS_FILE = "segment_managers.log";
     private static final long DEFAULT_DURATION = 10 * (60 * 1000); // 10분
     private static final long DEFAULT_RETENTION = 30 * (60 * 1000); // 30분
+    // 모든 DiskTopic이 공유하는 partition 로딩 스레드 풀
+    private static final int LOAD_THREADS = Integer.getInteger("broker.disk.loadThreads", Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(Math.max(1, LOAD_THREADS), runnable -> {
+        Thread thread = new Thread(runnable, "disk-topic-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final String name; 
     private final long duration;
     private final long retention;
     private final Path root;
     private final Map<String, SegmentManager> segmentManagers = new ConcurrentHashMap<>();
+    private final Map<String, PendingPartition> pendingPartitions = new ConcurrentHashMap<>(); // 아직 로딩되지 않은 partition
     private final SubscribeManager subscribeManager = new SubscribeManager();
+    private final Durability durability;
+    private final @Nullable String compactionKey; // partition별로 이 header가 같은 메시지는 마지막 메시지만 보관(SegmentManager.compact)
+    private final @Nullable GroupCommitter committer; // MESSAGES, ACK 모드에서 사용
+    private final @Nullable ScheduledExecutorService syncScheduler; // INTERVAL 모드에서 사용
+    private final Map<String, AtomicLong> unsyncedCounts = new ConcurrentHashMap<>(); // MESSAGES 모드, partition별 fsync 이후 기록된 메시지 수
 
-    private DiskTopic(String name, long duration, long retention) {
+    private DiskTopic(Path directory, String name, long duration, long retention, Durability durability, @Nullable String compactionKey) {
         this.name = name;
         this.duration = duration;
         this.retention = retention;
+        this.durability = durability;
+        this.compactionKey = compactionKey;
 
-        this.root = TOPIC_DIRECTORY.resolve(name);
+        this.root = directory.resolve(name);
 
         loadSegmentManagers();
+
+        this.committer = switch (durability.mode()) {
+            case MESSAGES, ACK -> new GroupCommitter(name);
+            default -> null;
+        };
+
+        if (durability.mode() == Durability.Mode.INTERVAL) {
+            this.syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "disk-sync-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncScheduler.scheduleWithFixedDelay(this::force, durability.value(), durability.value(), TimeUnit.MILLISECONDS);
+        } else {
+            this.syncScheduler = null;
+        }
     }
 
-    public static DiskTopic of(String name) { return new DiskTopic(name, DEFAULT_DURATION, DEFAULT_RETENTION); }
-    public static DiskTopic of(String name, long duration, long retention) { return new DiskTopic(name, duration, retention); }
+    public static DiskTopic of(String name) { return new DiskTopic(TOPIC_DIRECTORY, name, DEFAULT_DURATION, DEFAULT_RETENTION, Durability.none(), null); }
+    public static DiskTopic of(String name, long duration, long retention) { return new DiskTopic(TOPIC_DIRECTORY, name, duration, retention, Durability.none(), null); }
+    public static DiskTopic of(String name, long duration, long retention, Durability durability) { return new DiskTopic(TOPIC_DIRECTORY, name, duration, retention, durability, null); }
+    public static DiskTopic of(String name, long duration, long retention, Durability durability, @Nullable String compactionKey) { return new DiskTopic(TOPIC_DIRECTORY, name, duration, retention, durability, compactionKey); }
+    // directory/name에 저장(다른 topic의 저장소로 사용하는 경우, HybridTopic 등)
+    public static DiskTopic of(String name, long duration, long retention, Path directory) { return new DiskTopic(directory, name, duration, retention, Durability.none(), null); }
+
+    public Durability durability() { return durability; }
+    public @Nullable String compactionKey() { return compactionKey; }
 
     @Override
     public String name() { return name; }
 
     @Override
     public int push(String partition, Message message) {
-        SegmentManager segmentManager = segmentManagers.computeIfAbsent(partition, ignored -> {
-            try {
-                SegmentManager newSegmentManager = new SegmentManager(root.resolve(partition), duration, retention);
+        SegmentManager segmentManager = getOrCreate(partition);
+        if (segmentManager == null) {
+            return -1;
+        }
 
-                if (!appendSegmentManager(newSegmentManager)) {
-                    return null;
-                }
-                
-                return newSegmentManager;
-            } catch (IOException e) {
-                System.err.println("? DiskTopic.push(): " + e);
-                return null;
-            }
-        });
-        
+        int offset = segmentManager.write(message);
+        if (offset >= 0) {
+            written(partition, segmentManager, 1);
+        }
+
+        return offset;
+    }
+
+    @Override
+    public int pushBatch(String partition, ByteBuf records, int count) {
+        SegmentManager segmentManager = getOrCreate(partition);
         if (segmentManager == null) {
             return -1;
         }
 
-        return segmentManager.write(message);
+        int offset = segmentManager.writeBatch(records, count);
+        if (offset >= 0) {
+            written(partition, segmentManager, count);
+        }
+
+        return offset;
+    }
+
+    @Override
+    public CompletableFuture<Void> sync(String partition) {
+        SegmentManager segmentManager = segmentManager(partition);
+        if (durability.mode() != Durability.Mode.ACK || segmentManager == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return committer.commit(segmentManager);
+    }
+
+    // 로딩 중인 partition이면 LOADER의 로딩이 끝난 뒤 완료(로딩에 실패해도 정상 완료, 이후 접근 시 다시 생성)
+    @Override
+    public CompletableFuture<Void> ready(String partition) {
+        PendingPartition pending = pendingPartitions.get(partition);
+        if (pending == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return pending.future().thenApply(ignored -> null);
+    }
+
+    // 모든 partition의 기록된 내용을 디스크에 반영
+    public void force() {
+        segmentManagers.values().forEach(SegmentManager::force);
+    }
+
+    // fsync 스레드 종료 후 모든 partition을 정상 종료(seal, fsync, clean shutdown 파일 기록)
+    @Override
+    public void close() {
+        if (committer != null) {
+            committer.close();
+        }
+
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+        }
+
+        awaitLoaded();
+        segmentManagers.values().forEach(SegmentManager::close);
+    }
+
+    /**
+     * partition의 segment manager(HybridTopic처럼 segment를 직접 사용하는 topic에서 사용).
+     * @param create 없으면 생성할지 여부
+     */
+    public @Nullable SegmentManager segmentManager(String partition, boolean create) {
+        return create ? getOrCreate(partition) : segmentManager(partition);
+    }
+
+    /**
+     * 아직 로딩 중인 partition을 모두 로딩(시작되지 않은 partition은 호출 스레드에서 로딩).
+     * @return 로딩된 partition 수
+     */
+    public int awaitLoaded() {
+        pendingPartitions.values().forEach(this::load);
+        return segmentManagers.size();
     }
 
     @Override
     public @Nullable TopicRecord peek(String partition, String clientId, Message message) {
-        SegmentManager segmentManager = segmentManagers.get(partition);
+        SegmentManager segmentManager = segmentManager(partition);
         if (segmentManager == null) {
             return null;
         }
@@ -84,9 +195,19 @@ public class DiskTopic implements Topic {
         return segmentManager.peek(clientId);
     }
 
+    @Override
+    public @Nullable TopicBatch peekBatch(String partition, String clientId, int maxCount, long maxBytes) {
+        SegmentManager segmentManager = segmentManager(partition);
+        if (segmentManager == null) {
+            return null;
+        }
+
+        return segmentManager.peekBatch(clientId, maxCount, maxBytes);
+    }
+
     @Override
     public void commit(String partition, String clientId, int offset, Message message) {
-        SegmentManager segmentManager = segmentManagers.get(partition);
+        SegmentManager segmentManager = segmentManager(partition);
         if (segmentManager == null) {
             return;
         }
@@ -95,18 +216,28 @@ public class DiskTopic implements Topic {
     }
 
     @Override
-    public int find(String partition, Map<String, String> condition, Message message) {
-        SegmentManager segmentManager = segmentManagers.get(partition);
+    public CompletableFuture<Integer> findAsync(String partition, Map<String, String> condition, Message message) {
+        SegmentManager segmentManager = segmentManager(partition);
+        if (segmentManager == null) {
+            return CompletableFuture.completedFuture(-1);
+        }
+
+        return segmentManager.findAsync(condition);
+    }
+
+    @Override
+    public int seekTime(String partition, String clientId, long timestamp, Message message) {
+        SegmentManager segmentManager = segmentManager(partition);
         if (segmentManager == null) {
             return -1;
         }
 
-        return segmentManager.find(condition);
+        return segmentManager.seekTime(clientId, timestamp);
     }
 
     @Override
     public boolean seek(String partition, String clientId, int offset, Message message) {
-        SegmentManager segmentManager = segmentManagers.get(partition);
+        SegmentManager segmentManager = segmentManager(partition);
         if (segmentManager == null) {
             return false;
         }
@@ -131,7 +262,7 @@ public class DiskTopic implements Topic {
 
     @Override
     public int count(String partition, Message message) {
-        SegmentManager segmentManager = segmentManagers.get(partition);
+        SegmentManager segmentManager = segmentManager(partition);
         if (segmentManager == null) {
             return -1;
         }
@@ -147,6 +278,7 @@ public class DiskTopic implements Topic {
     }
 
     public void clearAll() {
+        awaitLoaded();
         segmentManagers.values().forEach(segmentaManager -> {
             segmentaManager.clearAll();
         });
@@ -159,6 +291,62 @@ public class DiskTopic implements Topic {
         }
     }
 
+    // MESSAGES 모드에서 partition별로 durability.value()개가 쌓일 때마다 fsync 요청(ack는 기다리지 않음)
+    private void written(String partition, SegmentManager segmentManager, int count) {
+        if (durability.mode() != Durability.Mode.MESSAGES) {
+            return;
+        }
+
+        AtomicLong unsynced = unsyncedCounts.computeIfAbsent(partition, ignored -> new AtomicLong(0));
+        if (unsynced.addAndGet(count) >= durability.value()) {
+            unsynced.set(0);
+            committer.request(segmentManager);
+        }
+    }
+
+    /**
+     * partition의 segment manager 반환.
+     * 시작 시 로딩 중인 partition이면 로딩이 끝날 때까지 대기하고, 로딩 스레드가 아직 시작하지 않았다면 호출 스레드에서 로딩.
+     * TopicManager는 ready()가 완료된 뒤 요청을 처리하므로 event loop에서는 대기하거나 로딩하지 않음.
+     */
+    private @Nullable SegmentManager segmentManager(String partition) {
+        SegmentManager segmentManager = segmentManagers.get(partition);
+        if (segmentManager != null) {
+            return segmentManager;
+        }
+
+        PendingPartition pending = pendingPartitions.get(partition);
+        if (pending != null) {
+            return load(pending);
+        }
+
+        // 확인하는 사이 로딩이 끝난 경우(segmentManagers에 추가한 뒤 pendingPartitions에서 제거하므로)
+        return segmentManagers.get(partition);
+    }
+
+    private @Nullable SegmentManager getOrCreate(String partition) {
+        SegmentManager existing = segmentManager(partition);
+        if (existing != null) {
+            return existing;
+        }
+
+        return segmentManagers.computeIfAbsent(partition, ignored -> {
+            try {
+                SegmentManager newSegmentManager = new SegmentManager(root.resolve(partition), duration, retention, compactionKey);
+
+                if (!appendSegmentManager(newSegmentManager)) {
+                    return null;
+                }
+
+                newSegmentManager.startCompaction();
+                return newSegmentManager;
+            } catch (IOException e) {
+                System.err.println("? DiskTopic.getOrCreate(): " + e);
+                return null;
+            }
+        });
+    }
+
     private boolean appendSegmentManager(SegmentManager segmentManager) {
         OpenOption[] options = new OpenOption[] {
             StandardOpenOption.CREATE,
@@ -181,6 +369,34 @@ public class DiskTopic implements Topic {
         }
     }
 
+    /**
+     * 로딩 스레드와 처음 접근한 스레드 중 먼저 시작한 쪽이 로딩하고, 나머지는 완료를 기다림.
+     * @return 로딩된 segment manager 혹은 null(로딩 실패 시)
+     */
+    private @Nullable SegmentManager load(PendingPartition pending) {
+        if (!pending.claimed().compareAndSet(false, true)) {
+            return pending.future().join();
+        }
+
+        SegmentManager segmentManager = null;
+        try {
+            segmentManager = new SegmentManager(pending.path(), duration, retention, compactionKey);
+            segmentManager.startCompaction();
+            segmentManagers.put(pending.partition(), segmentManager);
+        } catch (IOException e) {
+            System.err.println("? DiskTopic.load(): " + e);
+        } finally {
+            pendingPartitions.remove(pending.partition());
+            pending.future().complete(segmentManager);
+        }
+
+        return segmentManager;
+    }
+
+    /**
+     * segment_managers.log에 기록된 partition 목록만 읽고, 각 partition의 로딩은 LOADER 스레드 풀에 맡김.
+     * 생성자는 로딩을 기다리지 않으므로 브로커는 바로 연결을 받을 수 있으며, 로딩 전에 접근한 partition은 접근 시점에 로딩.
+     */
     private boolean loadSegmentManagers() {
         try (FileChannel file = FileChannel.open(root.resolve(SEGMENT_MANAGERS_FILE), StandardOpenOption.READ)) {
             ByteBuffer buffer = ByteBuffer.allocate((int) file.size());
@@ -197,9 +413,11 @@ public class DiskTopic implements Topic {
                 buffer.get(pathBytes);
 
                 Path path = Path.of(new String(pathBytes, StandardCharsets.UTF_8));
-                SegmentManager segmentManager = new SegmentManager(path, duration, retention);
-
-                segmentManagers.put(path.getFileName().toString(), segmentManager);
+                String partition = path.getFileName().toString();
+                PendingPartition pending = new PendingPartition(partition, path, new AtomicBoolean(false), new CompletableFuture<>());
+                if (pendingPartitions.putIfAbsent(partition, pending) == null) {
+                    LOADER.execute(() -> load(pending));
+                }
             }
 
             return true;
@@ -208,4 +426,6 @@ public class DiskTopic implements Topic {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    private record PendingPartition(String partition, Path path, AtomicBoolean claimed, CompletableFuture<SegmentManager> future) {}
+}
@@ -0,0 +1,51 @@
+package capstone.design.topic.disk;
+
+/**
+ * DiskTopic의 fsync 정책.
+ * NONE: fsync 하지 않음(OS page cache에 의존)
+ * INTERVAL: value(ms)마다 기록된 segment를 fsync
+ * MESSAGES: partition별로 value개의 메시지가 기록될 때마다 fsync(ack는 기다리지 않음)
+ * ACK: fsync 이후 ack(동시에 들어온 push들은 group commit 스레드의 fsync 한 번을 공유)
+ */
+public final class Durability {
+
+    public enum Mode { NONE, INTERVAL, MESSAGES, ACK }
+
+    private final Mode mode;
+    private final long value;
+
+    // constructor =====
+    private Durability(Mode mode, long value) {
+        this.mode = mode;
+        this.value = value;
+    }
+
+    // factory method =====
+    public static Durability none() { return new Durability(Mode.NONE, 0); }
+    public static Durability ack() { return new Durability(Mode.ACK, 0); }
+
+    public static Durability interval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("interval은 0보다 커야 함: " + millis);
+        }
+
+        return new Durability(Mode.INTERVAL, millis);
+    }
+
+    public static Durability messages(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("messages는 0보다 커야 함: " + count);
+        }
+
+        return new Durability(Mode.MESSAGES, count);
+    }
+
+    // getter =====
+    public Mode mode() { return mode; }
+    public long value() { return value; }
+
+    @Override
+    public String toString() {
+        return (mode == Mode.INTERVAL || mode == Mode.MESSAGES) ? mode + "(" + value + ")" : mode.toString();
+    }
+}
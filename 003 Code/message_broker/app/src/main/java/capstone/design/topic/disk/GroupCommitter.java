@@ -0,0 +1,111 @@
+package capstone.design.topic.disk;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.topic.disk.segment.SegmentManager;
+
+/**
+ * fsync 요청을 모아서 처리하는 group commit 스레드.
+ * fsync가 진행되는 동안 들어온 요청들은 큐에 쌓였다가 다음 fsync 한 번으로 함께 처리되므로,
+ * 동시에 push가 많을수록 메시지당 fsync 횟수가 줄어듦.
+ */
+class GroupCommitter implements AutoCloseable {
+
+    private record Request(SegmentManager segmentManager, @Nullable CompletableFuture<Void> future) {}
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong syncs = new AtomicLong(0);
+    private volatile boolean closed = false;
+
+    GroupCommitter(String name) {
+        this.thread = new Thread(this::run, "group-commit-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * segmentManager에 지금까지 기록된 내용의 fsync를 요청.
+     * @return fsync 완료 시 완료되는 future(fsync 실패 시 예외로 완료)
+     */
+    CompletableFuture<Void> commit(SegmentManager segmentManager) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("group committer 종료됨"));
+            return future;
+        }
+
+        queue.add(new Request(segmentManager, future));
+        return future;
+    }
+
+    // 완료를 기다리지 않는 fsync 요청
+    void request(SegmentManager segmentManager) {
+        if (!closed) {
+            queue.add(new Request(segmentManager, null));
+        }
+    }
+
+    long requests() { return requests.get(); } // 처리한 요청 수
+    long syncs() { return syncs.get(); } // 실제 수행한 fsync 수(segment manager 단위)
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            queue.drainTo(batch);
+            requests.addAndGet(batch.size());
+
+            // 같은 segment manager에 대한 요청은 fsync 한 번으로 처리
+            Map<SegmentManager, List<CompletableFuture<Void>>> grouped = new IdentityHashMap<>();
+            for (Request request : batch) {
+                List<CompletableFuture<Void>> futures = grouped.computeIfAbsent(request.segmentManager(), ignored -> new ArrayList<>());
+                if (request.future() != null) {
+                    futures.add(request.future());
+                }
+            }
+            batch.clear();
+
+            grouped.forEach((segmentManager, futures) -> {
+                boolean success = segmentManager.force();
+                syncs.incrementAndGet();
+
+                for (CompletableFuture<Void> future : futures) {
+                    if (success) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(new IllegalStateException("fsync 실패: " + segmentManager.root()));
+                    }
+                }
+            });
+        }
+
+        // 종료 시 남은 요청은 실패 처리
+        queue.drainTo(batch);
+        batch.stream()
+            .map(Request::future)
+            .filter(future -> future != null)
+            .forEach(future -> future.completeExceptionally(new IllegalStateException("group committer 종료됨")));
+    }
+}
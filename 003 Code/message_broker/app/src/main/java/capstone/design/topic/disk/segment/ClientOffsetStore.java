@@ -0,0 +1,316 @@
+package capstone.design.topic.disk.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * partition의 consumer offset 저장소.
+ * offset은 메모리에 보관하고, 디스크에는 snapshot(전체 offset)과 log(snapshot 이후 변경)로 기록.
+ * commit은 메모리만 갱신하며 flush 주기마다 백그라운드에서 변경된 client의 마지막 offset만 log에 한 번에 append.
+ * log가 compactBytes를 넘으면 현재 offset으로 snapshot을 새로 쓰고 log를 비움(재시작 시 읽는 양이 commit 횟수와 무관).
+ *
+ * snapshot, log 모두 [generation long] 뒤에 [client id length int][client id][offset int] 레코드가 이어짐.
+ * compaction은 generation을 올린 snapshot을 원자적으로 교체한 뒤 log를 새 generation으로 비우므로,
+ * 그 사이에 종료되더라도 generation이 다른(snapshot 이전의) log는 무시됨.
+ * 비정상 종료 시 마지막 flush 이후의 commit은 유실될 수 있음(consumer는 이전 offset부터 다시 읽음).
+ * generation 없이 레코드만 이어지는 이전 포맷(client_offsets.log)은 snapshot이 없을 때 읽어서 snapshot으로 옮긴 뒤 제거.
+ */
+final class ClientOffsetStore implements AutoCloseable {
+
+    private static final String SNAPSHOT_FILE = "client_offsets.snapshot";
+    private static final String LOG_FILE = "client_offsets.wal";
+    private static final String LEGACY_FILE = "client_offsets.log"; // 이전 포맷
+    private static final long FLUSH_MILLIS = Long.getLong("broker.offsets.flushMillis", 100);
+    private static final long COMPACT_BYTES = Long.getLong("broker.offsets.compactBytes", 1024 * 1024);
+    // 모든 partition의 offset flush, compaction을 수행하는 스레드
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "client-offset-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path snapshot;
+    private final Path log;
+    private final Path legacy;
+    private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Integer> dirty = new ConcurrentHashMap<>(); // flush 되지 않은 commit(client별 마지막 offset만 유지)
+
+    // 아래 필드는 this lock 안에서만 사용
+    private long generation = 0;
+    private @Nullable FileChannel logFile;
+    private long logBytes = 0;
+    private @Nullable ScheduledFuture<?> flushTask;
+    private boolean torn = false; // 마지막으로 읽은 파일이 쓰다 만 레코드로 끝나는지 여부
+
+    ClientOffsetStore(Path root) {
+        this.snapshot = root.resolve(SNAPSHOT_FILE);
+        this.log = root.resolve(LOG_FILE);
+        this.legacy = root.resolve(LEGACY_FILE);
+    }
+
+    // SegmentManager가 직접 조회/갱신하는 메모리 offset(commit 이외의 변경은 디스크에 기록되지 않음)
+    Map<String, Integer> offsets() { return offsets; }
+
+    /**
+     * snapshot과 log로 offset을 복원하고 flush를 시작.
+     * @param nextOffset partition의 다음 offset(이보다 큰 offset은 조정)
+     */
+    synchronized void load(int nextOffset) {
+        long snapshotGeneration = read(snapshot, null);
+        long logGeneration = Files.exists(log) ? read(log, snapshotGeneration) : -1;
+        generation = snapshotGeneration;
+
+        // snapshot이 없으면(generation은 1부터 시작) 이전 포맷 파일의 offset을 가져옴, compaction으로 snapshot에 기록된 뒤 제거
+        boolean imported = (snapshotGeneration == 0) && readLegacy();
+
+        boolean clamped = false;
+        for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            if (entry.getValue() > nextOffset) {
+                entry.setValue(nextOffset);
+                clamped = true;
+            }
+        }
+
+        // generation이 다르거나 쓰다 만 레코드가 있는 log에는 이어서 쓸 수 없으므로 compaction으로 새로 시작
+        try {
+            if (imported || clamped || torn || logGeneration != generation || Files.size(log) > COMPACT_BYTES) {
+                compact();
+            }
+
+            if (generation > 0) {
+                Files.deleteIfExists(legacy);
+            }
+        } catch (IOException e) {
+            System.err.println("? ClientOffsetStore.load(): " + e);
+        }
+
+        if (flushTask == null) {
+            flushTask = FLUSHER.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 메모리에 반영하고 flush 대상으로 표시(디스크 기록은 기다리지 않음)
+    void commit(String clientId, int offset) {
+        offsets.put(clientId, offset);
+        dirty.put(clientId, offset);
+    }
+
+    /**
+     * 마지막 flush 이후 commit 된 offset을 log에 append 하고, log가 커졌다면 compaction.
+     * @return 성공 여부
+     */
+    synchronized boolean flush() {
+        if (dirty.isEmpty()) {
+            return true;
+        }
+
+        // client별 마지막 offset만 기록(flush 중 다시 commit 된 client는 다음 flush에서 기록)
+        List<byte[]> clientIds = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : dirty.entrySet()) {
+            String clientId = entry.getKey();
+            int offset = entry.getValue();
+            if (!dirty.remove(clientId, offset)) {
+                continue;
+            }
+
+            byte[] clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
+            clientIds.add(clientIdBytes);
+            values.add(offset);
+            length += (Integer.BYTES * 2) + clientIdBytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < clientIds.size(); i++) {
+            buffer.putInt(clientIds.get(i).length)
+                .put(clientIds.get(i))
+                .putInt(values.get(i));
+        }
+
+        try {
+            if (logFile == null) {
+                openLog(false);
+            }
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                logFile.write(buffer);
+            }
+            logBytes += length;
+
+            if (logBytes > COMPACT_BYTES) {
+                compact();
+            }
+
+            return true;
+        } catch (IOException e) {
+            System.err.println("? ClientOffsetStore.flush(): " + e);
+            return false;
+        }
+    }
+
+    // flush를 중단하고 남은 commit을 디스크에 반영(다시 load 하기 전까지의 commit은 기록되지 않음)
+    @Override
+    public synchronized void close() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+
+        flush();
+        try {
+            if (logFile != null) {
+                logFile.force(false);
+                logFile.close();
+                logFile = null;
+            }
+        } catch (IOException e) {
+            System.err.println("? ClientOffsetStore.close(): " + e);
+        }
+    }
+
+    synchronized void clear() throws IOException {
+        close();
+        offsets.clear();
+        dirty.clear();
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(log);
+        Files.deleteIfExists(legacy);
+    }
+
+    /**
+     * 현재 offset 전체를 새 generation의 snapshot으로 쓰고 log를 비움.
+     * snapshot은 임시 파일에 쓰고 fsync 한 뒤 원자적으로 교체.
+     */
+    private void compact() throws IOException {
+        long next = generation + 1;
+        Path temp = snapshot.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(file, ByteBuffer.allocate(Long.BYTES).putLong(next).flip());
+            for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+                byte[] clientIdBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate((Integer.BYTES * 2) + clientIdBytes.length);
+                buffer.putInt(clientIdBytes.length)
+                    .put(clientIdBytes)
+                    .putInt(entry.getValue());
+                write(file, buffer.flip());
+            }
+
+            file.force(false);
+        }
+
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        generation = next;
+        openLog(true);
+    }
+
+    // log를 열고(truncate이면 비우고 현재 generation 기록) 끝으로 이동
+    private void openLog(boolean truncate) throws IOException {
+        if (logFile != null) {
+            logFile.close();
+        }
+
+        logFile = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (truncate || logFile.size() < Long.BYTES) {
+            logFile.truncate(0);
+            write(logFile.position(0), ByteBuffer.allocate(Long.BYTES).putLong(generation).flip());
+        }
+
+        logFile.position(logFile.size());
+        logBytes = logFile.size() - Long.BYTES;
+    }
+
+    /**
+     * path의 레코드를 offsets에 반영.
+     * @param expected log인 경우 snapshot의 generation(다르면 반영하지 않음), snapshot인 경우 null
+     * @return 파일의 generation(파일이 없거나 읽을 수 없으면 0)
+     */
+    private long read(Path path, @Nullable Long expected) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) file.size());
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer) == -1) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            if (buffer.remaining() < Long.BYTES) {
+                return 0;
+            }
+
+            long fileGeneration = buffer.getLong();
+            if (expected != null && fileGeneration != expected) {
+                return fileGeneration;
+            }
+
+            readRecords(buffer);
+            return fileGeneration;
+        } catch (IOException e) {
+            System.err.println("? ClientOffsetStore.read(): " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * 이전 포맷 파일([client id length int][client id][offset int] 레코드만 이어짐)의 레코드를 offsets에 반영.
+     * @return 반영한 파일이 있는지 여부
+     */
+    private boolean readLegacy() {
+        if (!Files.exists(legacy)) {
+            return false;
+        }
+
+        try {
+            readRecords(ByteBuffer.wrap(Files.readAllBytes(legacy)));
+            System.out.println("! ClientOffsetStore 이전 포맷 변환(" + legacy + "): clients: " + offsets.size());
+            return true;
+        } catch (IOException e) {
+            System.err.println("? ClientOffsetStore.readLegacy(): " + e);
+            return false;
+        }
+    }
+
+    // 마지막 레코드는 쓰다 만 레코드일 수 있으므로 길이가 부족하면 중단
+    private void readRecords(ByteBuffer buffer) {
+        torn = false;
+        while (buffer.hasRemaining()) {
+            int clientIdLength = (buffer.remaining() >= Integer.BYTES) ? buffer.getInt() : -1;
+            if (clientIdLength < 0 || buffer.remaining() < clientIdLength + Integer.BYTES) {
+                torn = true;
+                break;
+            }
+
+            byte[] clientIdBytes = new byte[clientIdLength];
+            buffer.get(clientIdBytes);
+            offsets.put(new String(clientIdBytes, StandardCharsets.UTF_8), buffer.getInt());
+        }
+    }
+
+    private static void write(FileChannel file, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package capstone.design.topic.disk.segment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 파일을 열어 둔 segment들의 LRU 목록.
+ * 모든 partition의 segment가 하나의 목록을 공유하며, 용량을 넘으면 가장 오래 사용되지 않은 segment를 반환.
+ * 반환된 segment의 파일은 호출자가 자신의 fileLock을 놓은 뒤 닫아야 함(segment 간 lock 순환 방지).
+ */
+final class FileHandleCache {
+
+    private final int capacity;
+    private final Map<Segment, Boolean> segments = new LinkedHashMap<>(16, 0.75f, true); // access order
+
+    FileHandleCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * segment를 가장 최근에 사용한 것으로 표시.
+     * @return 용량 초과로 목록에서 제외된(파일을 닫아야 하는) segment 목록
+     */
+    synchronized List<Segment> touch(Segment segment) {
+        segments.put(segment, Boolean.TRUE);
+        if (segments.size() <= capacity) {
+            return List.of();
+        }
+
+        List<Segment> evicted = new ArrayList<>();
+        Iterator<Segment> iterator = segments.keySet().iterator();
+        while (segments.size() > capacity && iterator.hasNext()) {
+            Segment eldest = iterator.next();
+            if (eldest == segment) {
+                continue;
+            }
+
+            iterator.remove();
+            evicted.add(eldest);
+        }
+
+        return evicted;
+    }
+
+    synchronized void remove(Segment segment) {
+        segments.remove(segment);
+    }
+
+    synchronized int size() {
+        return segments.size();
+    }
+}
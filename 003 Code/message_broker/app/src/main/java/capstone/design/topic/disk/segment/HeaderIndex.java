@@ -0,0 +1,319 @@
+package capstone.design.topic.disk.segment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+import org.jspecify.annotations.Nullable;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hashing;
+
+import capstone.design.message.MessageHeader;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * segment의 header 색인(find 조건으로 쓰이는 key에 대해서만, broker.segment.indexKeys로 설정).
+ * (key, value)의 64bit hash와 segment 내 offset을 보관하며,
+ * active segment는 레코드 순서대로 쌓은 메모리 배열을 순차 확인하고, seal 된 segment는 .hidx 파일(엔트리 + bloom filter)로 조회.
+ * seal 된 segment는 bloom filter로 해당 값이 없는 segment를 파일을 읽지 않고 건너뛰며,
+ * 엔트리가 (hash, offset) 순서로 정렬되어 있으므로 이진 탐색으로 후보를 찾음.
+ *
+ * .hidx: [format int][record count int][key count int]([key length short][key])*[entry count int]([hash long][offset int])*[bloom filter]
+ * format이 다른 파일(정렬되지 않은 이전 파일 등)은 읽지 못하는 파일과 같이 다시 만듦.
+ * record count는 색인한 레코드 수이며 segment의 레코드 수와 다르면(비정상 종료 등) log로부터 다시 만듦.
+ * .hidx는 임시 파일에 쓰고 fsync 한 뒤 원자적으로 교체하며, 읽지 못하는 파일은 다시 만듦.
+ * 색인이 segment의 레코드를 모두 포함하지 못하면(다시 만들기 실패 등) 조회하지 않고 호출자가 log를 스캔.
+ */
+final class HeaderIndex {
+
+    static final List<String> KEYS = Arrays.stream(System.getProperty("broker.segment.indexKeys", "").split(","))
+        .map(String::trim)
+        .filter(key -> !key.isEmpty())
+        .toList();
+    private static final double BLOOM_FPP = 0.01;
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int FORMAT = 0x48494402; // "HID" + 2(엔트리 정렬)
+
+    private final Path file;
+    private final List<String> keys;
+
+    // 아래 필드는 this lock 안에서만 사용
+    // active: 메모리 배열
+    private long[] hashes = new long[0];
+    private int[] offsets = new int[0];
+    private int size = 0;
+    private int records = 0; // 색인한 레코드 수(key가 없는 레코드 포함)
+    // sealed: 파일 매핑과 bloom filter
+    private boolean sealed = false;
+    private @Nullable MappedByteBuffer entries;
+    private @Nullable BloomFilter<Long> bloom;
+    private long bloomSkips = 0; // bloom filter로 파일을 읽지 않고 건너뛴 조회 수
+
+    HeaderIndex(Path file) {
+        this(file, KEYS);
+    }
+
+    HeaderIndex(Path file, List<String> keys) {
+        this.file = file;
+        this.keys = keys;
+    }
+
+    static boolean enabled() { return !KEYS.isEmpty(); }
+
+    // condition에 색인된 key가 있는지 여부(없으면 find는 log를 스캔)
+    static boolean covers(Map<String, String> condition) {
+        return KEYS.stream().anyMatch(condition::containsKey);
+    }
+
+    synchronized long bloomSkips() { return bloomSkips; }
+
+    static long hash(String key, String value) {
+        return Hashing.murmur3_128().newHasher()
+            .putString(key, StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(value, StandardCharsets.UTF_8)
+            .hash()
+            .asLong();
+    }
+
+    /**
+     * buf의 headerIndex부터 시작하는 header(type + header 개수 + entry 목록, v1)를 offset 레코드로 색인.
+     * 레코드는 offset 순서대로 추가되어야 함.
+     */
+    synchronized void add(ByteBuf buf, int headerIndex, int offset) {
+        records++;
+        int count = buf.getUnsignedByte(headerIndex + 1);
+        MessageHeader header = MessageHeader.read(buf.duplicate().readerIndex(headerIndex + 2), count);
+        for (String key : keys) {
+            String value = header.get(key);
+            if (value == null) {
+                continue;
+            }
+
+            if (size == hashes.length) {
+                int capacity = Math.max(16, size * 2);
+                hashes = Arrays.copyOf(hashes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+
+            hashes[size] = hash(key, value);
+            offsets[size] = offset;
+            size++;
+        }
+    }
+
+    // compaction으로 제거된 offset(색인할 header가 없는 레코드로 취급)
+    synchronized void skip() {
+        records++;
+    }
+
+    /**
+     * hash에 해당하는 레코드 후보의 offset을 오름차순으로 반환(hash 충돌이 있을 수 있으므로 호출자가 조건을 확인).
+     * @param count segment의 레코드 수
+     * @return 후보 offset 목록(빈 배열이면 이 segment에는 해당 값이 없음) 혹은 null(색인이 count개의 레코드를 포함하지 않아 사용할 수 없음)
+     */
+    synchronized int @Nullable [] candidates(long hash, int count) {
+        if (records < count) {
+            return null;
+        }
+
+        if (!sealed) {
+            return collect(hash, 0, size, i -> hashes[i], i -> offsets[i]);
+        }
+
+        if (bloom == null || entries == null) {
+            return null;
+        }
+
+        if (!bloom.mightContain(hash)) {
+            bloomSkips++;
+            return new int[0];
+        }
+
+        // hash가 같은 엔트리는 offset 순서로 모여 있으므로 첫 엔트리를 이진 탐색한 뒤 이어서 읽음
+        MappedByteBuffer map = entries;
+        IntToLongFunction hashAt = i -> map.getLong(i * ENTRY_BYTES);
+        int low = 0;
+        int high = map.capacity() / ENTRY_BYTES;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashAt.applyAsLong(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return collect(hash, low, map.capacity() / ENTRY_BYTES, hashAt, i -> map.getInt(i * ENTRY_BYTES + Long.BYTES));
+    }
+
+    /**
+     * 색인을 .hidx 파일로 기록하고 파일 조회로 전환.
+     * 메모리 색인이 segment 전체(count개)를 포함하지 않으면 기존 파일을 사용하고, 파일도 맞지 않으면 false 반환(호출자가 다시 만듦).
+     * 기록에 실패하면(IOException) 메모리 색인을 그대로 사용.
+     */
+    synchronized boolean seal(int count) throws IOException {
+        if (records != count && !load(count)) {
+            return false;
+        }
+
+        if (records == count && !sealed) {
+            write();
+            load(count);
+        }
+
+        // 메모리 배열은 더 이상 사용하지 않음
+        hashes = new long[0];
+        offsets = new int[0];
+        size = 0;
+        return true;
+    }
+
+    // 다시 만들기 위해 색인을 비움
+    synchronized void reset() {
+        hashes = new long[0];
+        offsets = new int[0];
+        size = 0;
+        records = 0;
+        sealed = false;
+        entries = null;
+        bloom = null;
+    }
+
+    synchronized void clear() throws IOException {
+        reset();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(tempFile());
+    }
+
+    private void write() throws IOException {
+        BloomFilter<Long> filter = BloomFilter.create(Funnels.longFunnel(), Math.max(1, size), BLOOM_FPP);
+        for (int i = 0; i < size; i++) {
+            filter.put(hashes[i]);
+        }
+
+        ByteArrayOutputStream bloomBytes = new ByteArrayOutputStream();
+        filter.writeTo(bloomBytes);
+
+        byte[][] keyBytes = keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        int headerLength = Integer.BYTES * 4 + Arrays.stream(keyBytes).mapToInt(bytes -> Short.BYTES + bytes.length).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + size * ENTRY_BYTES + bloomBytes.size());
+        buffer.putInt(FORMAT).putInt(records).putInt(keyBytes.length);
+        for (byte[] bytes : keyBytes) {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+
+        // (hash, offset) 순서로 정렬(offset 순서로 추가되었으므로 hash로 안정 정렬)
+        Integer[] order = new Integer[size];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+
+        buffer.putInt(size);
+        for (int i : order) {
+            buffer.putLong(hashes[i]).putInt(offsets[i]);
+        }
+        buffer.put(bloomBytes.toByteArray()).flip();
+
+        // 쓰는 도중 중단되더라도 이전 파일(혹은 파일 없음)이 남도록 임시 파일에 쓰고 교체
+        Path temp = tempFile();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path tempFile() {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * .hidx 파일을 읽어 파일 조회로 전환.
+     * @return 파일이 count개의 레코드를 같은 key 목록으로 색인한 경우 true(읽지 못하면 false, 호출자가 다시 만듦)
+     */
+    private boolean load(int count) {
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.remaining() < Integer.BYTES * 3 || map.getInt() != FORMAT || map.getInt() != count) {
+                return false;
+            }
+
+            int keyCount = map.getInt();
+            if (keyCount != keys.size()) {
+                return false;
+            }
+
+            for (String key : keys) {
+                byte[] bytes = new byte[map.getShort()];
+                map.get(bytes);
+                if (!key.equals(new String(bytes, StandardCharsets.UTF_8))) {
+                    return false;
+                }
+            }
+
+            int entryCount = map.getInt();
+            MappedByteBuffer entryMap = map.slice(map.position(), entryCount * ENTRY_BYTES);
+            map.position(map.position() + entryCount * ENTRY_BYTES);
+
+            byte[] bloomBytes = new byte[map.remaining()];
+            map.get(bloomBytes);
+
+            entries = entryMap;
+            bloom = BloomFilter.readFrom(new ByteArrayInputStream(bloomBytes), Funnels.longFunnel());
+            records = count;
+            sealed = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // 읽을 수 없거나 잘못된 파일
+            System.err.println("? HeaderIndex.load(): " + e);
+            return false;
+        }
+    }
+
+    // [from, to) 중 hash가 같은 엔트리의 offset(정렬된 파일은 from부터 hash가 달라지면 중단)
+    private int[] collect(long hash, int from, int to, IntToLongFunction hashAt, IntUnaryOperator offsetAt) {
+        int[] result = new int[4];
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            if (hashAt.applyAsLong(i) != hash) {
+                if (sealed) {
+                    break;
+                }
+
+                continue;
+            }
+
+            if (found == result.length) {
+                result = Arrays.copyOf(result, found * 2);
+            }
+
+            result[found++] = offsetAt.applyAsInt(i);
+        }
+
+        return Arrays.copyOf(result, found);
+    }
+}
@@ -1,8 +1,10 @@
 package capstone.design.topic.disk.segment;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -13,130 +15,643 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32C;
 
 import org.jspecify.annotations.Nullable;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 import capstone.design.message.Frame;
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageHeader;
+import capstone.design.topic.TopicBatch;
 import capstone.design.topic.TopicRecord;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.FileRegion;
 
 public class Segment {
 
+    // 모든 partition에서 동시에 log 파일을 열어 둘 수 있는 segment 수
+    private static final int MAX_OPEN_SEGMENTS = Integer.getInteger("broker.segment.maxOpen", 128);
+    private static final FileHandleCache OPEN_SEGMENTS = new FileHandleCache(MAX_OPEN_SEGMENTS);
+    // active segment의 idx 매핑 증가 단위(128K 엔트리)
+    private static final long IDX_CHUNK = 1024 * 1024;
+    // active segment의 log 파일 preallocate 단위(0 이하이면 preallocate 하지 않음)
+    private static final long LOG_EXTENT = Long.getLong("broker.segment.logExtent", 4 * 1024 * 1024);
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+    private static final int SCAN_BUFFER_BYTES = Integer.getInteger("broker.find.scanBufferBytes", 256 * 1024);
+    // segments.log에서 seal 레코드를 segment 레코드와 구분하기 위한 값(segment 레코드는 index >= 0으로 시작)
+    public static final int SEAL_MARKER = -1;
+    public static final int COMPACTED_SEAL_MARKER = -2; // compaction으로 만들어진 segment의 seal 레코드
+    // segments.log의 첫 레코드([FORMAT_MARKER][FORMAT_VERSION]), 없으면 이전 포맷(레코드에 checksum, timestamp가 없음)
+    public static final int FORMAT_MARKER = -3;
+    public static final int FORMAT_VERSION = 1;
+
     private final int index;
     private final Path log;
     private final Path idx;
     private final int startOffset;
     private final long createdAt;
-    private final AtomicInteger endOffset = new AtomicInteger(0);
+    private final boolean compacted; // compaction으로 만들어진 segment(제거된 offset이 있을 수 있음)
+    private final AtomicInteger count = new AtomicInteger(0); // idx 엔트리 수(preallocate 된 영역 제외)
+    private final AtomicLong size = new AtomicLong(0); // log에 기록된 레코드의 끝 위치(preallocate 된 영역 제외)
+    private final @Nullable HeaderIndex headerIndex; // find 조건 key의 색인(broker.segment.indexKeys가 없으면 null)
+    private final TimeIndex timeIndex; // 레코드 append 시각의 sparse 색인(seal 되면 .tidx로 기록)
+    private final ByteBuffer timestampBuf = ByteBuffer.allocate(Long.BYTES);
+    private volatile boolean sealed = false;
     private final Object fileLock = new Object();
 
+    // 아래 필드는 fileLock 안에서만 사용
+    private @Nullable FileChannel logFile;
+    private @Nullable MappedByteBuffer idxMap; // active: READ_WRITE(IDX_CHUNK 단위로 증가), sealed: READ_ONLY
+    private boolean idxWritable = false;
+    private long allocated = 0; // log 파일의 실제 크기(preallocate 된 영역 포함)
+    private final ByteBuffer prefixBuf = ByteBuffer.allocate(MessageBatch.RECORD_PREFIX);
+    private long recoveredBytes = -1; // 복구 시 잘라낸 log 바이트 수(-1: 복구하지 않음)
+
     public Segment(int index, Path log, Path idx, int startOffset, long createdAt) {
         this.index = index;
         this.log = log;
         this.idx = idx;
         this.startOffset = startOffset;
         this.createdAt = createdAt;
-        this.endOffset.set(startOffset + count());
+        this.compacted = false;
+        this.headerIndex = HeaderIndex.enabled() ? new HeaderIndex(idx.resolveSibling(index + ".hidx")) : null;
+        this.timeIndex = new TimeIndex(idx.resolveSibling(index + ".tidx"));
+
+        recover();
+    }
+
+    /**
+     * segments.log의 seal 레코드로 복원하는 segment.
+     * 파일 크기가 seal 시점과 같으면(seal이 끝까지 수행된 경우) log를 스캔하지 않고 count, size를 그대로 사용하며,
+     * 다르면 seal 되지 않은 segment와 같이 log를 스캔하여 복구.
+     * @param verify 정상 종료가 확인되지 않은 경우 true(마지막 레코드의 checksum까지 확인)
+     * @param compacted compaction으로 만들어진 segment인 경우 true(COMPACTED_SEAL_MARKER)
+     */
+    public Segment(int index, Path log, Path idx, int startOffset, long createdAt, int sealedCount, long sealedSize, boolean verify, boolean compacted) {
+        this.index = index;
+        this.log = log;
+        this.idx = idx;
+        this.startOffset = startOffset;
+        this.createdAt = createdAt;
+        this.compacted = compacted;
+        this.headerIndex = HeaderIndex.enabled() ? new HeaderIndex(idx.resolveSibling(index + ".hidx")) : null;
+        this.timeIndex = new TimeIndex(idx.resolveSibling(index + ".tidx"));
+
+        try {
+            boolean intact = Files.exists(log) && Files.size(log) == sealedSize
+                && Files.exists(idx) && Files.size(idx) == (long) sealedCount * Long.BYTES;
+            if (intact && verify && sealedCount > 0) {
+                try (FileChannel logChannel = FileChannel.open(log, StandardOpenOption.READ);
+                    FileChannel idxChannel = FileChannel.open(idx, StandardOpenOption.READ)) {
+                    long last = readFully(idxChannel, ByteBuffer.allocate(Long.BYTES), (long) (sealedCount - 1) * Long.BYTES).getLong();
+                    intact = recordEnd(logChannel, last, sealedSize, new CRC32C()) == sealedSize;
+                }
+            }
+
+            if (intact) {
+                if (sealedCount > 0) {
+                    try (FileChannel file = FileChannel.open(idx, StandardOpenOption.READ)) {
+                        idxMap = file.map(FileChannel.MapMode.READ_ONLY, 0, (long) sealedCount * Long.BYTES);
+                    }
+                }
+
+                count.set(sealedCount);
+                size.set(sealedSize);
+                sealed = true;
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("? Segment.Segment(): " + e);
+        }
+
+        recover();
     }
 
     public int index() { return index; }
     public Path log() { return log; }
     public Path idx() { return idx; }
     public int startOffset() { return startOffset; } 
-    public int endOffset() { return endOffset.get(); }
+    public int endOffset() { return startOffset + count.get(); }
     public boolean isActive(long duration) { return (System.currentTimeMillis() - createdAt) < duration; }
     public boolean isExpired(long retention) { return (System.currentTimeMillis() - createdAt) > retention; }
 
-    public int count() {
+    public int count() { return count.get(); }
+    public boolean isCompacted() { return compacted; }
+    public long size() { return size.get(); }
+    public boolean isSealed() { return sealed; }
+    public boolean isRecovered() { return recoveredBytes >= 0; } // 생성 시 log를 스캔하여 복구했는지 여부
+    public long recoveredBytes() { return Math.max(0, recoveredBytes); }
+
+    /**
+     * 더 이상 append 하지 않는 segment로 전환.
+     * preallocate 된 log, idx의 남은 영역을 잘라내고 idx는 READ_ONLY로 다시 매핑.
+     */
+    public void seal() {
+        synchronized (fileLock) {
+            long length = (long) count.get() * Long.BYTES;
+            try (FileChannel file = FileChannel.open(idx, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (file.size() > length) {
+                    file.truncate(length);
+                }
+
+                idxMap = (length > 0) ? file.map(FileChannel.MapMode.READ_ONLY, 0, length) : null;
+                idxWritable = false;
+            } catch (IOException e) {
+                System.err.println("? Segment.seal(): " + e);
+                return;
+            }
+
+            if (Files.exists(log)) {
+                try (FileChannel file = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                    if (file.size() > size.get()) {
+                        file.truncate(size.get());
+                    }
+
+                    allocated = size.get();
+                } catch (IOException e) {
+                    System.err.println("? Segment.seal(): " + e);
+                    return;
+                }
+            }
+
+            sealed = true;
+            sealHeaderIndex();
+            sealTimeIndex();
+        }
+    }
+
+    public boolean write(Frame frame) {
+        List<Segment> evicted = List.of();
         try {
-            return (int) Files.size(idx) / Long.BYTES;
+            synchronized (fileLock) {
+                evicted = openFiles();
+
+                long timestamp = nextTimestamp();
+                long position = writeLog(frame, timestamp);
+                int offset = writeIdx(position);
+                timeIndex.add(offset, timestamp);
+                if (headerIndex != null) {
+                    headerIndex.add(frame.header(), frame.header().readerIndex(), offset);
+                }
+            }
+
+            return true;
         } catch (IOException e) {
-            return 0;
+            System.err.println("? Segment.write(): " + e);
+            return false;
+        } finally {
+            frame.release();
+            closeFiles(evicted);
         }
     }
 
-    public boolean write(Frame frame) {
-        OpenOption[] options = new OpenOption[] {
-            StandardOpenOption.CREATE,
-            StandardOpenOption.WRITE,
-            StandardOpenOption.APPEND  
-        };
+    /**
+     * MessageBatch 포맷의 레코드 묶음을 한 번에 append.
+     * log는 배치 전체를 gathering write 한 번으로, idx는 레코드 개수만큼의 위치를 write 한 번으로 기록.
+     * 각 레코드의 timestamp는 append 시각으로 덮어씀.
+     * @param records MessageBatch.count()로 검증된 레코드 묶음(readerIndex는 변경하지 않음)
+     */
+    public boolean writeBatch(ByteBuf records, int count) {
+        return writeBatch(records, count, false);
+    }
 
-        synchronized (fileLock) {
-            try (
-                FileChannel idxFile = FileChannel.open(idx, options);
-                FileChannel logFile = FileChannel.open(log, options);
-            ) {
-                long position = writeLog(logFile, frame);
-                writeIdx(idxFile, position);
-                endOffset.incrementAndGet();
-                
-                return true;
-            } catch (IOException e) {
-                System.err.println("? Segment.write(): " + e);
-                return false;
+    /**
+     * @param keepTimestamps true이면 레코드의 timestamp(메모리에 저장된 시각 등)를 유지하되, 시각이 offset 순서로 증가하도록 이전 레코드 시각 이상으로 맞춤
+     */
+    public boolean writeBatch(ByteBuf records, int count, boolean keepTimestamps) {
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+
+                long[] timestamps = new long[count];
+                long timestamp = keepTimestamps ? timeIndex.lastTimestamp() : nextTimestamp();
+                for (int i = 0, position = records.readerIndex(); i < count; i++) {
+                    if (keepTimestamps) {
+                        timestamp = Math.max(timestamp, records.getLong(position + MessageBatch.TIMESTAMP_INDEX));
+                    }
+
+                    timestamps[i] = timestamp;
+                    records.setLong(position + MessageBatch.TIMESTAMP_INDEX, timestamp);
+                    position += MessageBatch.RECORD_PREFIX + records.getInt(position) + records.getInt(position + Integer.BYTES);
+                }
+
+                long base = size.get();
+                ensureLogCapacity(base + records.readableBytes());
+                writeFully(logFile.position(base), records.nioBuffers());
+                size.addAndGet(records.readableBytes());
+
+                // 각 레코드의 파일 내 위치를 idx에 기록
+                int first = this.count.get();
+                ensureIdxCapacity(first + count);
+                int position = records.readerIndex();
+                for (int i = 0; i < count; i++) {
+                    idxMap.putLong((first + i) * Long.BYTES, base + (position - records.readerIndex()));
+                    timeIndex.add(first + i, timestamps[i]);
+                    if (headerIndex != null) {
+                        headerIndex.add(records, position + MessageBatch.RECORD_PREFIX, first + i);
+                    }
+                    position += MessageBatch.RECORD_PREFIX + records.getInt(position) + records.getInt(position + Integer.BYTES);
+                }
+
+                this.count.addAndGet(count);
             }
+
+            return true;
+        } catch (IOException e) {
+            System.err.println("? Segment.writeBatch(): " + e);
+            return false;
+        } finally {
+            closeFiles(evicted);
+        }
+    }
+
+    // 마지막 레코드의 append 시각(레코드가 없으면 -1)
+    public long lastTimestamp() {
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+                ensureTimeIndex();
+
+                return timeIndex.lastTimestamp();
+            }
+        } catch (IOException e) {
+            System.err.println("? Segment.lastTimestamp(): " + e);
+            return -1;
+        } finally {
+            closeFiles(evicted);
+        }
+    }
+
+    /**
+     * append 시각이 timestamp 이상인 첫 레코드의 offset.
+     * time index로 INTERVAL개 이하의 구간을 찾은 뒤 구간 안에서 레코드 시각을 읽어 이진 탐색.
+     * @return offset 혹은 count(모든 레코드가 timestamp 이전인 경우), -1(실패 시)
+     */
+    public int offsetAt(long timestamp) {
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+                ensureTimeIndex();
+
+                int low = timeIndex.floor(timestamp);
+                int high = Math.min(low + TimeIndex.INTERVAL, count.get());
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (timestampAt(mid) < timestamp) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+
+                return low;
+            }
+        } catch (IOException e) {
+            System.err.println("? Segment.offsetAt(): " + e);
+            return -1;
+        } finally {
+            closeFiles(evicted);
         }
     }
 
     public @Nullable TopicRecord read(int offset) {
-        synchronized (fileLock) {
-            try (
-                FileChannel logFile = FileChannel.open(log, StandardOpenOption.READ);
-                RandomAccessFile idxFile = new RandomAccessFile(idx.toFile(), "r")
-            ) {
-                // idx 파일에서 메시지 실제 위치 획득
-                idxFile.seek(offset * Long.BYTES);
-                long position = idxFile.readLong();
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+
+                if (offset < 0 || offset >= count.get()) {
+                    throw new IndexOutOfBoundsException("offset " + offset + ", count " + count.get());
+                }
+
+                // idx 매핑에서 메시지 실제 위치 획득
+                long position = idxMap.getLong(offset * Long.BYTES);
                 
                 // 실제 위치 기반 메시지 읽기(길이 먼저)
-                ByteBuffer lengthBuf = ByteBuffer.allocate(Integer.BYTES * 2);
-                logFile.read(lengthBuf, position);
-                lengthBuf.flip();
+                readFully(logFile, prefixBuf.clear(), position);
                 
                 // header와 payload 길이 획득
-                int headerLength = lengthBuf.getInt();
-                int payloadLength = lengthBuf.getInt();
+                int headerLength = prefixBuf.getInt();
+                int payloadLength = prefixBuf.getInt();
+                long timestamp = prefixBuf.getLong(MessageBatch.TIMESTAMP_INDEX);
                 
                 // header 읽기
-                long headerPos = position + Integer.BYTES * 2;
-                Message.Builder builder = readHeader(logFile, headerPos, headerLength);
+                long headerPos = position + MessageBatch.RECORD_PREFIX;
+                Message.Builder builder = readHeader(headerPos, headerLength);
+                builder.offset(startOffset + offset); // 배치로 저장된 레코드는 header에 offset이 없으므로 위치로 설정
                 
-                // payload 읽기(FileRegion 생성)
+                /**
+                 * payload 읽기(FileRegion 생성)
+                 * DefaultFileRegion은 해제 시 전달받은 FileChannel을 닫으므로, 열어 둔 logFile 대신 경로로 생성(전송 시점에 열림)
+                 */
                 long payloadPos = headerPos + headerLength;
                 FileRegion region = new DefaultFileRegion(log.toFile(), payloadPos, payloadLength);
                 builder.payload(region);
                 
-                return new TopicRecord(builder.build());            
-            } catch (Exception e) {
-                System.err.println("Segment.read(): " + e + " " + idx);
-                return null;
+                return new TopicRecord(builder.build(), timestamp);
             }
+        } catch (Exception e) {
+            System.err.println("Segment.read(): " + e + " " + idx);
+            return null;
+        } finally {
+            closeFiles(evicted);
         }
     }
 
+    /**
+     * offset부터 최대 maxCount개, maxBytes 이하의 연속된 레코드를 하나의 FileRegion으로 반환.
+     * log의 레코드 포맷([header length][payload length][header][payload])은 MessageBatch와 같으므로
+     * 클라이언트는 MessageBatch.decode()로 레코드를 나눌 수 있음.
+     * 첫 레코드는 maxBytes보다 크더라도 포함.
+     */
+    public @Nullable TopicBatch readRange(int offset, int maxCount, long maxBytes) {
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+
+                int count = this.count.get();
+                if (offset < 0 || offset >= count || maxCount <= 0) {
+                    return null;
+                }
+
+                // end(k): offset부터 k개 레코드의 끝 위치(위치는 증가하므로 이진 탐색으로 maxBytes 이하인 최대 k를 찾음)
+                int available = Math.min(maxCount, count - offset);
+                long start = idxMap.getLong(offset * Long.BYTES);
+                int low = 1;
+                int high = available;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (recordsEnd(offset, mid, count) - start <= maxBytes) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+
+                long end = recordsEnd(offset, low, count);
+                FileRegion region = new DefaultFileRegion(log.toFile(), start, end - start);
+
+                // compaction으로 제거된 offset은 region에 포함되지 않으므로 실제 레코드 수만 전달
+                int records = low;
+                if (compacted) {
+                    records = 0;
+                    for (int i = offset; i < offset + low; i++) {
+                        records += isLive(i) ? 1 : 0;
+                    }
+                }
+
+                return new TopicBatch(startOffset + offset, startOffset + offset + low - 1, records, region);
+            }
+        } catch (Exception e) {
+            System.err.println("? Segment.readRange(): " + e + " " + log);
+            return null;
+        } finally {
+            closeFiles(evicted);
+        }
+    }
+
+    /**
+     * condition을 만족하는 첫 레코드의 offset.
+     * condition에 색인된 key가 있으면 색인의 후보만 확인하고(seal 된 segment는 bloom filter로 후보가 없으면 읽지 않음),
+     * 없으면 scan으로 모든 레코드의 header를 확인.
+     */
     public int find(Map<String, String> condition) {
-        int count = count();
-        for (int offset = 0; offset < count; offset++) {
-            TopicRecord record = read(offset);
-            if (record == null || !record.matches(condition)) {
-                continue;
-            }   
+        int[] candidates = candidates(condition);
+        if (candidates != null) {
+            for (int offset : candidates) {
+                if (matches(offset, condition)) {
+                    return offset;
+                }
+            }
+
+            return -1;
+        }
+
+        return scan(condition, () -> false);
+    }
+
+    /**
+     * log를 처음부터 큰 버퍼 단위로 순차적으로 읽으며 header가 condition을 만족하는 첫 레코드의 offset을 찾음.
+     * idx, 공유 파일 핸들을 거치지 않고 레코드 길이로 다음 레코드로 이동하며(payload는 건너뜀), 호출 시점의 log 끝까지만 확인.
+     * @param cancelled 레코드마다 확인하여 true이면 중단(앞선 segment에서 이미 찾은 경우 등)
+     * @return offset 혹은 -1(없거나 중단된 경우)
+     */
+    public int scan(Map<String, String> condition, BooleanSupplier cancelled) {
+        int[] found = {-1};
+        try {
+            forEachRecord(null, false, (offset, header, record) -> {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+
+                if (TopicRecord.matches(header, condition)) {
+                    found[0] = offset;
+                    return false;
+                }
+
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("? Segment.scan(): " + e);
+        }
+
+        return found[0];
+    }
+
+    /**
+     * compaction을 위해 key header가 있는 레코드마다 (값, partition offset)을 전달.
+     * @return 읽은 레코드 수
+     */
+    int collectKeys(String key, RateLimiter limiter, BooleanSupplier cancelled, ObjIntConsumer<String> consumer) throws IOException {
+        int[] records = {0};
+        forEachRecord(limiter, false, (offset, header, record) -> {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+
+            records[0]++;
+            String value = header.get(key);
+            if (value != null) {
+                consumer.accept(value, startOffset + offset);
+            }
+
+            return true;
+        });
+
+        return records[0];
+    }
+
+    /**
+     * keep이 true인 레코드와 마지막 레코드만 남긴 segment를 새 파일(index, log, idx)로 기록하고 seal 된 segment로 반환(seal 된 segment에서만 호출).
+     * offset은 그대로 유지되며, 제거된 offset의 idx 엔트리는 다음에 남은 레코드의 위치를 가리킴(isLive로 구분).
+     * 남은 레코드에는 offset header를 기록하여 배치로 읽더라도 클라이언트가 각 레코드의 offset을 알 수 있도록 함.
+     * 새 파일은 fsync 된 상태이며 segments.log 반영과 교체는 호출자가 수행.
+     * @param keep (key header 값 혹은 null, partition offset) -> 남길지 여부
+     * @param cancelled 레코드마다 확인하여 true이면 중단하고 새 파일을 삭제(SegmentManager가 닫힌 경우)
+     * @return 새 segment 혹은 null(seal 되지 않았거나 중단된 경우)
+     */
+    @Nullable Segment compact(int newIndex, Path newLog, Path newIdx, String key, BiPredicate<@Nullable String, Integer> keep, RateLimiter limiter, BooleanSupplier cancelled) throws IOException {
+        if (!sealed) {
+            return null;
+        }
+
+        int count = this.count.get();
+        long[] positions = new long[count];
+        int[] next = {0}; // 아직 위치를 정하지 않은 첫 offset
+        long[] written = {0};
+        try (FileChannel out = FileChannel.open(newLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+            forEachRecord(limiter, true, (offset, header, record) -> {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+
+                if (offset < count - 1 && !keep.test(header.get(key), startOffset + offset)) {
+                    return true;
+                }
+
+                // 앞에서 제거된 offset들과 이 레코드는 모두 이 레코드의 위치를 가리킴
+                for (int i = next[0]; i <= offset && i < count; i++) {
+                    positions[i] = written[0];
+                }
+                next[0] = offset + 1;
+
+                ByteBuffer rewritten = withOffset(header, record, startOffset + offset);
+                written[0] += rewritten.remaining();
+                if (buffer.remaining() < rewritten.remaining()) {
+                    writeFully(out, limiter, buffer.flip());
+                    buffer.clear();
+                }
+
+                if (buffer.remaining() < rewritten.remaining()) {
+                    writeFully(out, limiter, rewritten);
+                } else {
+                    buffer.put(rewritten);
+                }
+
+                return true;
+            });
+
+            writeFully(out, limiter, buffer.flip());
+            out.force(true);
+        }
+
+        if (cancelled.getAsBoolean()) {
+            Files.deleteIfExists(newLog);
+            return null;
+        }
+
+        for (int i = next[0]; i < count; i++) {
+            positions[i] = written[0];
+        }
+
+        try (FileChannel out = FileChannel.open(newIdx, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES);
+            buffer.asLongBuffer().put(positions);
+            writeFully(out, limiter, buffer);
+            out.force(true);
+        }
+
+        Segment segment = new Segment(newIndex, newLog, newIdx, startOffset, createdAt, count, written[0], false, true);
+        segment.seal();
 
+        return segment;
+    }
+
+    /**
+     * offset이 compaction으로 제거되었다면 이 segment에서 다음으로 남아 있는 offset을 반환.
+     * @return offset 혹은 count(이후에 남은 레코드가 없는 경우)
+     */
+    public int nextLive(int offset) {
+        if (!compacted) {
             return offset;
         }
 
-        return -1;
+        synchronized (fileLock) {
+            int count = this.count.get();
+            while (offset < count && !isLive(offset)) {
+                offset++;
+            }
+
+            return offset;
+        }
+    }
+
+    /**
+     * 지금까지 기록된 log, idx를 디스크에 반영(log 먼저, 이후 idx).
+     * fsync 동안 write가 막히지 않도록 fileLock 밖에서 수행.
+     */
+    public boolean force() {
+        FileChannel file;
+        MappedByteBuffer map;
+        synchronized (fileLock) {
+            file = logFile;
+            map = idxWritable ? idxMap : null;
+        }
+
+        try {
+            try {
+                if (file == null) {
+                    throw new ClosedChannelException();
+                }
+
+                file.force(false);
+            } catch (ClosedChannelException e) {
+                // LRU에 의해 닫힌 경우 새로 열어서 반영(page cache는 파일 단위이므로 같은 효과)
+                forceFile(log);
+            }
+
+            // READ_ONLY로 전환된(seal) idx는 매핑 대신 파일로 반영
+            if (map != null) {
+                map.force();
+            } else if (Files.exists(idx)) {
+                forceFile(idx);
+            }
+
+            return true;
+        } catch (IOException e) {
+            System.err.println("? Segment.force(): " + e);
+            return false;
+        }
+    }
+
+    // 열어 둔 log 파일을 닫음(이후 읽기/쓰기 시 다시 열림)
+    public void close() {
+        OPEN_SEGMENTS.remove(this);
+        synchronized (fileLock) {
+            closeQuietly(logFile);
+            logFile = null;
+        }
     }
 
     public boolean clear() {
         try {
+            close();
             synchronized (fileLock) {
+                idxMap = null;
+                idxWritable = false;
+                count.set(0);
+                size.set(0);
+                allocated = 0;
                 Files.deleteIfExists(log);
                 Files.deleteIfExists(idx);
+                if (headerIndex != null) {
+                    headerIndex.clear();
+                }
+                timeIndex.clear();
             }
 
             return true;
@@ -146,7 +661,79 @@ public class Segment {
         }
     }
 
+    // segments.log에서 다른 segment로 대체된(compaction 등) segment의 파일 삭제
+    static void deleteFiles(int index, Path log, Path idx) {
+        try {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(idx);
+            Files.deleteIfExists(idx.resolveSibling(index + ".hidx"));
+            Files.deleteIfExists(idx.resolveSibling(index + ".tidx"));
+        } catch (IOException e) {
+            System.err.println("? Segment.deleteFiles(): " + e);
+        }
+    }
+
+    /**
+     * 이전 포맷(segments.log에 포맷 레코드가 없음) segment를 현재 포맷으로 복사.
+     * 이전 레코드: [header length][payload length][header][payload], 현재 레코드: [header length][payload length][checksum][timestamp][header][payload]
+     * 레코드 수는 이전 구현과 같이 idx 엔트리 수를 기준으로 함(idx는 log에 기록한 뒤 추가되므로 idx가 가리키는 레코드는 완전함).
+     * 레코드별 저장 시각은 없으므로 timestamp(segment 생성 시각)를 사용.
+     * 원본 파일은 변경하지 않으며, idx가 log 범위를 벗어나는 레코드를 가리키면 IOException(호출자가 시작을 중단).
+     * @return 복사한 레코드 수
+     */
+    static int migrateLegacy(Path legacyLog, Path legacyIdx, Path log, Path idx, long timestamp) throws IOException {
+        OpenOption[] options = new OpenOption[] {
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        };
+
+        try (FileChannel oldLog = FileChannel.open(legacyLog, StandardOpenOption.READ);
+            FileChannel oldIdx = FileChannel.open(legacyIdx, StandardOpenOption.READ);
+            FileChannel newLog = FileChannel.open(log, options);
+            FileChannel newIdx = FileChannel.open(idx, options)) {
+            long logLength = oldLog.size();
+            int count = (int) (oldIdx.size() / Long.BYTES);
+            ByteBuffer entry = ByteBuffer.allocate(Long.BYTES);
+            ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES * 2);
+            long position = 0;
+            for (int i = 0; i < count; i++) {
+                long source = readFully(oldIdx, entry.clear(), (long) i * Long.BYTES).getLong();
+                if (source < 0 || logLength - source < lengths.capacity()) {
+                    throw new IOException("이전 포맷 레코드 손상: " + legacyLog + ", offset: " + i);
+                }
+
+                readFully(oldLog, lengths.clear(), source);
+                int headerLength = lengths.getInt();
+                int payloadLength = lengths.getInt();
+                if (headerLength < 2 || payloadLength < 0 || source + lengths.capacity() + headerLength + payloadLength > logLength) {
+                    throw new IOException("이전 포맷 레코드 손상: " + legacyLog + ", offset: " + i);
+                }
+
+                ByteBuffer body = readFully(oldLog, ByteBuffer.allocate(headerLength + payloadLength), source + lengths.capacity());
+                ByteBuffer prefix = ByteBuffer.allocate(MessageBatch.RECORD_PREFIX)
+                    .putInt(headerLength)
+                    .putInt(payloadLength)
+                    .putInt(MessageBatch.checksum(body.duplicate()))
+                    .putLong(timestamp)
+                    .flip();
+                writeFully(newLog, prefix, body);
+                writeFully(newIdx, entry.clear().putLong(position).flip());
+                position += MessageBatch.RECORD_PREFIX + headerLength + payloadLength;
+            }
+
+            newLog.force(true);
+            newIdx.force(true);
+            return count;
+        }
+    }
+
     public ByteBuffer toBuffer() {
+        return toBuffer(index, log, idx, startOffset, createdAt);
+    }
+
+    // segments.log의 segment 레코드([index][log path][idx path][startOffset][createdAt])
+    static ByteBuffer toBuffer(int index, Path log, Path idx, int startOffset, long createdAt) {
         List<byte[]> pathBytesList = new ArrayList<>();
         for (Path path : new Path[] {log, idx}) {
             pathBytesList.add(path.toString().getBytes(StandardCharsets.UTF_8));
@@ -166,71 +753,585 @@ public class Segment {
         return buffer.flip();
     }
 
-    private long writeLog(FileChannel file, Frame frame) throws IOException {
+    /**
+     * seal 된 segment의 segments.log 레코드([SEAL_MARKER][index][count][size]).
+     * @return seal 레코드 혹은 null(seal 되지 않은 경우)
+     */
+    public @Nullable ByteBuffer toSealBuffer() {
+        if (!sealed) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((Integer.BYTES * 3) + Long.BYTES);
+        buffer.putInt(compacted ? COMPACTED_SEAL_MARKER : SEAL_MARKER)
+            .putInt(index)
+            .putInt(count.get())
+            .putLong(size.get());
+
+        return buffer.flip();
+    }
+
+    /**
+     * fileLock 안에서 호출.
+     * log 파일이 닫혀 있다면 열고, 열린 segment 목록에서 가장 최근 사용으로 표시.
+     * idx는 매핑으로 접근하므로 파일 디스크립터를 유지하지 않음.
+     * @return 열린 segment 수 제한으로 닫아야 하는 segment 목록(fileLock 밖에서 closeFiles()로 닫음)
+     */
+    private List<Segment> openFiles() throws IOException {
+        if (logFile == null || !logFile.isOpen()) {
+            OpenOption[] options = new OpenOption[] {
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            };
+
+            // 쓰기는 항상 레코드 끝에서 하므로 position을 레코드 끝으로 이동(읽기는 절대 위치를 사용하므로 영향 없음)
+            logFile = FileChannel.open(log, options);
+            logFile.position(size.get());
+            allocated = logFile.size();
+        }
+
+        return OPEN_SEGMENTS.touch(this);
+    }
+
+    private static void closeFiles(List<Segment> segments) {
+        for (Segment segment : segments) {
+            synchronized (segment.fileLock) {
+                closeQuietly(segment.logFile);
+                segment.logFile = null;
+            }
+        }
+    }
+
+    /**
+     * 정상적으로 seal 되지 않은 segment(비정상 종료 시의 active segment 등)의 log, idx를 복구.
+     * idx의 엔트리는 레코드를 log에 기록한 뒤 추가되고, 파일 끝에는 0으로 채워진 preallocate 영역이 있을 수 있음.
+     * 1) idx에서 1번 이후 처음으로 0인 엔트리를 이진 탐색하여 기록된 엔트리 수를 구함(첫 엔트리는 항상 0 위치)
+     * 2) 마지막 엔트리부터 거꾸로 길이, checksum이 유효한 레코드를 찾음(보통 마지막 엔트리에서 바로 찾음)
+     * 3) 그 다음 위치부터 log를 스캔하며 idx에 없는 레코드의 엔트리를 다시 만듦(idx가 없거나 짧은 경우)
+     * 4) 마지막 유효 레코드 이후의 log(쓰다 만 레코드), idx를 잘라냄
+     */
+    private void recover() {
+        if (!Files.exists(log)) {
+            return;
+        }
+
+        OpenOption[] options = new OpenOption[] {
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        };
+
+        try (FileChannel logChannel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel idxChannel = FileChannel.open(idx, options)) {
+            long logLength = logChannel.size();
+            long idxLength = idxChannel.size() - (idxChannel.size() % Long.BYTES);
+            MappedByteBuffer map = (idxLength > 0) ? idxChannel.map(FileChannel.MapMode.READ_ONLY, 0, idxLength) : null;
+
+            int indexed = 0;
+            if (map != null) {
+                int low = 1;
+                int high = (int) (idxLength / Long.BYTES);
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (map.getLong(mid * Long.BYTES) == 0) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+
+                indexed = low;
+            }
+
+            CRC32C crc = new CRC32C();
+            int valid = indexed;
+            long end = -1;
+            while (valid > 0 && (end = recordEnd(logChannel, map.getLong((valid - 1) * Long.BYTES), logLength, crc)) < 0) {
+                valid--;
+            }
+
+            long position = (valid > 0) ? end : 0;
+            List<Long> rebuilt = new ArrayList<>();
+            while ((end = recordEnd(logChannel, position, logLength, crc)) >= 0) {
+                rebuilt.add(position);
+                position = end;
+            }
+
+            // 다시 만든 엔트리를 기록하고 유효한 엔트리 이후를 잘라냄
+            long entries = (long) valid + rebuilt.size();
+            ByteBuffer entryBuf = ByteBuffer.allocate(Long.BYTES);
+            for (int i = 0; i < rebuilt.size(); i++) {
+                idxChannel.write(entryBuf.clear().putLong(rebuilt.get(i)).flip(), (valid + i) * (long) Long.BYTES);
+            }
+
+            idxChannel.truncate(entries * Long.BYTES);
+            logChannel.truncate(position);
+
+            idxMap = (entries > 0) ? idxChannel.map(FileChannel.MapMode.READ_ONLY, 0, entries * Long.BYTES) : null;
+            count.set((int) entries);
+            size.set(position);
+            recoveredBytes = logLength - position;
+        } catch (IOException e) {
+            System.err.println("? Segment.recover(): " + e);
+        }
+    }
+
+    /**
+     * position의 레코드가 파일 범위 안에 있고 checksum이 맞으면 레코드 끝 위치를 반환.
+     * @return 레코드 끝 위치 혹은 -1(쓰다 만 레코드, 0으로 채워진 preallocate 영역 등 유효하지 않은 경우)
+     */
+    private static long recordEnd(FileChannel file, long position, long length, CRC32C crc) throws IOException {
+        if (position < 0 || length - position < MessageBatch.RECORD_PREFIX) {
+            return -1;
+        }
+
+        ByteBuffer prefix = readFully(file, ByteBuffer.allocate(MessageBatch.RECORD_PREFIX), position);
+        int headerLength = prefix.getInt();
+        int payloadLength = prefix.getInt();
+        int checksum = prefix.getInt();
+        long end = position + MessageBatch.RECORD_PREFIX + headerLength + payloadLength;
+        if (headerLength < 2 || payloadLength < 0 || end > length) {
+            return -1;
+        }
+
+        // header, payload를 나눠 읽으며 checksum 계산
+        crc.reset();
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(end - position - MessageBatch.RECORD_PREFIX, 64 * 1024));
+        for (long read = position + MessageBatch.RECORD_PREFIX; read < end; ) {
+            chunk.clear().limit((int) Math.min(chunk.capacity(), end - read));
+            crc.update(readFully(file, chunk, read));
+            read += chunk.limit();
+        }
+
+        return ((int) crc.getValue() == checksum) ? end : -1;
+    }
+
+    /**
+     * fileLock 안에서 호출.
+     * entries개의 엔트리를 기록할 수 있도록 idx를 READ_WRITE로 매핑(부족하면 IDX_CHUNK 단위로 파일을 늘려 다시 매핑).
+     */
+    private void ensureIdxCapacity(int entries) throws IOException {
+        long required = (long) entries * Long.BYTES;
+        if (idxWritable && idxMap != null && idxMap.capacity() >= required) {
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(idx, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = Math.max(file.size(), ((required + IDX_CHUNK - 1) / IDX_CHUNK) * IDX_CHUNK);
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("idx 크기 초과: " + length);
+            }
+
+            // READ_WRITE 매핑은 파일 크기보다 크면 파일을 늘림(늘어난 영역은 0으로 채워짐)
+            idxMap = file.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            idxWritable = true;
+        }
+    }
+
+    /**
+     * fileLock 안에서 호출.
+     * log 파일이 required 위치까지 기록할 수 있도록 LOG_EXTENT 단위로 0을 채워 늘림.
+     * 파일 크기 변경(메타데이터 갱신)이 append마다가 아닌 extent마다 한 번 발생하므로 fdatasync 비용도 줄어듦.
+     */
+    private void ensureLogCapacity(long required) throws IOException {
+        if (LOG_EXTENT <= 0 || allocated >= required) {
+            return;
+        }
+
+        long length = ((required + LOG_EXTENT - 1) / LOG_EXTENT) * LOG_EXTENT;
+        ByteBuffer zeros = ZEROS.duplicate();
+        long position = allocated;
+        while (position < length) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), length - position));
+            position += logFile.write(zeros, position); // 절대 위치 쓰기는 channel position을 변경하지 않음
+        }
+
+        allocated = length;
+    }
+
+    private static void forceFile(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            file.force(false);
+        }
+    }
+
+    private static void closeQuietly(@Nullable FileChannel file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("? Segment.closeQuietly(): " + e);
+        }
+    }
+
+    private long writeLog(Frame frame, long timestamp) throws IOException {
         /**
          * 다음 쓰기 위치 획득.
          * 논리 offset과 혼동될 수 있는데, 실제 파일에 저장되는 메시지는 rollover 되기 전까지
          * 계속 누적 되므로 int 범위를 초과하는 위치가 될 수 있음.(대용량 메시지가 여러개 쌓이는 경우)
          * 다만, 논리 offset 즉, 실제 메시지의 개수는 int개를 초과하지 않는다고 가정.(retention 정책에 의해 지속적으로 삭제되므로)
          */
-        long position = file.position();
-
-        // 메시지 길이 기록
-        ByteBuffer lengthBuf = ByteBuffer.allocate(Integer.BYTES * 2)
-            .putInt(frame.headerLength())
-            .putInt(frame.payloadLength());
-        file.write(lengthBuf.flip());  
+        long position = size.get();
+        long length = prefixBuf.capacity() + frame.headerLength() + frame.payloadLength();
+        ensureLogCapacity(position + length);
+        logFile.position(position); // 이전 쓰기가 실패한 경우에도 레코드 끝에서 이어서 기록
 
+        // 길이, header, payload를 gathering write 한 번으로 기록
+        // header, payload 버퍼의 해제는 write()에서 frame 단위로 수행
         ByteBuf header = frame.header();
-        file.write(header.nioBuffer());
-        header.release();
+        int checksum = (frame.payload() instanceof ByteBuf payload)
+            ? MessageBatch.checksum(header.nioBuffer(), payload.nioBuffer())
+            : MessageBatch.checksum(header.nioBuffer());
+
+        prefixBuf.clear()
+            .putInt(frame.headerLength())
+            .putInt(frame.payloadLength())
+            .putInt(checksum)
+            .putLong(timestamp)
+            .flip();
 
         if (frame.payload() instanceof ByteBuf payload) {
-            file.write(payload.nioBuffer());
-            payload.release();
+            writeFully(logFile, prefixBuf, header.nioBuffer(), payload.nioBuffer());
+        } else {
+            writeFully(logFile, prefixBuf, header.nioBuffer());
         }
+        size.addAndGet(length);
 
         // frame.payload()가 FileRegion일 수도 있는데, segment에 write를 할 때는 그럴 경우가 없을것으로 예상되어 고려하지 않음
         return position;
     }
 
-    private void writeIdx(FileChannel file, long position) throws IOException {
-        ByteBuffer offsetBuf = ByteBuffer.allocate(Long.BYTES);
-        offsetBuf.putLong(position).flip();
+    // fileLock 안에서 호출, compaction으로 제거된 offset은 다음 엔트리와 같은 위치를 가리킴
+    private boolean isLive(int offset) {
+        if (!compacted) {
+            return true;
+        }
+
+        long position = idxMap.getLong(offset * Long.BYTES);
+        long next = (offset + 1 < count.get()) ? idxMap.getLong((offset + 1) * Long.BYTES) : size.get();
+        return position < next;
+    }
+
+    /**
+     * log를 순차적으로 읽으며 레코드마다 visitor를 호출(false를 반환하면 중단).
+     * record는 prefix부터 header까지(withPayload이면 payload까지) 담은 버퍼이며 visitor 호출 동안에만 유효.
+     * compaction으로 만들어진 segment는 레코드의 offset header로 offset을 구함(제거된 offset은 건너뜀).
+     */
+    private void forEachRecord(@Nullable RateLimiter limiter, boolean withPayload, RecordVisitor visitor) throws IOException {
+        long end = size.get();
+        try (FileChannel file = FileChannel.open(log, StandardOpenOption.READ)) {
+            LogReader reader = new LogReader(file, limiter);
+            int next = 0;
+            while (reader.position() < end) {
+                ByteBuffer buffer = reader.require(MessageBatch.RECORD_PREFIX);
+                int headerLength = buffer.getInt(buffer.position());
+                int payloadLength = buffer.getInt(buffer.position() + Integer.BYTES);
+                int length = MessageBatch.RECORD_PREFIX + headerLength + (withPayload ? payloadLength : 0);
+
+                buffer = reader.require(length);
+                int start = buffer.position();
+                byte[] bytes = buffer.array();
+                int headerIndex = buffer.arrayOffset() + start + MessageBatch.RECORD_PREFIX;
+                MessageHeader header = MessageHeader.read(bytes, headerIndex + 2, bytes[headerIndex + 1] & 0xFF);
+
+                int offset = next;
+                if (compacted) {
+                    long recorded = header.getLong(MessageHeader.Field.OFFSET, -1);
+                    offset = (recorded >= startOffset) ? (int) (recorded - startOffset) : next;
+                }
+
+                if (!visitor.visit(offset, header, buffer.slice(start, length))) {
+                    return;
+                }
+
+                buffer.position(start + length);
+                if (!withPayload) {
+                    reader.skip(payloadLength);
+                }
+                next = offset + 1;
+            }
+        }
+    }
+
+    // compaction으로 남기는 레코드에 offset header를 기록(이미 같은 offset이 있으면 그대로 사용)
+    private static ByteBuffer withOffset(MessageHeader header, ByteBuffer record, int offset) {
+        if (header.getLong(MessageHeader.Field.OFFSET, -1) == offset) {
+            return record.duplicate();
+        }
+
+        int headerLength = record.getInt(0);
+        int payloadLength = record.getInt(Integer.BYTES);
+        ByteBuffer payload = record.slice(MessageBatch.RECORD_PREFIX + headerLength, payloadLength);
+
+        header.setLong(MessageHeader.Field.OFFSET, offset);
+        ByteBuf headerBuf = Unpooled.buffer(headerLength + 32);
+        headerBuf.writeByte(record.get(MessageBatch.RECORD_PREFIX)); // type
+        header.writeTo(headerBuf);
+
+        int rewrittenLength = headerBuf.readableBytes();
+        return ByteBuffer.allocate(MessageBatch.RECORD_PREFIX + rewrittenLength + payloadLength)
+            .putInt(rewrittenLength)
+            .putInt(payloadLength)
+            .putInt(MessageBatch.checksum(headerBuf.nioBuffer(), payload.duplicate()))
+            .putLong(record.getLong(MessageBatch.TIMESTAMP_INDEX))
+            .put(headerBuf.nioBuffer())
+            .put(payload)
+            .flip();
+    }
+
+    private static void writeFully(FileChannel file, RateLimiter limiter, ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            limiter.acquire(buffer.remaining());
+        }
+
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    // fileLock 안에서 호출, 다음 레코드의 append 시각(시스템 시각이 뒤로 가더라도 segment 안에서는 감소하지 않음)
+    private long nextTimestamp() {
+        return Math.max(System.currentTimeMillis(), timeIndex.lastTimestamp());
+    }
+
+    // fileLock 안에서 호출, offset 레코드의 append 시각을 log에서 읽음
+    private long timestampAt(int offset) throws IOException {
+        long position = idxMap.getLong(offset * Long.BYTES);
+        return readFully(logFile, timestampBuf.clear(), position + MessageBatch.TIMESTAMP_INDEX).getLong();
+    }
+
+    /**
+     * fileLock 안에서 호출.
+     * time index가 모든 레코드를 포함하지 않으면(복원된 segment) .tidx 파일로 복원하고,
+     * 파일을 사용할 수 없으면 INTERVAL 간격의 레코드와 마지막 레코드의 시각을 읽어 다시 만듦(seal 된 segment는 다시 만든 색인을 기록).
+     */
+    private void ensureTimeIndex() throws IOException {
+        int count = this.count.get();
+        if (timeIndex.records() >= count || (sealed && timeIndex.load(count))) {
+            return;
+        }
+
+        timeIndex.reset();
+        for (int offset = 0; offset < count; offset += TimeIndex.INTERVAL) {
+            timeIndex.add(offset, timestampAt(offset));
+        }
+        timeIndex.add(count - 1, timestampAt(count - 1));
+
+        if (sealed) {
+            timeIndex.seal(count);
+        }
+    }
+
+    /**
+     * fileLock 안에서 seal 이후 호출.
+     * 기록 중에 만든 time index를 .tidx로 기록(복원된 segment와 같이 모든 레코드를 포함하지 않으면 처음 조회할 때 만들어 기록).
+     */
+    private void sealTimeIndex() {
+        try {
+            timeIndex.seal(count.get());
+        } catch (IOException e) {
+            System.err.println("? Segment.sealTimeIndex(): " + e);
+        }
+    }
+
+    // @return 기록한 레코드의 segment 내 offset
+    private int writeIdx(long position) throws IOException {
+        int entry = count.get();
+        ensureIdxCapacity(entry + 1);
+        idxMap.putLong(entry * Long.BYTES, position);
+        count.incrementAndGet();
 
-        file.write(offsetBuf);
+        return entry;
     }
 
-    private Message.Builder readHeader(FileChannel file, long position, int length) {
+    // condition의 첫 번째 색인된 key로 조회한 후보 offset 혹은 null(색인된 key가 없거나 색인을 사용할 수 없는 경우, 호출자가 scan)
+    private int @Nullable [] candidates(Map<String, String> condition) {
+        if (headerIndex == null) {
+            return null;
+        }
+
+        for (String key : HeaderIndex.KEYS) {
+            String value = condition.get(key);
+            if (value != null) {
+                return headerIndex.candidates(HeaderIndex.hash(key, value), count.get());
+            }
+        }
+
+        return null;
+    }
+
+    // offset 레코드의 header만 읽어서 condition 확인(payload는 읽지 않음)
+    private boolean matches(int offset, Map<String, String> condition) {
+        List<Segment> evicted = List.of();
+        try {
+            synchronized (fileLock) {
+                evicted = openFiles();
+                if (offset < 0 || offset >= count.get() || !isLive(offset)) {
+                    return false;
+                }
+
+                long position = idxMap.getLong(offset * Long.BYTES);
+                readFully(logFile, prefixBuf.clear(), position);
+                Message message = readHeader(position + MessageBatch.RECORD_PREFIX, prefixBuf.getInt()).build();
+
+                return new TopicRecord(message).matches(condition);
+            }
+        } catch (IOException e) {
+            System.err.println("? Segment.matches(): " + e);
+            return false;
+        } finally {
+            closeFiles(evicted);
+        }
+    }
+
+    /**
+     * fileLock 안에서 seal 이후 호출.
+     * 색인을 .hidx로 기록하며, 메모리 색인과 기존 파일이 모두 segment 전체를 포함하지 않으면(복원된 segment 등) log의 header로 다시 만듦.
+     */
+    private void sealHeaderIndex() {
+        if (headerIndex == null) {
+            return;
+        }
+
+        try {
+            if (headerIndex.seal(count.get())) {
+                return;
+            }
+
+            headerIndex.reset();
+            try (FileChannel file = FileChannel.open(log, StandardOpenOption.READ)) {
+                ByteBuffer prefix = ByteBuffer.allocate(MessageBatch.RECORD_PREFIX);
+                for (int offset = 0; offset < count.get(); offset++) {
+                    if (!isLive(offset)) {
+                        headerIndex.skip();
+                        continue;
+                    }
+
+                    long position = idxMap.getLong(offset * Long.BYTES);
+                    int headerLength = readFully(file, prefix.clear(), position).getInt();
+                    ByteBuffer header = readFully(file, ByteBuffer.allocate(headerLength), position + MessageBatch.RECORD_PREFIX);
+                    headerIndex.add(Unpooled.wrappedBuffer(header), 0, offset);
+                }
+            }
+
+            headerIndex.seal(count.get());
+        } catch (IOException e) {
+            System.err.println("? Segment.sealHeaderIndex(): " + e);
+        }
+    }
+
+    // fileLock 안에서 호출, offset부터 k개 레코드의 log 내 끝 위치
+    private long recordsEnd(int offset, int k, int count) throws IOException {
+        if (offset + k < count) {
+            return idxMap.getLong((offset + k) * Long.BYTES);
+        }
+
+        // 마지막 레코드는 다음 엔트리가 없으므로 길이 정보로 계산
+        long position = idxMap.getLong((count - 1) * Long.BYTES);
+        readFully(logFile, prefixBuf.clear(), position);
+        return position + prefixBuf.capacity() + prefixBuf.getInt() + prefixBuf.getInt();
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+
+        while (remaining > 0) {
+            remaining -= file.write(buffers);
+        }
+    }
+
+    // position부터 buffer가 가득 찰 때까지 읽은 뒤 flip 하여 반환
+    private static ByteBuffer readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("position " + position);
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    private Message.Builder readHeader(long position, int length) {
         ByteBuffer buffer = ByteBuffer.allocate(length);
         Message.Builder builder = Message.builder();
         try {
-            // header bytes 읽기
-            file.read(buffer, position);
-            buffer.flip();
+            // header bytes 읽기(MessageHeader가 배열을 그대로 보관하므로 재사용하지 않음)
+            readFully(logFile, buffer, position);
 
             // Message Builder 생성 및 type 설정
-            builder.type(buffer.get());
-
-            // header key-value 획득
-            int headerCount = buffer.get();
-            for (int i = 0; i < headerCount; i++) {
-                int keyLength = buffer.getShort();
-                byte[] keyBytes = new byte[keyLength];
-                buffer.get(keyBytes);
-                String key = new String(keyBytes, StandardCharsets.UTF_8);
-                
-                int valueLength = buffer.getInt();
-                byte[] valueBytes = new byte[valueLength];
-                buffer.get(valueBytes);
-                String value = new String(valueBytes, StandardCharsets.UTF_8);
+            byte[] bytes = buffer.array();
+            builder.type(bytes[0]);
 
-                builder.header(key, value);
-            }
+            // header key-value는 바이트로 보관하고 조회 시점에 디코딩
+            int headerCount = bytes[1] & 0xFF;
+            builder.header(MessageHeader.read(bytes, 2, headerCount));
         } catch (IOException e) {
             System.err.println("? Segment.readHeader(): " + e);
         }
 
         return builder;
     }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        boolean visit(int offset, MessageHeader header, ByteBuffer record) throws IOException;
+    }
+
+    // forEachRecord에서 사용하는 log 순차 읽기 버퍼(limiter가 있으면 읽은 바이트만큼 대기)
+    private static final class LogReader {
+
+        private final FileChannel file;
+        private final @Nullable RateLimiter limiter;
+        private ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES).flip();
+        private long position = 0; // 버퍼 다음에 읽을 파일 위치
+
+        private LogReader(FileChannel file, @Nullable RateLimiter limiter) {
+            this.file = file;
+            this.limiter = limiter;
+        }
+
+        // 다음에 읽을 레코드의 파일 위치
+        private long position() {
+            return position - buffer.remaining();
+        }
+
+        // 남은 바이트가 length 이상인 버퍼 반환(부족하면 파일에서 채우고, 버퍼보다 큰 레코드는 버퍼를 키움)
+        private ByteBuffer require(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return buffer;
+            }
+
+            if (length > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(length).put(buffer).flip();
+            }
+
+            buffer.compact();
+            while (buffer.position() < length) {
+                int read = file.read(buffer, position);
+                if (read == -1) {
+                    throw new EOFException("position " + position);
+                }
+
+                position += read;
+                if (limiter != null && read > 0) {
+                    limiter.acquire(read);
+                }
+            }
+
+            return buffer.flip();
+        }
+
+        private void skip(long length) {
+            int buffered = (int) Math.min(length, buffer.remaining());
+            buffer.position(buffer.position() + buffered);
+            position += length - buffered;
+        }
+    }
 }
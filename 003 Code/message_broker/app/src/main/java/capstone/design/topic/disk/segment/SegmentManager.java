@@ -7,102 +7,324 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 import org.jspecify.annotations.Nullable;
 
+import com.google.common.util.concurrent.RateLimiter;
+
+import capstone.design.message.Frame;
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.TopicBatch;
 import capstone.design.topic.TopicRecord;
+import io.netty.buffer.ByteBuf;
 
 public class SegmentManager {
 
     private static final String SEGMENTS_FILE = "segments.log";
-    private static final String CLIENT_OFFSETS_FILE = "client_offsets.log";
+    private static final String CLEAN_SHUTDOWN_FILE = "clean_shutdown"; // close()로 정상 종료된 경우에만 존재
     private static final String LOG_FILE_EXTENTION = ".log";
     private static final String IDX_FILE_EXTENTION = ".idx";
+    // active segment 최대 크기, 최대 레코드 수(duration과 함께 먼저 도달하는 조건으로 rollover)
+    private static final long MAX_SEGMENT_BYTES = Long.getLong("broker.segment.maxBytes", 128 * 1024 * 1024);
+    private static final int MAX_SEGMENT_RECORDS = Integer.getInteger("broker.segment.maxRecords", 1024 * 1024);
+    // partition별 tail cache 크기(기본 0: 사용하지 않음, partition마다 따로 잡히므로 partition 수 * 크기만큼 heap을 사용)
+    private static final long DEFAULT_TAIL_CACHE_BYTES = Long.getLong("broker.tailCache.bytes", 0);
+    /**
+     * 색인을 사용할 수 없는 find의 segment 스캔을 수행하는 풀(모든 partition이 공유).
+     * 동시에 스캔하는 segment 수는 broker.find.maxScans(기본 코어 수의 절반)로 제한하여 push를 처리하는 스레드가 밀리지 않도록 함.
+     */
+    private static final int FIND_MAX_SCANS = Integer.getInteger("broker.find.maxScans", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final ForkJoinPool FIND_POOL = new ForkJoinPool(
+        FIND_MAX_SCANS,
+        pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("segment-find-" + thread.getPoolIndex());
+            return thread;
+        },
+        null,
+        true,
+        0,
+        FIND_MAX_SCANS, // 보상 스레드를 만들지 않음
+        1,
+        pool -> true,
+        60,
+        TimeUnit.SECONDS
+    );
+    /**
+     * key 기반 compaction 설정(compaction key가 있는 partition만 사용).
+     * 주기마다 seal 된 segment 중 제거할 수 있는 레코드(같은 key의 더 최신 레코드가 있는) 비율이 minCleanableRatio 이상인 segment를 다시 씀.
+     * 읽기/쓰기 바이트는 모든 partition이 공유하는 bytesPerSec로 제한하여 push, pull의 디스크 I/O를 밀어내지 않도록 함.
+     * 교체된 segment 파일은 읽는 중인 요청이 끝나도록 deleteDelayMillis 이후 삭제.
+     * key마다 마지막 offset을 메모리에 보관하므로 한 번에 수집하는 key 수를 maxKeys로 제한하며,
+     * 앞쪽 segment부터 수집하다가 한도에 도달하면 수집을 마친 segment까지만 압축하고 나머지는 다음 주기로 미룸
+     * (segment 단위로 확인하므로 마지막 segment의 key 수만큼 한도를 넘을 수 있음).
+     */
+    private static final long COMPACTION_INTERVAL_MILLIS = Long.getLong("broker.compaction.intervalMillis", 60 * 1000);
+    private static final double COMPACTION_MIN_CLEANABLE_RATIO = Double.parseDouble(System.getProperty("broker.compaction.minCleanableRatio", "0.5"));
+    private static final RateLimiter COMPACTION_LIMITER = RateLimiter.create(Long.getLong("broker.compaction.bytesPerSec", 16 * 1024 * 1024));
+    private static final long COMPACTION_DELETE_DELAY_MILLIS = Long.getLong("broker.compaction.deleteDelayMillis", 30 * 1000);
+    private static final int COMPACTION_MAX_KEYS = Integer.getInteger("broker.compaction.maxKeys", 1_000_000);
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final Path root;
-    private final List<Segment> segments = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * start offset 기준으로 정렬된 segment 목록.
+     * segment는 생성(=start offset) 순서로 만료되므로 만료된 segment는 항상 앞쪽에 모여 있음.
+     */
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final AtomicInteger expiredBefore = new AtomicInteger(0); // 이 offset 이전에 시작하는 segment는 만료됨(active 제외)
     private final long duration; // 세그먼트 롤오버 기간(ms)
     private final long retention; // 세그먼트 보관 기간(ms)
-    private Segment activeSegment;
+    private volatile Segment activeSegment;
     private final AtomicInteger segmentIndex = new AtomicInteger(0);
     private final AtomicInteger nextOffset = new AtomicInteger(0);
-    private final Map<String, Integer> clientOffsets = new ConcurrentHashMap<>();
-    private FileChannel clientOffsetsFile;
+    private final ClientOffsetStore clientOffsetStore;
+    private final Map<String, Integer> clientOffsets; // clientOffsetStore의 메모리 offset
+    private final Set<Segment> dirtySegments = ConcurrentHashMap.newKeySet(); // fsync 되지 않은 내용이 있는 segment
+    private final @Nullable TailCache tailCache; // 최근 기록된 레코드(tail을 따라 읽는 consumer는 디스크를 읽지 않음)
+    private volatile boolean cleanMarked = false; // clean shutdown 파일이 존재하는지 여부
+    private long recoveryMillis = 0; // 생성 시 segment 복원(복구 포함)에 걸린 시간
+    private final @Nullable String compactionKey; // 이 header가 같은 레코드는 마지막 레코드만 남김(null이면 compaction 하지 않음)
+    private final Object compactionLock = new Object();
+    private @Nullable ScheduledFuture<?> compactionTask;
+    private volatile boolean compactionStopped = false; // close 이후 true(진행 중인 compaction은 중단하고 segment를 교체하지 않음)
 
     public SegmentManager(Path root, long duration, long retention) throws IOException {
+        this(root, duration, retention, DEFAULT_TAIL_CACHE_BYTES, null);
+    }
+
+    public SegmentManager(Path root, long duration, long retention, @Nullable String compactionKey) throws IOException {
+        this(root, duration, retention, DEFAULT_TAIL_CACHE_BYTES, compactionKey);
+    }
+
+    public SegmentManager(Path root, long duration, long retention, long tailCacheBytes) throws IOException {
+        this(root, duration, retention, tailCacheBytes, null);
+    }
+
+    public SegmentManager(Path root, long duration, long retention, long tailCacheBytes, @Nullable String compactionKey) throws IOException {
         this.root = root;
         this.duration = duration;
         this.retention = retention;
+        this.tailCache = (tailCacheBytes > 0) ? new TailCache(tailCacheBytes) : null;
+        this.clientOffsetStore = new ClientOffsetStore(root);
+        this.clientOffsets = clientOffsetStore.offsets();
+        this.compactionKey = compactionKey;
 
         Files.createDirectories(root);
 
         loadSegments();
-        loadClientOffsets();
+        clientOffsetStore.load(nextOffset.get());
+    }
+
+    /**
+     * compaction key가 있으면 주기적인 compaction을 시작(생성이 끝난 뒤 DiskTopic이 호출, 이미 시작했으면 무시).
+     * 생성자에서 시작하면 생성이 끝나기 전의 this가 CLEANER 스레드에 노출되므로 분리.
+     */
+    public synchronized void startCompaction() {
+        if (compactionKey == null || compactionTask != null) {
+            return;
+        }
+
+        compactionStopped = false;
+        compactionTask = CLEANER.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_MILLIS, COMPACTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     public String root() { return root.toString(); }
+    public int nextOffset() { return nextOffset.get(); } // 다음에 기록될 offset
+    public @Nullable TailCache tailCache() { return tailCache; }
+    public long recoveryMillis() { return recoveryMillis; }
 
-    public int write(Message message) {
-        if (activeSegment == null || !activeSegment.isActive(duration)) {
+    // offset 할당과 append가 섞이지 않도록 write, writeBatch는 파티션 단위로 동기화
+    public synchronized int write(Message message) {
+        message.setOffset(nextOffset.get());
+        Frame frame = message.toFrame();
+        int headerLength = frame.headerLength();
+        if (needsRollover(MessageBatch.RECORD_PREFIX + headerLength + frame.payloadLength(), 1)) {
+            rollover();
+        }
+
+        byte[] cached = (tailCache != null) ? toBytes(frame) : null; // frame은 segment.write()에서 해제되므로 미리 복사
+
+        if (!activeSegment.write(frame)) {
+            return -1;
+        }
+
+        dirtySegments.add(activeSegment);
+        int offset = nextOffset.getAndIncrement();
+        if (cached != null) {
+            tailCache.append(offset, cached, headerLength, activeSegment.lastTimestamp()); // segment에 기록된 append 시각
+        }
+
+        return offset;
+    }
+
+    /**
+     * 배치 레코드에 연속된 offset 범위를 할당하고 active segment에 한 번에 append.
+     * @return 배치의 첫 번째 offset 혹은 -1(실패 시)
+     */
+    public int writeBatch(ByteBuf records, int count) {
+        return writeBatch(records, count, false);
+    }
+
+    /**
+     * @param keepTimestamps true이면 레코드의 timestamp를 append 시각으로 덮어쓰지 않음(HybridTopic의 spill, Segment.writeBatch() 참고)
+     */
+    public synchronized int writeBatch(ByteBuf records, int count, boolean keepTimestamps) {
+        if (needsRollover(records.readableBytes(), count)) {
             rollover();
         }
 
-        message.addHeader("offset", String.valueOf(nextOffset.get()));
-        if (!activeSegment.write(message.toFrame())) {
+        if (!activeSegment.writeBatch(records, count, keepTimestamps)) {
             return -1;
         }
 
-        return nextOffset.getAndIncrement();
+        dirtySegments.add(activeSegment);
+        int base = nextOffset.getAndAdd(count);
+        if (tailCache != null) {
+            // 레코드의 [header][payload] 부분만 복사해서 캐시(timestamp는 Segment.writeBatch()에서 기록된 시각)
+            int position = records.readerIndex();
+            for (int i = 0; i < count; i++) {
+                int headerLength = records.getInt(position);
+                int payloadLength = records.getInt(position + Integer.BYTES);
+                byte[] record = new byte[headerLength + payloadLength];
+                records.getBytes(position + MessageBatch.RECORD_PREFIX, record);
+                tailCache.append(base + i, record, headerLength, records.getLong(position + MessageBatch.TIMESTAMP_INDEX));
+
+                position += MessageBatch.RECORD_PREFIX + headerLength + payloadLength;
+            }
+        }
+
+        return base;
+    }
+
+    /**
+     * 마지막 fsync 이후 기록된 segment들을 디스크에 반영.
+     * rollover 직후라면 이전 active segment도 함께 반영됨.
+     * write와 동시에 호출될 수 있으며, 이 호출 이전에 반환된 write는 모두 반영됨.
+     */
+    public boolean force() {
+        boolean success = true;
+        for (Segment segment : dirtySegments) {
+            dirtySegments.remove(segment);
+            if (!segment.force()) {
+                dirtySegments.add(segment);
+                success = false;
+            }
+        }
+
+        return success;
     }
 
     public @Nullable TopicRecord peek(String clientId) {
-        List<Segment> validSegments = segments.stream()
-            .filter(segment -> activeSegment == segment || !segment.isExpired(retention))
-            .toList();
+        return readAt(clientId, (segment, offset) -> {
+            TopicRecord cached = (tailCache != null) ? tailCache.get(segment.startOffset() + offset) : null;
+            return (cached != null) ? cached : segment.read(offset);
+        });
+    }
 
-        int defaultOffset = validSegments.stream()
-            .mapToInt(Segment::startOffset) // 유효한 세그먼트들의 start offset
-            .min() // 중 최소값
-            .orElse(0); // 없으면 0
+    /**
+     * client offset부터 연속된 레코드를 하나의 FileRegion으로 조회(client offset이 속한 segment 안에서만).
+     */
+    public @Nullable TopicBatch peekBatch(String clientId, int maxCount, long maxBytes) {
+        return readAt(clientId, (segment, offset) -> segment.readRange(offset, maxCount, maxBytes));
+    }
 
-        /**
-         * client id에 해당하는 offset이 없다면, default offset으로 설정
-         * 있다면, default offset과 비교하여 더 큰 값으로 설정
-         * default offset > offset인 경우는 세그먼트가 만료되어 기존 offset이 유효하지 않은 경우.
-         */
-        int clientOffset = clientOffsets.compute(clientId, (ignored, offset) -> {
+    // offset의 레코드 조회(client offset과 무관, HybridTopic 등에서 사용)
+    public @Nullable TopicRecord read(int offset) {
+        return readAt(offset, (segment, segmentOffset) -> {
+            TopicRecord cached = (tailCache != null) ? tailCache.get(segment.startOffset() + segmentOffset) : null;
+            return (cached != null) ? cached : segment.read(segmentOffset);
+        });
+    }
+
+    // offset부터 연속된 레코드 조회(client offset과 무관, HybridTopic 등에서 사용)
+    public @Nullable TopicBatch readRange(int offset, int maxCount, long maxBytes) {
+        return readAt(offset, (segment, segmentOffset) -> segment.readRange(segmentOffset, maxCount, maxBytes));
+    }
+
+    /**
+     * client의 다음 읽을 offset.
+     * 저장된 offset이 없거나 만료된 segment를 가리키면 첫 유효 offset으로 설정.
+     */
+    public int clientOffset(String clientId) {
+        int defaultOffset = firstOffset();
+        return clientOffsets.compute(clientId, (ignored, offset) -> {
             return offset == null ? defaultOffset : Math.max(offset, defaultOffset);
         });
+    }
+
+    /**
+     * client offset을 검증 없이 설정(segment 밖의 offset을 함께 관리하는 HybridTopic에서 사용).
+     * seek과 같이 메모리에만 반영됨.
+     */
+    public void position(String clientId, int offset) {
+        clientOffsets.put(clientId, offset);
+    }
 
-        return validSegments.stream()
-            .filter(segment -> clientOffset >= segment.startOffset() && clientOffset < segment.endOffset())
-            .findFirst()
-            .map(segment -> segment.read(clientOffset - segment.startOffset()))
-            .orElse(null);
+    // 첫 유효 segment의 start offset(유효한 segment가 없으면 다음에 기록될 offset)
+    public int firstOffset() {
+        Segment first = firstValid();
+        return (first == null) ? nextOffset.get() : first.startOffset();
     }
 
+    // 메모리에만 반영하고 파일 기록은 ClientOffsetStore가 백그라운드에서 모아서 수행
     public void commit(String clientId, int offset) {
-        int updatedOffset = offset + 1;
-
-        clientOffsets.put(clientId, updatedOffset); // 메모리에 반영
-        appendClientOffset(clientId, updatedOffset); // 파일에 반영
+        clientOffsetStore.commit(clientId, offset + 1);
     }
 
-    public int find(Map<String, String> condition) {
-        for (Segment segment: segments) {
-            if (activeSegment != segment && segment.isExpired(retention)) {
-                continue;
-            }
+    /**
+     * condition을 만족하는 첫 레코드의 offset(없으면 -1).
+     * 색인된 key가 있으면 호출 스레드에서 바로 조회하고, 없으면 segment들을 FIND_POOL에서 병렬로 스캔.
+     * 병렬로 스캔하더라도 가장 앞선 offset을 반환하며, 앞선 segment에서 찾으면 뒤의 segment는 스캔을 중단.
+     * FIND_POOL의 스레드가 모두 스캔 중이면 이후 segment 스캔은 풀의 큐에서 기다림(거절하거나 스레드를 늘리지 않음).
+     */
+    public CompletableFuture<Integer> findAsync(Map<String, String> condition) {
+        if (HeaderIndex.covers(condition)) {
+            return CompletableFuture.completedFuture(findIndexed(condition));
+        }
 
+        AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+        CompletableFuture<?>[] scans = validSegments().stream()
+            .map(segment -> CompletableFuture.runAsync(() -> {
+                int offset = segment.scan(condition, () -> first.get() < segment.startOffset());
+                if (offset >= 0) {
+                    first.accumulateAndGet(segment.startOffset() + offset, Math::min);
+                }
+            }, FIND_POOL))
+            .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(scans)
+            .thenApply(ignored -> (first.get() == Integer.MAX_VALUE) ? -1 : first.get());
+    }
+
+    private int findIndexed(Map<String, String> condition) {
+        for (Segment segment : validSegments()) {
             int offset = segment.find(condition);
             if (offset >= 0) {
                 return segment.startOffset() + offset;
@@ -122,15 +344,53 @@ public class SegmentManager {
         return true;
     }
 
+    /**
+     * client offset을 append 시각이 timestamp 이상인 첫 레코드로 이동.
+     * segment의 마지막 레코드 시각으로 segment를 이진 탐색한 뒤, 해당 segment의 time index로 offset을 찾음.
+     * @return 이동한 offset(timestamp 이후의 레코드가 없으면 다음에 기록될 offset) 혹은 -1(실패 시)
+     */
+    public int seekTime(String clientId, long timestamp) {
+        List<Segment> targets = new ArrayList<>(validSegments());
+        int low = 0;
+        int high = targets.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (targets.get(mid).lastTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int offset = nextOffset.get();
+        if (low < targets.size()) {
+            Segment segment = targets.get(low);
+            int segmentOffset = segment.offsetAt(timestamp);
+            if (segmentOffset < 0) {
+                return -1;
+            }
+
+            offset = segment.startOffset() + segmentOffset;
+        }
+
+        clientOffsets.put(clientId, offset);
+
+        return offset;
+    }
+
     /**
      * 유효한 segment 들의 메시지의 합 반환.
      * active segment는 만료되더라도 유효하다고 판단.
+     * 유효한 segment들은 offset이 연속되므로 첫 유효 segment의 시작부터 마지막 segment의 끝까지의 개수와 같음.
      */
     public int count() {
-        return segments.stream()
-            .filter(segment -> activeSegment == segment || !segment.isExpired(retention))
-            .mapToInt(Segment::count)
-            .sum();
+        Segment first = firstValid();
+        Map.Entry<Integer, Segment> last = segments.lastEntry();
+        if (first == null || last == null) {
+            return 0;
+        }
+
+        return last.getValue().endOffset() - first.startOffset();
     }
 
     /**
@@ -139,28 +399,219 @@ public class SegmentManager {
      * segments.log 파일을 갱신하게 될 경우 clean interval이 짧을 경우 I/O가 자주 발생할 수 있기 때문.
      */
     public void clean() {
-        Iterator<Segment> iterator = segments.iterator();
+        Segment first = firstValid();
+        int bound = (first == null) ? Integer.MAX_VALUE : first.startOffset();
+
+        // 만료된 segment는 첫 유효 segment 앞쪽에만 존재
+        Iterator<Segment> iterator = segments.headMap(bound).values().iterator();
         while (iterator.hasNext()) {
             Segment segment = iterator.next();
             if (segment != activeSegment && segment.isExpired(retention)) {
                 segment.clear(); // log, idx 파일 삭제
+                dirtySegments.remove(segment);
                 iterator.remove();
             }
         }
     }
 
+    /**
+     * compaction key 기준으로 같은 key의 마지막 레코드만 남도록 seal 된 segment를 다시 씀(active segment는 key 수집에만 사용).
+     * offset은 유지되며 제거된 offset은 읽을 때 건너뜀. key header가 없는 레코드는 항상 남김.
+     * 새 segment는 파일을 fsync 한 뒤 segments.log에 (segment 레코드 + seal 레코드)로 추가하고 교체하며,
+     * 복원 시 start offset이 같은 segment는 나중에 기록된 것을 사용하므로 도중에 종료되더라도 이전 segment가 그대로 남음.
+     * close 이후에는 수행하지 않으며, 진행 중에 close 되면 다음 레코드에서 중단하고 segment를 교체하지 않음.
+     * @return 다시 쓴 segment 수
+     */
+    public int compact() {
+        if (compactionKey == null || compactionStopped) {
+            return 0;
+        }
+
+        synchronized (compactionLock) {
+            long start = System.nanoTime();
+            try {
+                // key -> 마지막 offset, segment -> key가 있는 레코드 수
+                Map<String, Integer> latest = new HashMap<>();
+                Map<Segment, int[]> keyed = new HashMap<>();
+                List<Segment> targets = new ArrayList<>();
+                for (Segment segment : validSegments()) {
+                    // 수집한 segment의 key는 모두 latest에 있으므로 이후 segment를 수집하지 않더라도 최신 레코드를 제거하지 않음
+                    if (latest.size() >= COMPACTION_MAX_KEYS) {
+                        break;
+                    }
+
+                    int[] counter = new int[1];
+                    segment.collectKeys(compactionKey, COMPACTION_LIMITER, () -> compactionStopped, (value, offset) -> {
+                        latest.merge(value, offset, Math::max);
+                        counter[0]++;
+                    });
+                    keyed.put(segment, counter);
+                    targets.add(segment);
+                }
+
+                if (compactionStopped) {
+                    return 0;
+                }
+
+                // segment -> 같은 key의 마지막 레코드 수(나머지는 제거 대상)
+                Map<Integer, int[]> survivors = new HashMap<>();
+                for (int offset : latest.values()) {
+                    Map.Entry<Integer, Segment> entry = segments.floorEntry(offset);
+                    if (entry != null) {
+                        survivors.computeIfAbsent(entry.getKey(), ignored -> new int[1])[0]++;
+                    }
+                }
+
+                int compacted = 0;
+                long before = 0;
+                long after = 0;
+                for (Segment segment : targets) {
+                    if (compactionStopped) {
+                        break;
+                    }
+
+                    if (segment == activeSegment || !segment.isSealed() || segment.count() == 0) {
+                        continue;
+                    }
+
+                    int removable = keyed.get(segment)[0] - survivors.getOrDefault(segment.startOffset(), new int[1])[0];
+                    if (removable <= 0 || (double) removable / segment.count() < COMPACTION_MIN_CLEANABLE_RATIO) {
+                        continue;
+                    }
+
+                    int index = segmentIndex.getAndIncrement();
+                    Segment replacement = segment.compact(
+                        index,
+                        root.resolve(index + LOG_FILE_EXTENTION),
+                        root.resolve(index + IDX_FILE_EXTENTION),
+                        compactionKey,
+                        (value, offset) -> value == null || offset.equals(latest.get(value)),
+                        COMPACTION_LIMITER,
+                        () -> compactionStopped
+                    );
+                    if (replacement == null || !replace(segment, replacement)) {
+                        if (replacement != null) {
+                            replacement.clear();
+                        }
+                        continue;
+                    }
+
+                    compacted++;
+                    before += segment.size();
+                    after += replacement.size();
+                    CLEANER.schedule(segment::clear, COMPACTION_DELETE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (compacted > 0) {
+                    System.out.println(
+                        "! SegmentManager 압축(" + root + "): " + (System.nanoTime() - start) / 1_000_000 + "ms" +
+                        ", keys: " + latest.size() +
+                        ", segments: " + compacted +
+                        ", bytes: " + before + " -> " + after
+                    );
+                }
+
+                return compacted;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("? SegmentManager.compact(): " + e);
+                return 0;
+            }
+        }
+    }
+
+    // segments.log에 replacement를 기록한 뒤 segment를 교체(그 사이 만료 등으로 segment가 바뀌었거나 close 되었다면 false)
+    private synchronized boolean replace(Segment segment, Segment replacement) throws IOException {
+        if (compactionStopped || segments.get(segment.startOffset()) != segment) {
+            return false;
+        }
+
+        unmarkClean();
+        ByteBuffer segmentBuffer = replacement.toBuffer();
+        ByteBuffer sealBuffer = replacement.toSealBuffer();
+        ByteBuffer buffer = ByteBuffer.allocate(segmentBuffer.remaining() + sealBuffer.remaining())
+            .put(segmentBuffer)
+            .put(sealBuffer)
+            .flip();
+        if (!appendSegments(buffer)) {
+            return false;
+        }
+        forceFile(root.resolve(SEGMENTS_FILE));
+
+        segments.put(segment.startOffset(), replacement);
+        dirtySegments.remove(segment);
+        if (tailCache != null) {
+            tailCache.clear();
+        }
+
+        return true;
+    }
+
+    /**
+     * active segment를 seal 하고 모든 segment를 디스크에 반영한 뒤 clean shutdown 파일을 남김.
+     * 다음 시작 시 clean shutdown 파일이 있으면 seal 된 segment를 검증 없이 복원.
+     * close 이후 write 하면 새 segment로 rollover 되며 clean shutdown 파일은 제거됨.
+     * compaction은 중단되며 다시 시작하려면 startCompaction()을 호출.
+     * 진행 중인 compaction은 replace와 같은 lock으로 구분되므로 close 이후에는 segment를 교체하지 않음.
+     */
+    public synchronized void close() {
+        compactionStopped = true;
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+            compactionTask = null;
+        }
+
+        if (activeSegment != null) {
+            activeSegment.seal();
+
+            ByteBuffer sealBuffer = activeSegment.toSealBuffer();
+            if (sealBuffer != null) {
+                appendSegments(sealBuffer);
+            }
+
+            activeSegment = null;
+        }
+
+        boolean success = force();
+        try {
+            forceFile(root.resolve(SEGMENTS_FILE));
+            clientOffsetStore.close();
+
+            if (success) {
+                Files.createFile(root.resolve(CLEAN_SHUTDOWN_FILE));
+                forceFile(root);
+                cleanMarked = true;
+            }
+        } catch (IOException e) {
+            System.err.println("? SegmentManager.close(): " + e);
+        }
+
+        segments.values().forEach(Segment::close);
+    }
+
     public boolean clearAll() {
         try {
+            compactionStopped = true;
+            if (compactionTask != null) {
+                compactionTask.cancel(false);
+                compactionTask = null;
+            }
+
+
             // 모든 세그먼트 파일 삭제
-            for (Segment segment: segments) {
+            for (Segment segment: segments.values()) {
                 segment.clear();
             }
 
             segments.clear();
+            dirtySegments.clear();
+            if (tailCache != null) {
+                tailCache.clear();
+            }
 
             // 메타 파일 및 오프셋 파일 삭제
             Files.deleteIfExists(root.resolve(SEGMENTS_FILE));
-            Files.deleteIfExists(root.resolve(CLIENT_OFFSETS_FILE));
+            clientOffsetStore.clear();
+            Files.deleteIfExists(root.resolve(CLEAN_SHUTDOWN_FILE));
 
             // 루트 디렉토리 삭제
             Files.deleteIfExists(root);
@@ -172,19 +623,153 @@ public class SegmentManager {
         }
     }
 
+    /**
+     * client offset을 결정하고 해당 offset이 속한 segment에서 reader로 조회.
+     * @param reader (segment, segment 내 상대 offset) -> 조회 결과
+     */
+    private <T> @Nullable T readAt(String clientId, BiFunction<Segment, Integer, T> reader) {
+        /**
+         * client id에 해당하는 offset이 없다면, 첫 유효 offset으로 설정
+         * 있다면, 첫 유효 offset과 비교하여 더 큰 값으로 설정
+         * 첫 유효 offset > offset인 경우는 세그먼트가 만료되어 기존 offset이 유효하지 않은 경우.
+         */
+        return readAt(clientOffset(clientId), reader);
+    }
+
+    // offset이 속한 segment에서 reader로 조회
+    private <T> @Nullable T readAt(int target, BiFunction<Segment, Integer, T> reader) {
+        // target 이하에서 시작하는 마지막 segment가 target을 포함하는 segment
+        Map.Entry<Integer, Segment> entry = segments.floorEntry(target);
+        if (entry == null || target >= entry.getValue().endOffset()) {
+            return null;
+        }
+
+        // compaction으로 제거된 offset이면 다음으로 남아 있는 레코드부터 조회
+        Segment segment = entry.getValue();
+        int offset = segment.nextLive(target - segment.startOffset());
+        while (offset >= segment.count()) {
+            entry = segments.higherEntry(entry.getKey());
+            if (entry == null) {
+                return null;
+            }
+
+            segment = entry.getValue();
+            offset = segment.nextLive(0);
+        }
+
+        return reader.apply(segment, offset);
+    }
+
+    // frame의 [header][payload] 바이트 복사(payload가 FileRegion이면 null)
+    private static byte @Nullable [] toBytes(Frame frame) {
+        if (frame.payload() != null && !(frame.payload() instanceof ByteBuf)) {
+            return null;
+        }
+
+        ByteBuf header = frame.header();
+        byte[] bytes = new byte[frame.headerLength() + frame.payloadLength()];
+        header.getBytes(header.readerIndex(), bytes, 0, frame.headerLength());
+        if (frame.payload() instanceof ByteBuf payload) {
+            payload.getBytes(payload.readerIndex(), bytes, frame.headerLength(), frame.payloadLength());
+        }
+
+        return bytes;
+    }
+
+    /**
+     * 만료되지 않은 첫 segment(active segment는 만료되더라도 유효).
+     * 한 번 만료된 segment는 다시 유효해지지 않으므로 확인한 만료 경계(expiredBefore)부터 탐색.
+     */
+    private @Nullable Segment firstValid() {
+        Map.Entry<Integer, Segment> entry = segments.ceilingEntry(expiredBefore.get());
+        while (entry != null) {
+            Segment segment = entry.getValue();
+            if (segment == activeSegment || !segment.isExpired(retention)) {
+                return segment;
+            }
+
+            expiredBefore.accumulateAndGet(entry.getKey() + 1, Math::max);
+            entry = segments.higherEntry(entry.getKey());
+        }
+
+        return null;
+    }
+
+    private Collection<Segment> validSegments() {
+        Segment first = firstValid();
+        if (first == null) {
+            return List.of();
+        }
+
+        return segments.tailMap(first.startOffset()).values();
+    }
+
+    /**
+     * start offset이 같은 segment는 메시지 없이 rollover 된 segment(빈 segment)이므로 새 segment로 대체하고 파일을 제거.
+     */
+    private void addSegment(Segment segment) {
+        Segment previous = segments.put(segment.startOffset(), segment);
+        if (previous != null && previous != segment) {
+            previous.clear();
+            dirtySegments.remove(previous);
+        }
+    }
+
+    /**
+     * active segment가 없거나, duration이 지났거나, bytes/records를 추가하면 최대 크기/레코드 수를 넘는 경우 rollover.
+     * 비어 있는 segment는 최대 크기보다 큰 레코드라도 기록(빈 segment가 계속 생기지 않도록).
+     */
+    private boolean needsRollover(long bytes, int records) {
+        if (activeSegment == null || !activeSegment.isActive(duration)) {
+            return true;
+        }
+
+        if (activeSegment.count() == 0) {
+            return false;
+        }
+
+        return activeSegment.size() + bytes > MAX_SEGMENT_BYTES
+            || (long) activeSegment.count() + records > MAX_SEGMENT_RECORDS;
+    }
+
     private void rollover() {
+        // 이전 active segment는 더 이상 append 하지 않으므로 preallocate 된 영역을 정리하고 seal 레코드를 기록
+        if (activeSegment != null) {
+            activeSegment.seal();
+
+            ByteBuffer sealBuffer = activeSegment.toSealBuffer();
+            if (sealBuffer != null) {
+                appendSegments(sealBuffer);
+            }
+        }
+
+        unmarkClean();
+
         int index = segmentIndex.getAndIncrement();
         Path log = root.resolve(index + LOG_FILE_EXTENTION);
         Path idx = root.resolve(index + IDX_FILE_EXTENTION);
         int startOffset = nextOffset.get();
 
-        activeSegment = new Segment(index, log, idx, startOffset, System.currentTimeMillis());
-        segments.add(activeSegment);
+        Segment segment = new Segment(index, log, idx, startOffset, System.currentTimeMillis());
+        addSegment(segment);
+        activeSegment = segment;
 
-        appendActiveSegment();
+        appendSegments(activeSegment.toBuffer());
     }
 
-    private boolean appendActiveSegment() {
+    // 정상 종료 이후 다시 기록하는 경우 clean shutdown 파일 제거
+    private void unmarkClean() {
+        if (cleanMarked) {
+            try {
+                Files.deleteIfExists(root.resolve(CLEAN_SHUTDOWN_FILE));
+                cleanMarked = false;
+            } catch (IOException e) {
+                System.err.println("? SegmentManager.unmarkClean(): " + e);
+            }
+        }
+    }
+
+    private boolean appendSegments(ByteBuffer buffer) {
         OpenOption[] options = new OpenOption[] {
             StandardOpenOption.CREATE,
             StandardOpenOption.WRITE,
@@ -192,91 +777,185 @@ public class SegmentManager {
         };
 
         try (FileChannel segmentsFile = FileChannel.open(root.resolve(SEGMENTS_FILE), options)) {
-            segmentsFile.write(activeSegment.toBuffer());
+            // 새 파일이면 포맷 레코드부터 기록
+            if (segmentsFile.size() == 0) {
+                segmentsFile.write(formatBuffer());
+            }
+
+            segmentsFile.write(buffer);
             return true;
         } catch (Exception e) {
-            System.err.println("? SegmentManager.appendActiveSegment(): " + e);
+            System.err.println("? SegmentManager.appendSegments(): " + e);
             return false;
         }
     }
 
-    private boolean appendClientOffset(String clientId, int offset) {
-        OpenOption[] options = new OpenOption[] {
-            StandardOpenOption.CREATE,
-            StandardOpenOption.WRITE,
-            StandardOpenOption.APPEND
-        };
+    private boolean updateSegments() {
+        List<ByteBuffer> records = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            records.add(segment.toBuffer());
 
-        try {
-            if (clientOffsetsFile == null) {
-                clientOffsetsFile = FileChannel.open(root.resolve(CLIENT_OFFSETS_FILE), options);
+            ByteBuffer sealBuffer = segment.toSealBuffer();
+            if (sealBuffer != null) {
+                records.add(sealBuffer);
             }
+        }
 
-            byte[] clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
-            ByteBuffer buffer = ByteBuffer.allocate((Integer.BYTES * 2) + clientIdBytes.length);
-            buffer.putInt(clientIdBytes.length)
-                .put(clientIdBytes)
-                .putInt(offset);
-            clientOffsetsFile.write(buffer.flip());
-
+        try {
+            writeSegmentsFile(records);
             return true;
         } catch (Exception e) {
-            System.err.println("? SegmentManager.appendClientOffset(): " + e);
+            System.err.println("? SegmentManager.updateSegments(): " + e);
             return false;
         }
     }
 
-    private boolean updateSegments() {
+    // segments.log를 임시 파일에 기록하고 fsync 한 뒤 교체(쓰는 도중 중단되더라도 이전 내용이 남음)
+    private void writeSegmentsFile(List<ByteBuffer> records) throws IOException {
         OpenOption[] options = new OpenOption[] {
             StandardOpenOption.CREATE,
             StandardOpenOption.WRITE,
             StandardOpenOption.TRUNCATE_EXISTING
         };
 
-        try (FileChannel segmentsFile = FileChannel.open(root.resolve(SEGMENTS_FILE), options)) {
-            for (Segment segment : segments) {
-                segmentsFile.write(segment.toBuffer());
+        Path temp = root.resolve(SEGMENTS_FILE + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, options)) {
+            ByteBuffer format = formatBuffer();
+            while (format.hasRemaining()) {
+                file.write(format);
             }
 
-            return true;
-        } catch (Exception e) {
-            System.err.println("? SegmentManager.updateSegments(): " + e);
-            return false;
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    file.write(record);
+                }
+            }
+
+            file.force(true);
         }
+
+        Files.move(temp, root.resolve(SEGMENTS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceFile(root);
     }
 
-    private boolean updateClientOffsets() {
-        OpenOption[] options = new OpenOption[] {
-            StandardOpenOption.CREATE,
-            StandardOpenOption.WRITE,
-            StandardOpenOption.TRUNCATE_EXISTING
-        };
+    private static ByteBuffer formatBuffer() {
+        return ByteBuffer.allocate(Integer.BYTES * 2)
+            .putInt(Segment.FORMAT_MARKER)
+            .putInt(Segment.FORMAT_VERSION)
+            .flip();
+    }
 
-        try (FileChannel file = FileChannel.open(root.resolve(CLIENT_OFFSETS_FILE), options)) {
-            for (Map.Entry<String, Integer> entry : clientOffsets.entrySet()) {
-                byte[] clientIdBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
-                ByteBuffer buffer = ByteBuffer.allocate((Integer.BYTES * 2) + clientIdBytes.length);
-                buffer.putInt(clientIdBytes.length)
-                    .put(clientIdBytes)
-                    .putInt(entry.getValue());
-                file.write(buffer.flip());
+    /**
+     * 포맷 레코드가 없는(이전 포맷) segments.log의 segment를 현재 포맷으로 옮김.
+     * 각 segment를 새 index의 파일로 복사하고(Segment.migrateLegacy), 새 segments.log를 임시 파일에 기록한 뒤 교체.
+     * 교체 전에 중단되면 다음 시작 시 처음부터 다시 옮기며(복사한 파일은 덮어씀), 교체한 뒤에 이전 파일을 삭제.
+     * 이전 파일은 잘라내거나 변경하지 않으며, 옮기지 못하면 IOException으로 시작을 중단(partition을 사용할 수 없음).
+     * @return 현재 포맷 segments.log의 포맷 레코드 이후 내용
+     */
+    private ByteBuffer migrateLegacy(ByteBuffer buffer) throws IOException {
+        record LegacyEntry(int index, Path log, Path idx, int startOffset, long createdAt) {}
+        List<LegacyEntry> entries = new ArrayList<>();
+        int nextIndex = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                int index = buffer.getInt();
+                Path[] paths = new Path[2];
+                for (int i = 0; i < 2; i++) {
+                    byte[] pathBytes = new byte[buffer.getInt()];
+                    buffer.get(pathBytes);
+                    paths[i] = Path.of(new String(pathBytes, StandardCharsets.UTF_8));
+                }
+
+                entries.add(new LegacyEntry(index, paths[0], paths[1], buffer.getInt(), buffer.getLong()));
+                nextIndex = Math.max(nextIndex, index + 1);
             }
+        } catch (RuntimeException e) {
+            throw new IOException("이전 포맷 segments.log를 읽을 수 없음: " + root, e);
+        }
 
-            return true;
-        } catch (Exception e) {
-            System.err.println("? SegmentManager.updateClientOffsets(): " + e);
-            return false;
+        List<ByteBuffer> records = new ArrayList<>();
+        long migrated = 0;
+        for (LegacyEntry entry : entries) {
+            // 이전 구현에서도 파일이 없는 segment는 레코드가 없는 segment로 취급됨
+            if (!Files.exists(entry.log()) || !Files.exists(entry.idx())) {
+                continue;
+            }
+
+            int index = nextIndex++;
+            Path log = root.resolve(index + LOG_FILE_EXTENTION);
+            Path idx = root.resolve(index + IDX_FILE_EXTENTION);
+            migrated += Segment.migrateLegacy(entry.log(), entry.idx(), log, idx, entry.createdAt());
+            records.add(Segment.toBuffer(index, log, idx, entry.startOffset(), entry.createdAt()));
+        }
+
+        int total = records.stream().mapToInt(ByteBuffer::remaining).sum();
+        ByteBuffer result = ByteBuffer.allocate(total);
+        records.forEach(record -> result.put(record.duplicate()));
+        writeSegmentsFile(records);
+
+        for (LegacyEntry entry : entries) {
+            Segment.deleteFiles(entry.index(), entry.log(), entry.idx());
         }
+
+        System.out.println("! SegmentManager 포맷 변환(" + root + "): segments: " + entries.size() + ", records: " + migrated);
+        return result.flip();
     }
 
-    private boolean loadSegments() {
-        ByteBuffer buffer = loadFile(root.resolve(SEGMENTS_FILE));
-        if (buffer == null) {
+    /**
+     * segments.log로 segment를 복원.
+     * clean shutdown 파일이 있으면 seal 된 segment는 파일 크기만 확인하고, 없으면(비정상 종료) 마지막 레코드의 checksum까지 확인.
+     * seal 되지 않았거나 확인에 실패한 segment만 log를 스캔하여 복구(Segment.recover()).
+     * clean shutdown 파일은 복원 후 바로 제거(이후 비정상 종료 시 다시 검증하도록).
+     */
+    private boolean loadSegments() throws IOException {
+        long start = System.nanoTime();
+        boolean clean = false;
+        try {
+            clean = Files.deleteIfExists(root.resolve(CLEAN_SHUTDOWN_FILE));
+        } catch (IOException e) {
+            System.err.println("? SegmentManager.loadSegments(): " + e);
+        }
+
+        Path segmentsPath = root.resolve(SEGMENTS_FILE);
+        if (!Files.exists(segmentsPath)) {
             return false;
         }
 
+        // 읽지 못한 segments.log에 이어서 기록하지 않도록 시작을 중단
+        ByteBuffer buffer = loadFile(segmentsPath);
+        if (buffer == null) {
+            throw new IOException("segments.log를 읽을 수 없음: " + segmentsPath);
+        }
+
+        // 포맷 레코드가 없으면 이전 포맷이므로 옮긴 뒤 복원, 알 수 없는 버전이면 파일을 건드리지 않고 시작을 중단
+        if (buffer.remaining() >= Integer.BYTES && buffer.getInt(0) == Segment.FORMAT_MARKER) {
+            buffer.getInt();
+            int version = buffer.getInt();
+            if (version != Segment.FORMAT_VERSION) {
+                throw new IOException("지원하지 않는 segment 포맷 버전: " + version + " (" + root + ")");
+            }
+        } else if (buffer.hasRemaining()) {
+            buffer = migrateLegacy(buffer);
+        }
+
+        /**
+         * segments.log는 segment 레코드와 seal 레코드([SEAL_MARKER 혹은 COMPACTED_SEAL_MARKER][index][count][size])로 구성.
+         * seal 레코드는 해당 segment 레코드 뒤에 기록되므로 먼저 모두 읽은 뒤 segment를 복원.
+         */
+        record SegmentEntry(int index, Path log, Path idx, int startOffset, long createdAt) {}
+        List<SegmentEntry> entries = new ArrayList<>();
+        Map<Integer, long[]> seals = new HashMap<>(); // index -> {count, size, compacted}
+
         while (buffer.hasRemaining()) {
             int index = buffer.getInt();
+            if (index == Segment.SEAL_MARKER || index == Segment.COMPACTED_SEAL_MARKER) {
+                int sealedIndex = buffer.getInt();
+                int count = buffer.getInt();
+                long size = buffer.getLong();
+                seals.put(sealedIndex, new long[] {count, size, (index == Segment.COMPACTED_SEAL_MARKER) ? 1 : 0});
+                continue;
+            }
+
             Path[] paths = new Path[2];
             for (int i = 0; i < 2; i++) {
                 int length = buffer.getInt();
@@ -286,54 +965,79 @@ public class SegmentManager {
             }
             int satrtOffset = buffer.getInt();
             long createdAt = buffer.getLong();
+            entries.add(new SegmentEntry(index, paths[0], paths[1], satrtOffset, createdAt));
+        }
+
+        int recovered = 0;
+        long truncated = 0;
+        boolean changed = false;
+
+        // start offset이 같은 segment는 나중에 기록된 segment(compaction 결과 혹은 빈 segment 이후의 rollover)만 사용하고 이전 파일은 제거
+        Map<Integer, SegmentEntry> latest = new HashMap<>();
+        for (SegmentEntry entry : entries) {
+            latest.put(entry.startOffset(), entry);
+        }
+
+        for (SegmentEntry entry : entries) {
+            segmentIndex.accumulateAndGet(entry.index() + 1, Math::max);
+            if (latest.get(entry.startOffset()) != entry) {
+                Segment.deleteFiles(entry.index(), entry.log(), entry.idx());
+                changed = true;
+            }
+        }
+
+        for (SegmentEntry entry : entries) {
+            if (latest.get(entry.startOffset()) != entry) {
+                continue;
+            }
 
             /**
              * 만료된 세그먼트는 복원하지 않고 파일도 제거함.
              * 단, next offset은 갱신 함.
              */
-            Segment segment = new Segment(index, paths[0], paths[1], satrtOffset, createdAt);
-            segmentIndex.set(index + 1);
+            long[] seal = seals.get(entry.index());
+            Segment segment = (seal == null)
+                ? new Segment(entry.index(), entry.log(), entry.idx(), entry.startOffset(), entry.createdAt())
+                : new Segment(entry.index(), entry.log(), entry.idx(), entry.startOffset(), entry.createdAt(), (int) seal[0], seal[1], !clean, seal[2] == 1);
             nextOffset.set(Math.max(nextOffset.get(), segment.endOffset()));
+            if (segment.isRecovered()) {
+                recovered++;
+                truncated += segment.recoveredBytes();
+            }
 
             if (segment.isExpired(retention)) {
                 segment.clear();
+                changed = true;
                 continue;
             }
             
-            segments.add(segment);
+            // 복원된 segment에는 append 하지 않음(첫 write 시 rollover), seal 레코드가 없었다면 새로 기록해야 함
+            changed |= (seal == null || segment.isRecovered());
+            segment.seal();
+            addSegment(segment);
         }
         
-        // 유효한 세그먼트를 기준으로 segments.log 파일 갱신
-        updateSegments();
+        // 유효한 세그먼트를 기준으로 segments.log 파일 갱신(변경이 없으면 다시 쓰지 않음)
+        if (changed) {
+            updateSegments();
+        }
+
+        recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(
+            "! SegmentManager 복원(" + root + "): " + recoveryMillis + "ms" +
+            ", clean: " + clean +
+            ", segments: " + entries.size() +
+            ", recovered: " + recovered +
+            ", truncated bytes: " + truncated
+        );
 
         return true;
     }
 
-    private boolean loadClientOffsets() {
-        ByteBuffer buffer = loadFile(root.resolve(CLIENT_OFFSETS_FILE));
-        if (buffer == null) {
-            return false;
-        }
-
-        while (buffer.hasRemaining()) {
-            int clientIdLength = buffer.getInt();
-            byte[] clientIdBytes = new byte[clientIdLength];
-            buffer.get(clientIdBytes);
-            String clientId = new String(clientIdBytes, StandardCharsets.UTF_8);
-            int offset = buffer.getInt();
-
-            clientOffsets.put(clientId, offset);
+    private static void forceFile(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            file.force(true);
         }
-
-        clientOffsets.entrySet().stream()
-            .filter(entry -> entry.getValue() > nextOffset.get()) 
-            .forEach(entry -> {
-                entry.setValue(nextOffset.get());
-            });
-
-        updateClientOffsets();
-
-        return true;
     }
 
     private @Nullable ByteBuffer loadFile(Path path) {
@@ -0,0 +1,131 @@
+package capstone.design.topic.disk.segment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageHeader;
+import capstone.design.topic.TopicRecord;
+import io.netty.buffer.Unpooled;
+
+/**
+ * partition의 가장 최근에 기록된 레코드를 메모리에 보관하는 캐시.
+ * segment log에 기록한 것과 같은 [header][payload] 바이트와 append 시각을 offset 순서의 ring에 보관하며,
+ * 보관 중인 바이트가 maxBytes를 넘으면 가장 오래된 레코드부터 제거(tail이 앞으로 이동).
+ * 캐시는 항상 연속된 offset 구간 [firstOffset, firstOffset + size)을 가짐.
+ */
+public final class TailCache {
+
+    private record Entry(byte[] bytes, int headerLength, long timestamp) {}
+
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    // 아래 필드는 this lock 안에서만 사용
+    private Entry[] ring = new Entry[64];
+    private int head = 0; // firstOffset 레코드의 ring 내 위치
+    private int size = 0;
+    private int firstOffset = 0;
+    private long bytes = 0;
+
+    public TailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+    public synchronized long bytes() { return bytes; }
+    public synchronized int size() { return size; }
+
+    /**
+     * offset 레코드를 캐시에 추가(SegmentManager의 write lock 안에서 offset 순서대로 호출).
+     * 이어지지 않는 offset이거나 maxBytes보다 큰 레코드는 연속성을 유지하기 위해 캐시를 비우고 다시 시작.
+     * @param record [header][payload] 바이트(캐시가 그대로 보관하므로 호출자는 변경하지 않아야 함)
+     * @param timestamp segment log에 기록된 레코드 시각
+     */
+    public synchronized void append(int offset, byte[] record, int headerLength, long timestamp) {
+        if (size > 0 && offset != firstOffset + size) {
+            clear();
+        }
+
+        if (record.length > maxBytes) {
+            clear();
+            firstOffset = offset + 1;
+            return;
+        }
+
+        if (size == 0) {
+            firstOffset = offset;
+        }
+
+        if (size == ring.length) {
+            grow();
+        }
+
+        ring[(head + size) % ring.length] = new Entry(record, headerLength, timestamp);
+        size++;
+        bytes += record.length;
+
+        while (bytes > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * 캐시된 레코드를 TopicRecord로 반환(payload는 캐시 바이트를 감싼 ByteBuf로 복사 없음).
+     * @return 레코드 혹은 null(캐시에 없는 경우)
+     */
+    public @Nullable TopicRecord get(int offset) {
+        Entry entry;
+        synchronized (this) {
+            int index = offset - firstOffset;
+            entry = (index >= 0 && index < size) ? ring[(head + index) % ring.length] : null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+
+        byte[] record = entry.bytes();
+        int payloadLength = record.length - entry.headerLength();
+        Message message = Message.builder()
+            .type(record[0])
+            .header(MessageHeader.read(record, 2, record[1] & 0xFF))
+            .offset(offset)
+            .payload((payloadLength > 0) ? Unpooled.wrappedBuffer(record, entry.headerLength(), payloadLength) : null)
+            .build();
+
+        return new TopicRecord(message, entry.timestamp());
+    }
+
+    public synchronized void clear() {
+        ring = new Entry[64];
+        head = 0;
+        size = 0;
+        bytes = 0;
+    }
+
+    private void evict() {
+        Entry eldest = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        firstOffset++;
+        bytes -= eldest.bytes().length;
+    }
+
+    private void grow() {
+        Entry[] grown = new Entry[ring.length * 2];
+        for (int i = 0; i < size; i++) {
+            grown[i] = ring[(head + i) % ring.length];
+        }
+
+        ring = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,166 @@
+package capstone.design.topic.disk.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * segment의 sparse time index.
+ * 레코드의 append 시각은 segment 안에서 감소하지 않으며(Segment가 보장), INTERVAL개의 레코드마다 첫 레코드의 시각만 보관.
+ * 시각으로 찾을 때는 여기서 INTERVAL개 이하의 구간으로 좁힌 뒤, 구간 안의 레코드 시각을 log에서 읽어 이진 탐색.
+ * seal 된 segment는 .tidx 파일로 기록하여 다시 시작한 뒤에는 파일을 읽어 복원하며,
+ * 파일이 없거나 맞지 않으면(seal 이전 종료, INTERVAL 변경 등) 처음 조회할 때 INTERVAL 간격의 레코드 시각만 읽어서 만듦(Segment.ensureTimeIndex).
+ *
+ * .tidx: [format int][interval int][record count int][last timestamp long][entry count int]([timestamp long])*
+ * .tidx는 임시 파일에 쓰고 fsync 한 뒤 원자적으로 교체.
+ */
+final class TimeIndex {
+
+    static final int INTERVAL = Integer.getInteger("broker.segment.timeIndexInterval", 1024);
+    private static final int FORMAT = 0x54494401; // "TID" + 1
+    private static final int HEADER_BYTES = Integer.BYTES * 4 + Long.BYTES;
+
+    private final Path file;
+
+    // 아래 필드는 this lock 안에서만 사용
+    private long[] timestamps = new long[0]; // i번째: offset (i * INTERVAL) 레코드의 시각
+    private int size = 0;
+    private int records = 0; // 색인한 레코드 수
+    private long lastTimestamp = -1; // 마지막 레코드의 시각(레코드가 없으면 -1)
+
+    TimeIndex(Path file) {
+        this.file = file;
+    }
+
+    synchronized int records() { return records; }
+    synchronized long lastTimestamp() { return lastTimestamp; }
+
+    /**
+     * offset 레코드의 시각을 추가(offset 순서대로 호출, INTERVAL의 배수가 아닌 offset은 마지막 시각만 갱신).
+     * 이미 추가된 offset은 다시 보관하지 않음.
+     */
+    synchronized void add(int offset, long timestamp) {
+        if (offset % INTERVAL == 0 && offset / INTERVAL == size) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, Math.max(16, size * 2));
+            }
+
+            timestamps[size++] = timestamp;
+        }
+
+        records = Math.max(records, offset + 1);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+    }
+
+    /**
+     * 시각이 timestamp 이상인 첫 레코드가 있을 수 있는 구간의 시작 offset.
+     * 반환된 offset부터 INTERVAL개 안에 없으면 그 다음 보관된 offset(혹은 segment의 끝)이 답.
+     */
+    synchronized int floor(long timestamp) {
+        // timestamps[i] < timestamp 인 마지막 i
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return Math.max(0, low - 1) * INTERVAL;
+    }
+
+    synchronized void reset() {
+        timestamps = new long[0];
+        size = 0;
+        records = 0;
+        lastTimestamp = -1;
+    }
+
+    synchronized void clear() throws IOException {
+        reset();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(tempFile());
+    }
+
+    /**
+     * seal 된 segment의 색인을 .tidx 파일로 기록.
+     * @return 기록한 경우 true(색인이 count개의 레코드를 모두 포함하지 않으면 기록하지 않음)
+     */
+    synchronized boolean seal(int count) throws IOException {
+        if (records != count) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * Long.BYTES)
+            .putInt(FORMAT)
+            .putInt(INTERVAL)
+            .putInt(records)
+            .putLong(lastTimestamp)
+            .putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(timestamps[i]);
+        }
+        buffer.flip();
+
+        // 쓰는 도중 중단되더라도 이전 파일(혹은 파일 없음)이 남도록 임시 파일에 쓰고 교체
+        Path temp = tempFile();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * .tidx 파일을 읽어 색인을 복원.
+     * @return 파일이 같은 INTERVAL로 count개의 레코드를 색인한 경우 true(없거나 읽지 못하면 false, 호출자가 log로 다시 만듦)
+     */
+    synchronized boolean load(int count) {
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != FORMAT || buffer.getInt() != INTERVAL || buffer.getInt() != count) {
+                return false;
+            }
+
+            long last = buffer.getLong();
+            int entries = buffer.getInt();
+            if (entries != (count + INTERVAL - 1) / INTERVAL || buffer.remaining() != entries * Long.BYTES) {
+                return false;
+            }
+
+            long[] loaded = new long[entries];
+            buffer.asLongBuffer().get(loaded);
+
+            timestamps = loaded;
+            size = entries;
+            records = count;
+            lastTimestamp = last;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // 읽을 수 없거나 잘못된 파일
+            System.err.println("? TimeIndex.load(): " + e);
+            return false;
+        }
+    }
+
+    private Path tempFile() {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+}
@@ -0,0 +1,330 @@
+package capstone.design.topic.hybrid;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.RetryableException;
+import capstone.design.topic.TopicBatch;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.segment.SegmentManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * HybridTopic partition.
+ * 최근 레코드는 메모리(offset을 인덱스로 하는 ring buffer, payload는 off-heap)에 [head, tail) 범위로 보관하고,
+ * 메모리 사용량이 memoryBytes의 SPILL_START를 넘으면 spiller 스레드에서 가장 오래된 레코드부터 SegmentManager에 배치로 기록(spill).
+ * spill은 offset 순서대로 수행되므로 segment의 offset과 partition의 offset은 같으며, head 이전은 segment, head 이후는 메모리에서 조회.
+ * segment에 기록하는 동안에는 this lock을 잡지 않으며(push는 기다리지 않음), 기록이 끝난 뒤 head를 이동하므로 기록 중인 레코드는 메모리에서 조회.
+ * 레코드의 시각은 push 시 기록하며 spill 후에도 유지(segment의 seekTime은 spill 시각이 아닌 push 시각 기준).
+ * 메모리 범위는 this lock 안에서만 사용하며, spill은 spillLock으로 한 번에 하나씩 수행(lock 순서: spillLock -> this).
+ */
+final class HybridPartition {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long RECORD_OVERHEAD = 64; // 레코드당 header 등 고정 비용(payload가 작은 레코드가 많아도 메모리가 한도 안에 있도록)
+    private static final double SPILL_START = 0.75; // spill을 시작하는 메모리 사용량(memoryBytes 대비, spill 하는 동안 push를 받을 여유)
+    private static final double SPILL_TARGET = 0.5; // spill 후 메모리 사용량(memoryBytes 대비, 매 push마다 spill 하지 않도록)
+
+    private final SegmentManager disk;
+    private final long memoryBytes;
+    private final Executor spiller;
+    private final Object spillLock = new Object();
+
+    private TopicRecord[] slots = new TopicRecord[INITIAL_CAPACITY];
+    private int head; // 메모리의 첫 레코드 offset(= segment의 다음 offset)
+    private int tail; // 다음에 저장될 offset
+    private long bytes = 0; // 메모리 레코드의 payload + RECORD_OVERHEAD 합
+    private long spilled = 0; // spill 한 레코드 수
+    private boolean spillScheduled = false; // spiller에 spill을 요청했고 아직 끝나지 않음
+
+    HybridPartition(SegmentManager disk, long memoryBytes, Executor spiller) {
+        this.disk = disk;
+        this.memoryBytes = memoryBytes;
+        this.spiller = spiller;
+        this.head = disk.nextOffset();
+        this.tail = head;
+    }
+
+    SegmentManager disk() { return disk; }
+    synchronized int head() { return head; }
+    synchronized int tail() { return tail; }
+    synchronized long bytes() { return bytes; }
+    synchronized long spilled() { return spilled; }
+
+    /**
+     * 메시지에 다음 offset을 할당하고 메모리에 저장(payload는 off-heap ByteBuf로 복사된 상태).
+     * 메모리 사용량이 SPILL_START를 넘으면 오래된 레코드의 spill을 요청(기다리지 않음).
+     * spill에 실패하더라도 메시지는 메모리에 남아 있으며 다음 push에서 다시 요청.
+     * @return 할당된 offset
+     * @throws RetryableException 이미 memoryBytes를 넘은 경우(spill이 끝나지 않았거나 실패, 저장하지 않음, 메시지는 호출자가 해제)
+     */
+    synchronized int append(Message message) {
+        ensureCapacity();
+        int offset = store(message, System.currentTimeMillis());
+        requestSpill();
+
+        return offset;
+    }
+
+    /**
+     * 메시지들에 연속된 offset 범위를 할당하고 저장.
+     * @return 첫 번째 offset
+     * @throws RetryableException append()와 같음(배치 전체를 저장하지 않음)
+     */
+    synchronized int appendAll(List<Message> messages) {
+        ensureCapacity();
+        int base = tail;
+        long now = System.currentTimeMillis();
+        for (Message message : messages) {
+            store(message, now);
+        }
+        requestSpill();
+
+        return base;
+    }
+
+    /**
+     * offset의 레코드 조회(head 이전은 segment, 이후는 메모리).
+     * 메모리 레코드는 참조를 추가한 복사본을 반환(호출자가 release()로 해제).
+     */
+    @Nullable TopicRecord read(int offset) {
+        synchronized (this) {
+            if (offset >= tail) {
+                return null;
+            }
+
+            if (offset >= head) {
+                TopicRecord record = slots[index(offset)];
+                Message message = record.message().copy();
+                if (message.payload() instanceof ByteBuf buf) {
+                    message.setPayload(buf.retainedDuplicate());
+                }
+
+                return new TopicRecord(message, record.createdAt());
+            }
+        }
+
+        return disk.read(offset);
+    }
+
+    /**
+     * offset부터 연속된 레코드 조회.
+     * segment 구간이면 segment의 FileRegion(해당 segment 안에서만), 메모리 구간이면 MessageBatch 포맷으로 복사.
+     */
+    @Nullable TopicBatch readRange(int offset, int maxCount, long maxBytes) {
+        synchronized (this) {
+            if (offset >= tail || maxCount <= 0) {
+                return null;
+            }
+
+            if (offset >= head) {
+                ByteBuf records = ByteBufAllocator.DEFAULT.directBuffer();
+                int count = 0;
+                for (int current = offset; current < tail && count < maxCount; current++) {
+                    int mark = records.writerIndex();
+                    MessageBatch.write(records, slots[index(current)].message());
+                    if (count > 0 && records.readableBytes() > maxBytes) {
+                        records.writerIndex(mark);
+                        break;
+                    }
+
+                    count++;
+                }
+
+                return new TopicBatch(offset, offset + count - 1, count, records);
+            }
+        }
+
+        return disk.readRange(offset, maxCount, maxBytes);
+    }
+
+    /**
+     * 조건을 만족하는 첫 레코드의 메모리 offset.
+     * @return offset 혹은 -1(없는 경우)
+     */
+    synchronized int find(Map<String, String> condition) {
+        for (int offset = head; offset < tail; offset++) {
+            if (slots[index(offset)].matches(condition)) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 저장 시각이 timestamp 이상인 첫 메모리 레코드의 offset.
+     * @return offset 혹은 -1(메모리의 첫 레코드가 이미 timestamp 이상이거나 메모리가 비어 있으면 segment에서 찾아야 함)
+     */
+    synchronized int offsetAt(long timestamp) {
+        if (head == tail || slots[index(head)].createdAt() >= timestamp) {
+            return -1;
+        }
+
+        for (int offset = head; offset < tail; offset++) {
+            if (slots[index(offset)].createdAt() >= timestamp) {
+                return offset;
+            }
+        }
+
+        return tail;
+    }
+
+    // 메모리의 모든 레코드를 segment로 spill(close 시, 진행 중인 spill이 끝난 뒤 호출 스레드에서 수행)
+    boolean spillAll() {
+        return spill(0);
+    }
+
+    // 메모리 레코드의 payload를 모두 해제(clearAll 시, 진행 중인 spill이 끝난 뒤 수행)
+    void clear() {
+        synchronized (spillLock) {
+            synchronized (this) {
+                for (int offset = head; offset < tail; offset++) {
+                    slots[index(offset)].message().release();
+                    slots[index(offset)] = null;
+                }
+
+                head = tail;
+                bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * this lock 안에서 호출, 메모리 사용량이 memoryBytes를 넘은 상태(spill이 push를 따라가지 못하거나 실패)라면 spill을 요청하고 거절.
+     * 한도를 넘는 양은 push 하나 이내로 유지됨.
+     */
+    private void ensureCapacity() {
+        if (bytes > memoryBytes) {
+            requestSpill();
+            throw new RetryableException("메모리 한도 초과(spill 대기 중): " + disk.root());
+        }
+    }
+
+    // this lock 안에서 호출, 메모리 사용량이 SPILL_START를 넘었고 진행 중인 spill이 없으면 spiller에 spill을 요청
+    private void requestSpill() {
+        if (spillScheduled || bytes <= memoryBytes * SPILL_START) {
+            return;
+        }
+
+        spillScheduled = true;
+        spiller.execute(() -> {
+            boolean success = spill((long) (memoryBytes * SPILL_TARGET));
+            synchronized (this) {
+                spillScheduled = false;
+                // spill 하는 동안 들어온 push로 다시 SPILL_START를 넘었다면 이어서 요청(실패했다면 다음 push에서 요청)
+                if (success) {
+                    requestSpill();
+                }
+            }
+        });
+    }
+
+    // this lock 안에서 호출
+    private int store(Message message, long createdAt) {
+        if (tail - head == slots.length) {
+            resize(slots.length * 2);
+        }
+
+        int offset = tail++;
+        message.setOffset(offset);
+        slots[index(offset)] = new TopicRecord(message, createdAt);
+        bytes += recordBytes(message);
+
+        return offset;
+    }
+
+    /**
+     * 메모리 사용량이 target 이하가 될 때까지 오래된 레코드를 한 번의 writeBatch로 segment에 기록.
+     * 레코드는 this lock 안에서 배치로 복사하고, segment 기록은 lock 밖에서 수행한 뒤 head를 이동.
+     * @param target 0이면 모든 레코드를 spill
+     * @return 성공 여부(실패하면 메모리 레코드는 그대로 유지)
+     */
+    private boolean spill(long target) {
+        synchronized (spillLock) {
+            ByteBuf records = ByteBufAllocator.DEFAULT.directBuffer();
+            int first;
+            int count = 0;
+            long released = 0;
+            try {
+                synchronized (this) {
+                    first = head;
+                    while (head + count < tail && bytes - released > target) {
+                        TopicRecord record = slots[index(head + count)];
+                        Message message = record.message();
+                        MessageBatch.write(records, message, record.createdAt());
+                        released += recordBytes(message);
+                        count++;
+                    }
+                }
+
+                if (count == 0) {
+                    return true;
+                }
+
+                // segment에는 spill로만 기록하므로 segment의 다음 offset은 항상 head와 같음(-1이면 기록 실패)
+                int base = disk.writeBatch(records, count, true);
+                if (base != first) {
+                    System.err.println("? HybridPartition.spill(): " + disk.root() + ", offset: " + base + ", head: " + first);
+                    return false;
+                }
+            } finally {
+                records.release();
+            }
+
+            // spillLock을 잡고 있으므로 그 사이 head는 바뀌지 않음(clear도 spillLock 필요)
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    slots[index(head)].message().release();
+                    slots[index(head)] = null;
+                    head++;
+                }
+
+                bytes -= released;
+                spilled += count;
+                trim();
+            }
+            return true;
+        }
+    }
+
+    // 사용 중인 범위가 작아졌다면 버퍼를 줄임
+    private void trim() {
+        int capacity = slots.length;
+        while (capacity > INITIAL_CAPACITY && tail - head <= capacity / 4) {
+            capacity /= 2;
+        }
+
+        if (capacity != slots.length) {
+            resize(capacity);
+        }
+    }
+
+    private void resize(int capacity) {
+        TopicRecord[] resized = new TopicRecord[capacity];
+        for (int offset = head; offset < tail; offset++) {
+            resized[offset & (capacity - 1)] = slots[index(offset)];
+        }
+
+        slots = resized;
+    }
+
+    private int index(int offset) {
+        return offset & (slots.length - 1);
+    }
+
+    private static long recordBytes(Message message) {
+        return RECORD_OVERHEAD + ((message.payload() instanceof ByteBuf buf) ? buf.readableBytes() : 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{head=" + head + ", tail=" + tail + ", bytes=" + bytes + ", spilled=" + spilled + "}";
+    }
+}
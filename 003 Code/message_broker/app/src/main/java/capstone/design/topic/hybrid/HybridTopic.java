@@ -0,0 +1,272 @@
+package capstone.design.topic.hybrid;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.Topic;
+import capstone.design.topic.TopicBatch;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.DiskTopic;
+import capstone.design.topic.disk.segment.SegmentManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * 메모리를 우선 사용하고 한도를 넘으면 segment로 spill 하는 topic.
+ * partition별로 최근 레코드를 메모리(off-heap)에 최대 memoryBytes까지 보관하고, 한도에 가까워지면 오래된 레코드부터 DiskTopic의 segment에 기록(HybridPartition).
+ * spill은 push 스레드(event loop)가 아닌 SPILLER 스레드에서 수행하며, segment는 같은 이름의 DiskTopic과 겹치지 않도록 ./hybrid_topics/{name}에 저장.
+ * offset은 segment와 메모리에 걸쳐 연속되며, 읽기/commit/seek 등은 DiskTopic과 같은 의미(client offset은 SegmentManager가 관리).
+ * 메모리의 레코드는 만료되지 않으며(DiskTopic의 active segment와 같음), close 시 모두 segment로 spill(push 시각 유지).
+ * spill이 따라가지 못하거나 계속 실패하여 메모리 한도를 넘은 상태에서는 push를 retryable 에러로 거절.
+ * 비정상 종료 시 spill 되지 않은 메모리의 레코드는 유실됨.
+ */
+public class HybridTopic implements Topic {
+
+    private static final long DEFAULT_DURATION = 10 * (60 * 1000); // 10분
+    private static final long DEFAULT_RETENTION = 30 * (60 * 1000); // 30분
+    private static final long DEFAULT_MEMORY_BYTES = Long.getLong("broker.hybrid.memoryBytes", 16 * 1024 * 1024); // partition별 메모리 한도
+    private static final Path TOPIC_DIRECTORY = Path.of("./hybrid_topics");
+    // 모든 HybridTopic이 공유하는 spill 스레드 풀(partition마다 spill은 한 번에 하나씩 수행)
+    private static final int SPILL_THREADS = Integer.getInteger("broker.hybrid.spillThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final ExecutorService SPILLER = Executors.newFixedThreadPool(SPILL_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "hybrid-topic-spiller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final long memoryBytes;
+    private final DiskTopic disk;
+    private final Map<String, HybridPartition> partitions = new ConcurrentHashMap<>();
+
+    // constructor =====
+    private HybridTopic(String name, long duration, long retention, long memoryBytes) {
+        this.name = name;
+        this.memoryBytes = memoryBytes;
+        this.disk = DiskTopic.of(name, duration, retention, TOPIC_DIRECTORY);
+    }
+
+    // factory method =====
+    public static HybridTopic of(String name) { return new HybridTopic(name, DEFAULT_DURATION, DEFAULT_RETENTION, DEFAULT_MEMORY_BYTES); }
+    public static HybridTopic of(String name, long duration, long retention) { return new HybridTopic(name, duration, retention, DEFAULT_MEMORY_BYTES); }
+    public static HybridTopic of(String name, long duration, long retention, long memoryBytes) { return new HybridTopic(name, duration, retention, memoryBytes); }
+
+    // getter =====
+    public long memoryBytes() { return memoryBytes; }
+
+    // 메모리에 보관 중인 바이트 수(모든 partition)
+    public long usedBytes() {
+        return partitions.values().stream().mapToLong(HybridPartition::bytes).sum();
+    }
+
+    // segment로 spill 한 레코드 수(모든 partition)
+    public long spilledRecords() {
+        return partitions.values().stream().mapToLong(HybridPartition::spilled).sum();
+    }
+
+    @Override
+    public String name() { return name; }
+
+    @Override
+    public int push(String partition, Message message) {
+        HybridPartition hybridPartition = partition(partition, true);
+        if (hybridPartition == null) {
+            return -1;
+        }
+
+        // payload는 호출자가 push 이후 해제하므로 off-heap으로 복사해서 보관(저장하지 못하면 복사본 해제)
+        Message stored = message.copy().setPayload(store(message.payload()));
+        try {
+            return hybridPartition.append(stored);
+        } catch (RuntimeException e) {
+            stored.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public int pushBatch(String partition, ByteBuf records, int count) {
+        HybridPartition hybridPartition = partition(partition, true);
+        if (hybridPartition == null) {
+            return -1;
+        }
+
+        List<Message> stored = new ArrayList<>(count);
+        for (Message message : MessageBatch.decode(records)) {
+            stored.add(message.copy().setPayload(store(message.payload())));
+            message.release();
+        }
+
+        try {
+            return hybridPartition.appendAll(stored);
+        } catch (RuntimeException e) {
+            stored.forEach(Message::release);
+            throw e;
+        }
+    }
+
+    @Override
+    public @Nullable TopicRecord peek(String partition, String clientId, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return null;
+        }
+
+        return hybridPartition.read(hybridPartition.disk().clientOffset(clientId));
+    }
+
+    @Override
+    public @Nullable TopicBatch peekBatch(String partition, String clientId, int maxCount, long maxBytes) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return null;
+        }
+
+        return hybridPartition.readRange(hybridPartition.disk().clientOffset(clientId), maxCount, maxBytes);
+    }
+
+    @Override
+    public void commit(String partition, String clientId, int offset, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return;
+        }
+
+        hybridPartition.disk().commit(clientId, offset);
+    }
+
+    /**
+     * segment를 먼저 찾고, 없으면 메모리에서 찾은 offset을 반환.
+     * 메모리는 segment를 찾기 전에 확인하므로 그 사이 spill 된 레코드도 놓치지 않음.
+     */
+    @Override
+    public CompletableFuture<Integer> findAsync(String partition, Map<String, String> condition, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return CompletableFuture.completedFuture(-1);
+        }
+
+        int memoryOffset = hybridPartition.find(condition);
+        return hybridPartition.disk().findAsync(condition)
+            .thenApply(offset -> (offset >= 0) ? offset : memoryOffset);
+    }
+
+    @Override
+    public int seekTime(String partition, String clientId, long timestamp, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return -1;
+        }
+
+        // 메모리의 첫 레코드가 timestamp 이전이면 segment의 레코드는 모두 timestamp 이전
+        int offset = hybridPartition.offsetAt(timestamp);
+        if (offset < 0) {
+            return hybridPartition.disk().seekTime(clientId, timestamp);
+        }
+
+        hybridPartition.disk().position(clientId, offset);
+        return offset;
+    }
+
+    @Override
+    public boolean seek(String partition, String clientId, int offset, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null || offset < 0 || offset >= hybridPartition.tail()) {
+            return false;
+        }
+
+        hybridPartition.disk().position(clientId, offset);
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> ready(String partition) {
+        return disk.ready(partition);
+    }
+
+    @Override
+    public int subscribe(String partition, Supplier<Boolean> callback) {
+        return disk.subscribe(partition, callback);
+    }
+
+    @Override
+    public void unsubscribe(String partition, int key) {
+        disk.unsubscribe(partition, key);
+    }
+
+    @Override
+    public void notify(String partition) {
+        disk.notify(partition);
+    }
+
+    @Override
+    public int count(String partition, Message message) {
+        HybridPartition hybridPartition = partition(partition, false);
+        if (hybridPartition == null) {
+            return -1;
+        }
+
+        return hybridPartition.disk().count() + (hybridPartition.tail() - hybridPartition.head());
+    }
+
+    @Override
+    public void clean() {
+        disk.clean();
+    }
+
+    // 메모리의 레코드를 모두 segment로 spill 한 뒤 DiskTopic을 정상 종료
+    @Override
+    public void close() {
+        partitions.values().forEach(HybridPartition::spillAll);
+        disk.close();
+    }
+
+    public void clearAll() {
+        partitions.values().forEach(HybridPartition::clear);
+        partitions.clear();
+        disk.clearAll();
+    }
+
+    /**
+     * partition 반환(처음 접근 시 DiskTopic의 segment manager를 로딩하여 생성).
+     * @param create segment manager가 없으면 생성할지 여부
+     */
+    private @Nullable HybridPartition partition(String partition, boolean create) {
+        HybridPartition hybridPartition = partitions.get(partition);
+        if (hybridPartition != null) {
+            return hybridPartition;
+        }
+
+        SegmentManager segmentManager = disk.segmentManager(partition, create);
+        if (segmentManager == null) {
+            return null;
+        }
+
+        return partitions.computeIfAbsent(partition, ignored -> new HybridPartition(segmentManager, memoryBytes, SPILLER));
+    }
+
+    // 보관할 payload(pooled direct buffer)
+    private static @Nullable ByteBuf store(@Nullable Object payload) {
+        return switch (payload) {
+            case null -> null;
+            case ByteBuf buf -> PooledByteBufAllocator.DEFAULT.directBuffer(buf.readableBytes()).writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+            case byte[] bytes -> PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+            default -> {
+                byte[] bytes = String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
+                yield PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+            }
+        };
+    }
+}
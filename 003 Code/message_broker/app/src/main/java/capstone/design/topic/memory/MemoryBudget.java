@@ -0,0 +1,61 @@
+package capstone.design.topic.memory;
+
+/**
+ * MemoryTopic이 보관하는 payload의 메모리 한도와 한도 도달 시 정책.
+ * UNBOUNDED: 한도 없음(payload는 heap의 byte[]로 보관)
+ * REJECT: 한도를 넘는 push는 retryable 에러로 거절
+ * EVICT_OLDEST: 한도 안에 들어올 때까지 가장 오래된 메시지부터 제거(읽지 않은 메시지도 제거됨)
+ * BLOCK: 한도 이상이면 공간이 생길 때까지 최대 value(ms) 동안 producer 채널의 읽기를 멈추고 응답을 미룸(backpressure), 그래도 없으면 REJECT와 동일
+ * UNBOUNDED 이외에는 payload를 pooled direct buffer(off-heap)로 보관.
+ */
+public final class MemoryBudget {
+
+    public enum Policy { UNBOUNDED, REJECT, EVICT_OLDEST, BLOCK }
+
+    private final Policy policy;
+    private final long bytes;
+    private final long value;
+
+    // constructor =====
+    private MemoryBudget(Policy policy, long bytes, long value) {
+        this.policy = policy;
+        this.bytes = bytes;
+        this.value = value;
+    }
+
+    // factory method =====
+    public static MemoryBudget unbounded() { return new MemoryBudget(Policy.UNBOUNDED, Long.MAX_VALUE, 0); }
+    public static MemoryBudget reject(long bytes) { return new MemoryBudget(Policy.REJECT, validate(bytes), 0); }
+    public static MemoryBudget evictOldest(long bytes) { return new MemoryBudget(Policy.EVICT_OLDEST, validate(bytes), 0); }
+
+    public static MemoryBudget block(long bytes, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeout은 0보다 커야 함: " + timeoutMillis);
+        }
+
+        return new MemoryBudget(Policy.BLOCK, validate(bytes), timeoutMillis);
+    }
+
+    private static long validate(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("bytes는 0보다 커야 함: " + bytes);
+        }
+
+        return bytes;
+    }
+
+    // getter =====
+    public Policy policy() { return policy; }
+    public long bytes() { return bytes; }
+    public long value() { return value; }
+    public boolean isBounded() { return policy != Policy.UNBOUNDED; }
+
+    @Override
+    public String toString() {
+        return switch (policy) {
+            case UNBOUNDED -> policy.toString();
+            case BLOCK -> policy + "(" + bytes + ", " + value + "ms)";
+            default -> policy + "(" + bytes + ")";
+        };
+    }
+}
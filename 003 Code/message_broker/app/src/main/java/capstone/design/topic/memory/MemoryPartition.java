@@ -0,0 +1,257 @@
+package capstone.design.topic.memory;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.topic.TopicRecord;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * MemoryTopic partition의 저장소.
+ * offset을 인덱스로 하는 ring buffer(크기는 2의 거듭제곱)에 [head, tail) 범위의 레코드를 보관.
+ * commit 된 레코드는 슬롯을 비워(tombstone) 표시하고, head가 빈 슬롯이면 다음 레코드까지 head를 이동.
+ * 레코드는 저장 시각 순서로 추가되므로 만료된 레코드는 항상 head 쪽에 모여 있음.
+ * payload가 ByteBuf(off-heap)인 레코드는 partition이 참조를 가지며, 제거할 때 해제하고 조회할 때는 별도의 참조를 가진 복사본을 반환.
+ * 제거하는 메서드는 해제한 payload 바이트 수를 반환(MemoryTopic의 메모리 사용량 계산).
+ * 모든 메서드는 this lock 안에서 수행.
+ */
+final class MemoryPartition {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private TopicRecord[] slots = new TopicRecord[INITIAL_CAPACITY];
+    private int head = 1; // 남아 있는 첫 레코드의 offset(비어 있으면 tail)
+    private int tail = 1; // 다음에 저장될 offset(offset은 1부터 시작)
+    private int size = 0; // 비어 있지 않은 슬롯 수
+
+    synchronized int head() { return head; }
+    synchronized int tail() { return tail; }
+    synchronized int size() { return size; }
+    synchronized boolean isEmpty() { return size == 0; }
+    synchronized int capacity() { return slots.length; }
+
+    /**
+     * 메시지에 다음 offset을 할당하고 저장.
+     * @return 할당된 offset
+     */
+    synchronized int append(Message message) {
+        if (tail - head == slots.length) {
+            resize(slots.length * 2);
+        }
+
+        int offset = tail++;
+        message.setOffset(offset);
+        slots[index(offset)] = new TopicRecord(message);
+        size++;
+
+        return offset;
+    }
+
+    /**
+     * 메시지들에 연속된 offset 범위를 할당하고 저장.
+     * @return 첫 번째 offset
+     */
+    synchronized int appendAll(List<Message> messages) {
+        int base = tail;
+        for (Message message : messages) {
+            append(message);
+        }
+
+        return base;
+    }
+
+    /**
+     * offset의 레코드 조회.
+     * payload가 ByteBuf이면 commit, 만료로 해제되더라도 사용할 수 있도록 참조를 추가한 복사본을 반환(호출자가 release()로 해제).
+     */
+    synchronized @Nullable TopicRecord get(int offset) {
+        if (offset < head || offset >= tail) {
+            return null;
+        }
+
+        TopicRecord record = slots[index(offset)];
+        if (record != null && record.message().payload() instanceof ByteBuf buf) {
+            return new TopicRecord(record.message().copy().setPayload(buf.retainedDuplicate()), record.createdAt());
+        }
+
+        return record;
+    }
+
+    // 남아 있는 첫 레코드의 저장 시각(비어 있으면 Long.MAX_VALUE)
+    synchronized long headCreatedAt() {
+        return (head < tail) ? slots[index(head)].createdAt() : Long.MAX_VALUE;
+    }
+
+    /**
+     * [from, to] 범위의 레코드를 제거(commit).
+     * @return 해제한 payload 바이트 수
+     */
+    synchronized long remove(int from, int to) {
+        long freed = 0;
+        for (int offset = Math.max(from, head); offset <= to && offset < tail; offset++) {
+            freed += clearSlot(index(offset));
+        }
+
+        trim();
+        return freed;
+    }
+
+    /**
+     * 남아 있는 첫 레코드를 제거(메모리 한도 초과 시 eviction).
+     * @return 해제한 payload 바이트 수 혹은 -1(비어 있는 경우)
+     */
+    synchronized long removeFirst() {
+        if (head == tail) {
+            return -1;
+        }
+
+        long freed = clearSlot(index(head));
+        trim();
+        return freed;
+    }
+
+    /**
+     * 모든 레코드를 제거(offset은 유지).
+     * @return 해제한 payload 바이트 수
+     */
+    synchronized long clear() {
+        return remove(head, tail - 1);
+    }
+
+    /**
+     * 조건을 만족하는 만료되지 않은 첫 레코드의 offset.
+     * @return offset 혹은 -1(없는 경우)
+     */
+    synchronized int find(Map<String, String> condition, long retention) {
+        long now = System.currentTimeMillis();
+        for (int offset = head; offset < tail; offset++) {
+            TopicRecord record = slots[index(offset)];
+            if (record != null && record.matches(condition) && !record.isExpired(retention, now)) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 저장 시각이 timestamp 이상인 첫 레코드의 offset.
+     * 레코드는 저장 시각 순서로 놓여 있으므로 이진 탐색하며, 빈 슬롯(tombstone)은 다음 레코드의 시각으로 비교.
+     * @return offset 혹은 tail(없는 경우)
+     */
+    synchronized int offsetAt(long timestamp) {
+        // [head, low)의 레코드는 timestamp 이전, [high, tail)의 레코드는 timestamp 이상
+        int low = head;
+        int high = tail;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int live = nextLive(mid, high);
+            if (live == high) {
+                high = mid;
+            } else if (slots[index(live)].createdAt() < timestamp) {
+                low = live + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return nextLive(low, tail);
+    }
+
+    // [offset, end) 중 비어 있지 않은 첫 슬롯의 offset(없으면 end)
+    private int nextLive(int offset, int end) {
+        while (offset < end && slots[index(offset)] == null) {
+            offset++;
+        }
+
+        return offset;
+    }
+
+    /**
+     * 만료된 레코드를 head부터 제거.
+     * 레코드는 저장 시각 순서로 놓여 있으므로 만료되지 않은 첫 레코드에서 멈춤(비용은 만료된 레코드 수에 비례, 보관 중인 레코드 수와 무관).
+     * @param now 기준 시각(MessageCleaner 주기마다 한 번 읽은 값)
+     * @return 해제한 payload 바이트 수
+     */
+    synchronized long removeExpired(long retention, long now) {
+        if (head == tail || !slots[index(head)].isExpired(retention, now)) {
+            return 0;
+        }
+
+        long freed = 0;
+        while (head < tail) {
+            int index = index(head);
+            TopicRecord record = slots[index];
+            if (record != null && !record.isExpired(retention, now)) {
+                break;
+            }
+
+            freed += clearSlot(index);
+            head++;
+        }
+
+        trim();
+        return freed;
+    }
+
+    // 저장할 payload의 바이트 수(메모리 사용량 계산 기준)
+    static long payloadBytes(@Nullable Object payload) {
+        return switch (payload) {
+            case ByteBuf buf -> buf.readableBytes();
+            case byte[] bytes -> bytes.length;
+            case null, default -> 0;
+        };
+    }
+
+    // 슬롯을 비우고 payload 참조를 해제
+    private long clearSlot(int index) {
+        TopicRecord record = slots[index];
+        if (record == null) {
+            return 0;
+        }
+
+        slots[index] = null;
+        size--;
+
+        long bytes = payloadBytes(record.message().payload());
+        record.message().release();
+        return bytes;
+    }
+
+    // head를 남아 있는 첫 레코드로 이동하고, 사용 중인 범위가 작아졌다면 버퍼를 줄임
+    private void trim() {
+        while (head < tail && slots[index(head)] == null) {
+            head++;
+        }
+
+        int capacity = slots.length;
+        while (capacity > INITIAL_CAPACITY && tail - head <= capacity / 4) {
+            capacity /= 2;
+        }
+
+        if (capacity != slots.length) {
+            resize(capacity);
+        }
+    }
+
+    private void resize(int capacity) {
+        TopicRecord[] resized = new TopicRecord[capacity];
+        for (int offset = head; offset < tail; offset++) {
+            resized[offset & (capacity - 1)] = slots[index(offset)];
+        }
+
+        slots = resized;
+    }
+
+    private int index(int offset) {
+        return offset & (slots.length - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{head=" + head + ", tail=" + tail + ", size=" + size + ", capacity=" + slots.length + "}";
+    }
+}
@@ -1,51 +1,73 @@
 package capstone.design.topic.memory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import org.jspecify.annotations.Nullable;
 
+import capstone.design.topic.TopicBatch;
 import capstone.design.topic.TopicRecord;
 import capstone.design.topic.subscribe.SubscribeManager;
 import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.RetryableException;
 import capstone.design.topic.Topic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 
 public class MemoryTopic implements Topic {
     
     private static final long DEFAULT_RETENTION = 3 * (60 * 1000); // 3분
 
-    private final Map<String, Map<Integer, TopicRecord>> storages = new ConcurrentHashMap<>();
+    // partition -> offset으로 조회하는 ring buffer(partition의 논리 오프셋도 관리)
+    private final Map<String, MemoryPartition> storages = new ConcurrentHashMap<>();
 
-    /*
-     * offsets: partition의 논리 오프셋 관리(다음 저장 값)
-     * clientOffsets: client.id에 따른 오프셋(다음 읽을 값)
-     */
-    private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+    // clientOffsets: client.id에 따른 오프셋(다음 읽을 값)
     private final Map<String, Map<String, Integer>> clientOffsets = new ConcurrentHashMap<>();
     private final SubscribeManager subscribeManager = new SubscribeManager();
     private final long retention;
     private final String name;
+    /**
+     * payload 메모리 한도(MemoryBudget).
+     * 한도가 있으면 payload를 pooled direct buffer로 보관하고, 보관 중인 payload 바이트 수를 usedBytes로 관리.
+     * 한도 확인과 eviction, BLOCK 대기 future 관리는 budgetLock 안에서 수행.
+     */
+    private final MemoryBudget budget;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final Object budgetLock = new Object();
+    private @Nullable CompletableFuture<Void> space; // BLOCK: 사용량이 한도 아래로 내려가면 완료(대기 중인 producer가 없으면 null)
 
-    private MemoryTopic(String name, long retention) {
+    private MemoryTopic(String name, long retention, MemoryBudget budget) {
         this.name = name;
         this.retention = retention;
+        this.budget = budget;
     }
 
-    public static MemoryTopic of(String name) { return new MemoryTopic(name, DEFAULT_RETENTION); }
-    public static MemoryTopic of(String name, long retention) { return new MemoryTopic(name, retention); }
+    public static MemoryTopic of(String name) { return new MemoryTopic(name, DEFAULT_RETENTION, MemoryBudget.unbounded()); }
+    public static MemoryTopic of(String name, long retention) { return new MemoryTopic(name, retention, MemoryBudget.unbounded()); }
+    public static MemoryTopic of(String name, long retention, MemoryBudget budget) { return new MemoryTopic(name, retention, budget); }
+
+    // gauge =====
+    public MemoryBudget budget() { return budget; }
+    public long usedBytes() { return usedBytes.get(); } // 보관 중인 payload 바이트 수
+    public long freeBytes() { return Math.max(0, budget.bytes() - usedBytes.get()); } // 한도까지 남은 바이트 수(UNBOUNDED이면 Long.MAX_VALUE 기준)
 
     private void log(String caller) {
         System.out.println(
             "!=== MemoryTopic 상태(" + caller + ") ===" + "\n" +
             " name: " + name + "\n" +
             " storages: " + storages + "\n" +
-            " offsets: " + offsets + "\n" +
-            " clientOffsets: " + clientOffsets
+            " clientOffsets: " + clientOffsets + "\n" +
+            " budget: " + budget + ", used bytes: " + usedBytes.get()
         );
     }
 
@@ -55,31 +77,63 @@ public class MemoryTopic implements Topic {
 
     @Override
     public int push(String partition, Message message) {
-        Map<Integer, TopicRecord> storage = storages.computeIfAbsent(partition, ignored -> {
-            return new ConcurrentHashMap<>();
+        MemoryPartition storage = storages.computeIfAbsent(partition, ignored -> {
+            return new MemoryPartition();
         });
 
-        int offset = offsets.compute(partition, (ignored, old) -> {
-            return (old == null) ? 1 : old + 1;
-        });
+        /**
+         * payload가 ByteBuf(inbound 버퍼의 slice)인 경우 호출자가 push 이후 해제하므로
+         * 보관용 메시지를 따로 만들고 payload를 복사해서 저장(한도가 있으면 off-heap, 없으면 byte[]).
+         */
+        Object payload = message.payload();
+        reserve(storedBytes(payload));
+        Message stored = message.copy().setPayload(store(payload));
 
-        message.addHeader("offset", String.valueOf(offset));
-        storage.put(offset, new TopicRecord(message));
+        int offset = storage.append(stored);
 
         log("push");
 
         return offset;
     }
 
+    @Override
+    public int pushBatch(String partition, ByteBuf records, int count) {
+        MemoryPartition storage = storages.computeIfAbsent(partition, ignored -> {
+            return new MemoryPartition();
+        });
+
+        // 배치 전체의 payload 크기만큼 한 번에 확보(실패하면 배치 전체를 거절)
+        List<Message> messages = MessageBatch.decode(records);
+        try {
+            reserve(messages.stream().mapToLong(message -> storedBytes(message.payload())).sum());
+        } catch (RuntimeException e) {
+            messages.forEach(Message::release);
+            throw e;
+        }
+
+        List<Message> stored = new ArrayList<>(count);
+        for (Message message : messages) {
+            stored.add(message.copy().setPayload(store(message.payload())));
+            message.release();
+        }
+
+        // 배치 전체에 연속된 offset 범위를 한 번에 할당
+        int base = storage.appendAll(stored);
+
+        log("pushBatch");
+
+        return base;
+    }
+
     @Override
     public @Nullable TopicRecord peek(String partition, String clientId, Message message) {
-        Map<Integer, TopicRecord> storage = storages.get(partition);
+        MemoryPartition storage = storages.get(partition);
         if (storage == null || storage.isEmpty()) {
             System.err.println("? MemoryTopic.peek(): 파티션에 메시지 없음");
             return null;            
         }
 
-        int defaultOffset = Collections.min(storage.keySet());
+        int defaultOffset = storage.head();
         int clientOffset = clientOffsets.computeIfAbsent(partition, ignored -> {
             return new ConcurrentHashMap<>();
         }).getOrDefault(clientId, defaultOffset);
@@ -88,6 +142,10 @@ public class MemoryTopic implements Topic {
 
         TopicRecord record = storage.get(clientOffset);
         if (record == null || record.isExpired(retention)) {
+            if (record != null) {
+                record.message().release();
+            }
+
             System.err.println("? MemoryTopic.peek(): 유효하지 않은 메시지");
             return null;
         }
@@ -97,44 +155,104 @@ public class MemoryTopic implements Topic {
         return record;
     }
 
+    @Override
+    public @Nullable TopicBatch peekBatch(String partition, String clientId, int maxCount, long maxBytes) {
+        MemoryPartition storage = storages.get(partition);
+        if (storage == null || storage.isEmpty()) {
+            return null;
+        }
+
+        int defaultOffset = storage.head();
+        int clientOffset = Math.max(defaultOffset, clientOffsets.computeIfAbsent(partition, ignored -> {
+            return new ConcurrentHashMap<>();
+        }).getOrDefault(clientId, defaultOffset));
+        int last = storage.tail() - 1;
+        long now = System.currentTimeMillis();
+
+        // 메모리의 레코드는 연속되어 있지 않으므로(commit, 만료) MessageBatch 포맷으로 복사해서 묶음
+        ByteBuf records = ByteBufAllocator.DEFAULT.directBuffer();
+        int first = -1;
+        int lastOffset = -1;
+        int count = 0;
+        for (int offset = clientOffset; offset <= last && count < maxCount; offset++) {
+            TopicRecord record = storage.get(offset);
+            if (record == null || record.isExpired(retention, now)) {
+                if (record != null) {
+                    record.message().release();
+                }
+                continue;
+            }
+
+            int mark = records.writerIndex();
+            MessageBatch.write(records, record.message());
+            record.message().release();
+            if (count > 0 && records.readableBytes() > maxBytes) {
+                records.writerIndex(mark);
+                break;
+            }
+
+            first = (first < 0) ? offset : first;
+            lastOffset = offset;
+            count++;
+        }
+
+        if (count == 0) {
+            records.release();
+            return null;
+        }
+
+        return new TopicBatch(first, lastOffset, count, records);
+    }
+
     @Override
     public void commit(String partition, String clientId, int offset, Message message) {
-        storages.computeIfPresent(partition, (ignored, storage) -> {
-            storage.remove(offset);
-            return storage;
+        Map<String, Integer> partitionClientOffsets = clientOffsets.computeIfAbsent(partition, ignored -> {
+            return new ConcurrentHashMap<>();
         });
 
-        clientOffsets.computeIfAbsent(partition, ignored -> {
-            return new ConcurrentHashMap<>();
-        }).put(clientId, offset + 1);
+        // 이전 client offset(없으면 가장 오래된 메시지)부터 commit offset까지 읽은 메시지를 모두 제거(pullBatch 등으로 여러 개를 읽은 경우)
+        MemoryPartition storage = storages.get(partition);
+        if (storage != null) {
+            int from = partitionClientOffsets.getOrDefault(clientId, storage.isEmpty() ? offset : storage.head());
+            freed(storage.remove(Math.min(from, offset), offset));
+        }
+
+        partitionClientOffsets.put(clientId, offset + 1);
 
         log("commit");
     }
 
     @Override
-    public int find(String partition, Map<String, String> condition, Message message) {
-        Map<Integer, TopicRecord> storage = storages.get(partition);
+    public CompletableFuture<Integer> findAsync(String partition, Map<String, String> condition, Message message) {
+        return CompletableFuture.completedFuture(find(partition, condition));
+    }
+
+    private int find(String partition, Map<String, String> condition) {
+        MemoryPartition storage = storages.get(partition);
         if (storage == null || storage.isEmpty()) {
             System.err.println("? MemoryTopic.find(): 빈 파티션");
             return -1;
         }
         
-        // 조건에 맞는 메시지의 오프셋을 모두 획득
-        List<Integer> finded = new ArrayList<>();
-        for (Map.Entry<Integer, TopicRecord> entry : storage.entrySet()) {
-            TopicRecord record = entry.getValue();
-            if (record.matches(condition) && !record.isExpired(retention)) {
-                finded.add(entry.getKey());
-            }
-        }
-        
-        if (finded.isEmpty()) {
+        // 오래된 메시지부터 확인하여 조건에 맞는 가장 작은 오프셋(FIFO)을 반환
+        int offset = storage.find(condition, retention);
+        if (offset < 0) {
             System.err.println("? MemoryTopic.find(): 탐색 실패: " + name + "." + partition);
-            return -1;
         }
-        
-        // 가장 작은 오프셋(FIFO)을 반환
-        return Collections.min(finded);
+
+        return offset;
+    }
+
+    @Override
+    public int seekTime(String partition, String clientId, long timestamp, Message message) {
+        MemoryPartition storage = storages.get(partition);
+
+        // 저장 시각이 timestamp 이상인 가장 작은 offset(없으면 다음에 저장될 offset)
+        int offset = (storage == null) ? 1 : storage.offsetAt(timestamp);
+
+        seek(partition, clientId, offset, message);
+
+        return offset;
     }
 
     @Override
@@ -164,7 +282,7 @@ public class MemoryTopic implements Topic {
 
     @Override
     public int count(String partition, Message message) {
-        Map<Integer, TopicRecord> storage = storages.get(partition);
+        MemoryPartition storage = storages.get(partition);
         if (storage == null || storage.isEmpty()) {
             return 0;
         }
@@ -174,14 +292,150 @@ public class MemoryTopic implements Topic {
 
     @Override
     public void clean() {
-        for (Map<Integer, TopicRecord> storage : storages.values()) {
-            Iterator<TopicRecord> iterator = storage.values().iterator();
-            while (iterator.hasNext()) {
-                TopicRecord record = iterator.next();
-                if (record.isExpired(retention)) {
-                    iterator.remove();
+        clean(System.currentTimeMillis());
+    }
+
+    @Override
+    public void clean(long now) {
+        // 레코드는 저장 순서대로 만료되므로 각 partition의 head부터 만료된 레코드만 제거
+        for (MemoryPartition storage : storages.values()) {
+            freed(storage.removeExpired(retention, now));
+        }
+    }
+
+    /**
+     * BLOCK 정책에서 사용량이 한도 이상이면 한도 아래로 내려갈 때 완료되는 future(최대 budget.value() ms, 넘으면 TimeoutException).
+     * TopicManager는 완료될 때까지 producer 채널의 읽기를 멈추고 push 처리와 응답을 미룸(event loop는 대기하지 않음).
+     */
+    @Override
+    public CompletableFuture<Void> capacity(String partition) {
+        if (budget.policy() != MemoryBudget.Policy.BLOCK || usedBytes.get() < budget.bytes()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (budgetLock) {
+            if (usedBytes.get() < budget.bytes()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            if (space == null) {
+                space = new CompletableFuture<>();
+            }
+
+            // 대기하는 쪽마다 timeout을 따로 적용
+            return space.copy().orTimeout(budget.value(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 보관 중인 off-heap payload를 모두 해제
+    @Override
+    public void close() {
+        for (MemoryPartition storage : storages.values()) {
+            freed(storage.clear());
+        }
+    }
+
+    /**
+     * 저장할 payload 바이트를 확보.
+     * 한도를 넘으면 정책에 따라 거절(RetryableException) 혹은 가장 오래된 메시지 제거.
+     * BLOCK은 대기하지 않고 저장하며(capacity()로 공간이 생긴 뒤 처리된 요청이므로 초과분은 producer 채널마다 요청 하나 이내),
+     * 한도 이상인 동안 이후 요청은 capacity()에서 대기.
+     */
+    private void reserve(long bytes) {
+        if (!budget.isBounded()) {
+            usedBytes.addAndGet(bytes);
+            return;
+        }
+
+        if (bytes > budget.bytes()) {
+            throw new IllegalArgumentException("메시지가 메모리 한도보다 큼: " + bytes + " > " + budget.bytes());
+        }
+
+        if (budget.policy() == MemoryBudget.Policy.BLOCK) {
+            usedBytes.addAndGet(bytes);
+            return;
+        }
+
+        synchronized (budgetLock) {
+            while (usedBytes.get() + bytes > budget.bytes()) {
+                if (budget.policy() != MemoryBudget.Policy.EVICT_OLDEST || !evictOldest()) {
+                    throw new RetryableException("메모리 한도 초과: " + name);
                 }
             }
+
+            usedBytes.addAndGet(bytes);
+        }
+    }
+
+    // budgetLock 안에서 호출, 저장 시각이 가장 오래된 메시지를 제거
+    private boolean evictOldest() {
+        MemoryPartition oldest = null;
+        long createdAt = Long.MAX_VALUE;
+        for (MemoryPartition storage : storages.values()) {
+            long headCreatedAt = storage.headCreatedAt();
+            if (headCreatedAt < createdAt) {
+                oldest = storage;
+                createdAt = headCreatedAt;
+            }
+        }
+
+        long freed = (oldest == null) ? -1 : oldest.removeFirst();
+        if (freed < 0) {
+            return false;
+        }
+
+        usedBytes.addAndGet(-freed);
+        return true;
+    }
+
+    // 해제된 payload 바이트를 반영하고 한도 아래로 내려가면 대기 중인 producer에 알림
+    private void freed(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+
+        usedBytes.addAndGet(-bytes);
+        if (budget.policy() != MemoryBudget.Policy.BLOCK) {
+            return;
         }
+
+        CompletableFuture<Void> released = null;
+        synchronized (budgetLock) {
+            if (space != null && usedBytes.get() < budget.bytes()) {
+                released = space;
+                space = null;
+            }
+        }
+
+        // 대기 중인 요청의 처리는 각 채널의 event loop에서 이어서 수행
+        if (released != null) {
+            released.complete(null);
+        }
+    }
+
+    // 보관할 payload(한도가 있으면 pooled direct buffer, 없으면 ByteBuf만 byte[]로 복사)
+    private @Nullable Object store(@Nullable Object payload) {
+        if (!budget.isBounded()) {
+            return (payload instanceof ByteBuf buf) ? ByteBufUtil.getBytes(buf) : payload;
+        }
+
+        return switch (payload) {
+            case null -> null;
+            case ByteBuf buf -> PooledByteBufAllocator.DEFAULT.directBuffer(buf.readableBytes()).writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+            case byte[] bytes -> PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+            default -> {
+                byte[] bytes = String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
+                yield PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+            }
+        };
+    }
+
+    // store() 이후 보관될 payload 바이트 수
+    private long storedBytes(@Nullable Object payload) {
+        if (budget.isBounded() && payload != null && !(payload instanceof ByteBuf || payload instanceof byte[])) {
+            return String.valueOf(payload).getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        return MemoryPartition.payloadBytes(payload);
     }
 }
@@ -0,0 +1,200 @@
+package capstone.design.topic.memory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.TopicBatch;
+import capstone.design.topic.TopicRecord;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * WorkQueueTopic partition.
+ * 레코드는 MemoryPartition(ring buffer)에 보관하고, 꺼낸 레코드는 한 consumer에게 visibility timeout 동안 lease.
+ * lease 중인 레코드는 다른 consumer에게 전달하지 않으며, lease 소유자의 ack로 제거되고, ack 없이 만료되면 다시 전달.
+ *
+ * - next: 아직 한 번도 전달하지 않은 첫 offset
+ * - redeliver: lease가 만료되어 다시 전달할 offset(만료 순서), next보다 먼저 전달
+ * - leases: offset -> lease(ack 시 소유자 확인)
+ * - deadlines: lease 목록(만료 시각 순서)
+ *   visibility timeout은 topic마다 고정이므로 lease 생성 순서가 곧 만료 순서이며, 만료 확인은 앞쪽의 만료된 lease만 확인.
+ *   ack 혹은 반납된 lease는 deadlines에서 바로 제거하지 않고 꺼낼 때 leases와 비교하여 건너뜀.
+ * 모든 메서드는 this lock 안에서 수행.
+ */
+final class QueuePartition {
+
+    private record Lease(int offset, String clientId, long deadline) {}
+
+    private final MemoryPartition records = new MemoryPartition();
+    private final ArrayDeque<Integer> redeliver = new ArrayDeque<>();
+    private final Map<Integer, Lease> leases = new HashMap<>();
+    private final ArrayDeque<Lease> deadlines = new ArrayDeque<>();
+    private int next = records.tail();
+
+    synchronized int append(Message message) { return records.append(message); }
+    synchronized int appendAll(List<Message> messages) { return records.appendAll(messages); }
+    synchronized int leased() { return leases.size(); }
+
+    // lease 할 수 있는 레코드 수(만료 처리 전 기준)
+    synchronized int available() {
+        return Math.max(0, records.size() - leases.size());
+    }
+
+    /**
+     * 다음 레코드를 clientId에게 lease(만료된 lease를 먼저 정리).
+     * 다시 전달하는 레코드에는 redelivered header를 추가.
+     * @return 전달할 레코드(저장된 메시지의 복사본) 혹은 null(lease 할 레코드가 없는 경우)
+     */
+    synchronized @Nullable TopicRecord lease(String clientId, long now, long retention, long visibilityTimeout) {
+        expire(now);
+        while (true) {
+            boolean redelivered = !redeliver.isEmpty();
+            int offset;
+            if (redelivered) {
+                offset = redeliver.poll();
+            } else {
+                next = Math.max(next, records.head());
+                if (next >= records.tail()) {
+                    return null;
+                }
+
+                offset = next++;
+            }
+
+            // ack, 만료로 제거된 레코드는 건너뜀
+            TopicRecord record = records.get(offset);
+            if (record == null || leases.containsKey(offset) || record.isExpired(retention, now)) {
+                continue;
+            }
+
+            Lease lease = new Lease(offset, clientId, now + visibilityTimeout);
+            leases.put(offset, lease);
+            deadlines.add(lease);
+
+            Message message = record.message().copy();
+            if (redelivered) {
+                message.addHeader("redelivered", "true");
+            }
+
+            return new TopicRecord(message, record.createdAt());
+        }
+    }
+
+    /**
+     * 최대 maxCount개, maxBytes 이하(첫 레코드는 크기와 관계없이 포함)의 레코드를 lease 하여 MessageBatch 포맷으로 묶음.
+     * 레코드의 offset은 연속되지 않을 수 있으며, 각 레코드의 offset header로 구분.
+     * @return 레코드 묶음 혹은 null(lease 할 레코드가 없는 경우)
+     */
+    synchronized @Nullable TopicBatch leaseBatch(String clientId, long now, long retention, long visibilityTimeout, int maxCount, long maxBytes) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.directBuffer();
+        int first = -1;
+        int last = -1;
+        int count = 0;
+        while (count < maxCount) {
+            TopicRecord record = lease(clientId, now, retention, visibilityTimeout);
+            if (record == null) {
+                break;
+            }
+
+            int offset = record.message().offset();
+            int mark = buf.writerIndex();
+            MessageBatch.write(buf, record.message());
+            if (count > 0 && buf.readableBytes() > maxBytes) {
+                // 담지 못한 레코드는 lease를 반납하고 다음에 가장 먼저 전달(처음 전달하는 레코드는 next로 되돌려 redelivered header가 붙지 않도록 함)
+                buf.writerIndex(mark);
+                leases.remove(offset);
+                if (record.message().header("redelivered") != null) {
+                    redeliver.addFirst(offset);
+                } else {
+                    next = Math.min(next, offset);
+                }
+                break;
+            }
+
+            first = (first < 0) ? offset : first;
+            last = offset;
+            count++;
+        }
+
+        if (count == 0) {
+            buf.release();
+            return null;
+        }
+
+        return new TopicBatch(first, last, count, buf);
+    }
+
+    /**
+     * [from, to] 범위에서 clientId가 lease 중인 레코드를 제거.
+     * lease가 없거나(만료 후 재전달 대기 혹은 다른 consumer에게 재전달) 소유자가 다른 레코드는 제거하지 않음.
+     * @return 제거한 레코드 수
+     */
+    synchronized int ack(String clientId, int from, int to) {
+        int acked = 0;
+        for (int offset = Math.max(from, records.head()); offset <= to && offset < records.tail(); offset++) {
+            Lease lease = leases.get(offset);
+            if (lease == null || !lease.clientId().equals(clientId)) {
+                continue;
+            }
+
+            leases.remove(offset);
+            records.remove(offset, offset);
+            acked++;
+        }
+
+        return acked;
+    }
+
+    /**
+     * 만료 시각이 now 이하인 lease를 재전달 대상으로 이동(앞쪽의 만료된 lease만 확인).
+     * @return 재전달 대상이 된 레코드 수
+     */
+    synchronized int expire(long now) {
+        int expired = 0;
+        while (!deadlines.isEmpty() && deadlines.peek().deadline() <= now) {
+            Lease lease = deadlines.poll();
+            if (leases.get(lease.offset()) != lease) {
+                continue;
+            }
+
+            leases.remove(lease.offset());
+            redeliver.add(lease.offset());
+            expired++;
+        }
+
+        return expired;
+    }
+
+    synchronized int find(Map<String, String> condition, long retention) {
+        return records.find(condition, retention);
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    // 보관 기간이 지난 레코드 제거(lease 중인 레코드 포함, 제거된 레코드의 lease도 함께 정리하여 available()에 반영)
+    synchronized void removeExpired(long retention, long now) {
+        records.removeExpired(retention, now);
+        leases.keySet().removeIf(offset -> offset < records.head());
+    }
+
+    synchronized void clear() {
+        records.clear();
+        redeliver.clear();
+        leases.clear();
+        deadlines.clear();
+        next = records.tail();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{records=" + records + ", next=" + next + ", leased=" + leases.size() + ", redeliver=" + redeliver.size() + "}";
+    }
+}
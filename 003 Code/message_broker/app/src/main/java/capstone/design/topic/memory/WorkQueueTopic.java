@@ -0,0 +1,214 @@
+package capstone.design.topic.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.Nullable;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.topic.Topic;
+import capstone.design.topic.TopicBatch;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.subscribe.SubscribeManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * 여러 consumer가 나누어 처리하는 작업 큐 토픽(competing consumers).
+ * client offset 없이, pull 한 레코드를 한 consumer에게 visibility timeout 동안 lease 하고(다른 consumer에게는 전달하지 않음),
+ * consumer가 처리 후 REQ_ACK를 보내면 제거, ack 없이 lease가 만료되면 다른 consumer에게 다시 전달(at-least-once).
+ * pull 이후의 commit은 아무 동작도 하지 않으며(ack로만 제거), seek은 지원하지 않음.
+ * lease 만료는 broker.queue.leaseTickMillis 주기로 확인하고, 재전달할 레코드가 생기면 대기 중인 pull 요청에 알림.
+ */
+public class WorkQueueTopic implements Topic {
+
+    private static final long DEFAULT_RETENTION = 3 * (60 * 1000); // 3분
+    private static final long DEFAULT_VISIBILITY_TIMEOUT = Long.getLong("broker.queue.visibilityTimeoutMillis", 30 * 1000); // 30초
+    private static final long LEASE_TICK_MILLIS = Long.getLong("broker.queue.leaseTickMillis", 100);
+    private static final ScheduledExecutorService LEASE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "queue-lease-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final long retention;
+    private final long visibilityTimeout;
+    private final Map<String, QueuePartition> partitions = new ConcurrentHashMap<>();
+    private final SubscribeManager subscribeManager = new SubscribeManager();
+    private final ScheduledFuture<?> leaseTask;
+
+    // constructor =====
+    private WorkQueueTopic(String name, long retention, long visibilityTimeout) {
+        if (visibilityTimeout <= 0) {
+            throw new IllegalArgumentException("visibility timeout은 0보다 커야 함: " + visibilityTimeout);
+        }
+
+        this.name = name;
+        this.retention = retention;
+        this.visibilityTimeout = visibilityTimeout;
+        this.leaseTask = LEASE_TIMER.scheduleWithFixedDelay(this::expireLeases, LEASE_TICK_MILLIS, LEASE_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // factory method =====
+    public static WorkQueueTopic of(String name) { return new WorkQueueTopic(name, DEFAULT_RETENTION, DEFAULT_VISIBILITY_TIMEOUT); }
+    public static WorkQueueTopic of(String name, long retention) { return new WorkQueueTopic(name, retention, DEFAULT_VISIBILITY_TIMEOUT); }
+    public static WorkQueueTopic of(String name, long retention, long visibilityTimeout) { return new WorkQueueTopic(name, retention, visibilityTimeout); }
+
+    // getter =====
+    public long visibilityTimeout() { return visibilityTimeout; }
+
+    // lease 중인 레코드 수
+    public int leased(String partition) {
+        QueuePartition queue = partitions.get(partition);
+        return (queue == null) ? 0 : queue.leased();
+    }
+
+    @Override
+    public String name() { return name; }
+
+    @Override
+    public int push(String partition, Message message) {
+        // payload는 호출자가 push 이후 해제하므로 복사해서 보관
+        Object payload = message.payload();
+        Message stored = message.copy().setPayload((payload instanceof ByteBuf buf) ? ByteBufUtil.getBytes(buf) : payload);
+
+        return partition(partition).append(stored);
+    }
+
+    @Override
+    public int pushBatch(String partition, ByteBuf records, int count) {
+        List<Message> stored = new ArrayList<>(count);
+        for (Message message : MessageBatch.decode(records)) {
+            Object payload = message.payload();
+            stored.add(message.copy().setPayload((payload instanceof ByteBuf buf) ? ByteBufUtil.getBytes(buf) : payload));
+            message.release();
+        }
+
+        return partition(partition).appendAll(stored);
+    }
+
+    // 다음 레코드를 clientId에게 lease
+    @Override
+    public @Nullable TopicRecord peek(String partition, String clientId, Message message) {
+        QueuePartition queue = partitions.get(partition);
+        if (queue == null) {
+            return null;
+        }
+
+        return queue.lease(clientId, System.currentTimeMillis(), retention, visibilityTimeout);
+    }
+
+    @Override
+    public @Nullable TopicBatch peekBatch(String partition, String clientId, int maxCount, long maxBytes) {
+        QueuePartition queue = partitions.get(partition);
+        if (queue == null) {
+            return null;
+        }
+
+        return queue.leaseBatch(clientId, System.currentTimeMillis(), retention, visibilityTimeout, maxCount, maxBytes);
+    }
+
+    // 전달만으로는 제거하지 않음(ack로 제거)
+    @Override
+    public void commit(String partition, String clientId, int offset, Message message) {}
+
+    @Override
+    public int ack(String partition, String clientId, int offset, int count) {
+        QueuePartition queue = partitions.get(partition);
+        if (queue == null || count <= 0) {
+            return 0;
+        }
+
+        return queue.ack(clientId, offset, offset + count - 1);
+    }
+
+    @Override
+    public CompletableFuture<Integer> findAsync(String partition, Map<String, String> condition, Message message) {
+        QueuePartition queue = partitions.get(partition);
+        return CompletableFuture.completedFuture((queue == null) ? -1 : queue.find(condition, retention));
+    }
+
+    // client offset이 없으므로 지원하지 않음
+    @Override
+    public boolean seek(String partition, String clientId, int offset, Message message) {
+        return false;
+    }
+
+    @Override
+    public int seekTime(String partition, String clientId, long timestamp, Message message) {
+        return -1;
+    }
+
+    @Override
+    public int subscribe(String partition, Supplier<Boolean> callback) {
+        return subscribeManager.subscribe(partition, callback);
+    }
+
+    @Override
+    public void unsubscribe(String partition, int key) {
+        subscribeManager.unsubscribe(partition, key);
+    }
+
+    @Override
+    public void notify(String partition) {
+        subscribeManager.notify(partition);
+    }
+
+    // lease 할 수 있는 레코드 수
+    @Override
+    public int count(String partition, Message message) {
+        QueuePartition queue = partitions.get(partition);
+        return (queue == null) ? 0 : queue.available();
+    }
+
+    @Override
+    public void clean() {
+        clean(System.currentTimeMillis());
+    }
+
+    @Override
+    public void clean(long now) {
+        for (QueuePartition queue : partitions.values()) {
+            queue.removeExpired(retention, now);
+        }
+    }
+
+    @Override
+    public void close() {
+        leaseTask.cancel(false);
+        partitions.values().forEach(QueuePartition::clear);
+    }
+
+    // lease 만료 확인(LEASE_TIMER), 재전달할 레코드가 생긴 partition의 대기 중인 pull 요청에 알림
+    private void expireLeases() {
+        long now = System.currentTimeMillis();
+        partitions.forEach((partition, queue) -> {
+            try {
+                if (queue.expire(now) > 0) {
+                    notify(partition);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("? WorkQueueTopic.expireLeases(): " + e);
+            }
+        });
+    }
+
+    private QueuePartition partition(String partition) {
+        return partitions.computeIfAbsent(partition, ignored -> new QueuePartition());
+    }
+
+    @Override
+    public String toString() {
+        return "{name=" + name + ", visibilityTimeout=" + visibilityTimeout + ", partitions=" + partitions + "}";
+    }
+}
@@ -0,0 +1,60 @@
+package capstone.design;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.disk.DiskTopic;
+
+/**
+ * partition 수에 따른 DiskTopic 시작 시간 측정(JUnit 테스트가 아니므로 main으로 직접 실행).
+ * ready: 생성자가 반환될 때까지(브로커가 연결을 받을 수 있는 시점)
+ * first: 로딩 중에 임의 partition에 처음 접근하기까지
+ * all: 모든 partition 로딩이 끝날 때까지
+ * 로딩 스레드 수는 -Dbroker.disk.loadThreads로 변경.
+ */
+public class DiskTopicStartupBenchmark {
+
+    public static void main(String[] args) {
+        int records = (args.length > 0) ? Integer.parseInt(args[0]) : 100; // partition당 메시지 수
+
+        for (int partitions : new int[] {10, 100, 1000}) {
+            String name = "startup-bench-" + partitions;
+            prepare(name, partitions, records);
+
+            long start = System.nanoTime();
+            DiskTopic topic = DiskTopic.of(name);
+            long ready = System.nanoTime();
+            topic.count(String.valueOf(partitions / 2), null);
+            long first = System.nanoTime();
+            int loaded = topic.awaitLoaded();
+            long all = System.nanoTime();
+
+            System.out.printf(
+                "partitions: %d, loaded: %d, ready: %.1fms, first: %.1fms, all: %.1fms%n",
+                partitions, loaded, (ready - start) / 1e6, (first - start) / 1e6, (all - start) / 1e6
+            );
+
+            topic.clearAll();
+        }
+    }
+
+    private static void prepare(String name, int partitions, int records) {
+        DiskTopic topic = DiskTopic.of(name);
+        topic.clearAll();
+
+        topic = DiskTopic.of(name);
+        for (int partition = 0; partition < partitions; partition++) {
+            for (int i = 0; i < records; i++) {
+                Message message = Message.builder()
+                    .type(MessageType.REQ_PUSH)
+                    .topicName(name)
+                    .partition(partition)
+                    .payload("payload-" + i)
+                    .build();
+
+                topic.push(String.valueOf(partition), message);
+            }
+        }
+
+        topic.close();
+    }
+}
@@ -0,0 +1,101 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.RetryableException;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.hybrid.HybridTopic;
+
+public class HybridTopicTest {
+
+    static final String NAME = "hybrid_test";
+    static final long DURATION = 10 * (60 * 1000);
+    static final long RETENTION = 30 * (60 * 1000);
+
+    HybridTopic topic;
+
+    @AfterEach
+    void afterEach() {
+        topic.clearAll();
+    }
+
+    @Test
+    void spillKeepsPushTimeTest() throws InterruptedException {
+        topic = HybridTopic.of(NAME, DURATION, RETENTION);
+        topic.push("0", message(0));
+        Thread.sleep(30);
+        long middle = System.currentTimeMillis();
+        Thread.sleep(30);
+        topic.push("0", message(1));
+        topic.push("0", message(2));
+
+        // close 시 메모리의 레코드가 모두 spill 되더라도 레코드 시각은 push 시각
+        topic.close();
+        topic = HybridTopic.of(NAME, DURATION, RETENTION);
+        assertEquals(3, topic.count("0", null));
+        assertEquals(1, topic.seekTime("0", "tester", middle, null));
+
+        TopicRecord record = topic.peek("0", "tester", null);
+        assertNotNull(record);
+        assertEquals(1, record.message().offset());
+        record.message().release();
+    }
+
+    @Test
+    void backgroundSpillTest() throws InterruptedException {
+        // 레코드당 64바이트 + payload, 1KB 한도
+        topic = HybridTopic.of(NAME, DURATION, RETENTION, 1024);
+        int pushed = 0;
+        while (pushed < 100) {
+            try {
+                assertEquals(pushed, topic.push("0", message(pushed)));
+                pushed++;
+            } catch (RetryableException e) {
+                // spill이 끝나지 않아 한도를 넘은 경우 거절(재시도)
+                Thread.sleep(1);
+            }
+        }
+
+        // spill은 push 스레드가 아닌 spiller 스레드에서 수행되고, 메모리 사용량은 한도 이내로 유지
+        long deadline = System.currentTimeMillis() + 5000;
+        while (topic.usedBytes() > 1024 * 0.75 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(topic.usedBytes() <= 1024 * 0.75);
+        assertTrue(topic.spilledRecords() > 0);
+
+        // segment와 메모리에 걸쳐 offset이 이어짐
+        assertEquals(100, topic.count("0", null));
+        for (int i = 0; i < 100; i += 7) {
+            assertTrue(topic.seek("0", "tester", i, null));
+            TopicRecord record = topic.peek("0", "tester", null);
+            assertNotNull(record);
+            assertEquals(i, record.message().offset());
+            record.message().release();
+        }
+
+        // 같은 이름의 DiskTopic과 저장소를 공유하지 않음
+        assertTrue(Files.isDirectory(Path.of("./hybrid_topics", NAME)));
+        assertFalse(Files.exists(Path.of("./disk_topics", NAME)));
+    }
+
+    private static Message message(int i) {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName(NAME)
+            .partition("0")
+            .payload("payload-" + i)
+            .build();
+    }
+}
@@ -0,0 +1,82 @@
+package capstone.design;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.memory.MemoryTopic;
+
+/**
+ * partition 크기에 따른 MemoryTopic.clean() 시간 측정(JUnit 테스트가 아니므로 main으로 직접 실행).
+ * idle: 만료된 레코드가 없을 때의 clean(IDLE_ROUNDS 번의 평균)
+ * expiring: 앞쪽 expiring개 레코드만 만료되었을 때의 clean
+ * clean(now)에 지난 시각을 넘겨 만료를 만들기 때문에 실제로 retention 동안 기다리지 않음.
+ */
+public class MemoryTopicCleanBenchmark {
+
+    private static final long RETENTION = 5 * 1000; // 5초
+    private static final int IDLE_ROUNDS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int expiring = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int payloadBytes = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+
+        for (int size : new int[] {10_000, 100_000, 300_000}) {
+            MemoryTopic topic = MemoryTopic.of("clean-bench-" + size, RETENTION);
+            push(topic, expiring, payloadBytes);
+            Thread.sleep(20);
+            long boundary = System.currentTimeMillis();
+            push(topic, size, payloadBytes);
+
+            // boundary 이전에 push 된 레코드만 만료되는 시각
+            long idle = 0;
+            for (int i = 0; i < IDLE_ROUNDS; i++) {
+                idle += time(() -> topic.clean(boundary));
+            }
+            idle /= IDLE_ROUNDS;
+            long expired = time(() -> topic.clean(boundary + RETENTION - 1));
+            if (topic.count("0", null) != size) {
+                throw new IllegalStateException("남은 레코드 수가 다름: " + topic.count("0", null));
+            }
+
+            System.out.printf(
+                "partition: %d, idle: %.1fus, expiring(%d): %.2fms%n",
+                size, idle / 1e3, expiring, expired / 1e6
+            );
+
+            topic.close();
+        }
+    }
+
+    // push마다 출력되는 topic 상태 로그는 버림
+    private static void push(MemoryTopic topic, int count, int payloadBytes) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            pushAll(topic, count, payloadBytes);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void pushAll(MemoryTopic topic, int count, int payloadBytes) {
+        byte[] payload = new byte[payloadBytes];
+        for (int i = 0; i < count; i++) {
+            Message message = Message.builder()
+                .type(MessageType.REQ_PUSH)
+                .topicName(topic.name())
+                .partition(0)
+                .payload(payload)
+                .build();
+
+            topic.push("0", message);
+        }
+    }
+
+    private static long time(Runnable clean) {
+        long start = System.nanoTime();
+        clean.run();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,153 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.assertResponse;
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.decode;
+import static capstone.design.TestChannels.encode;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.RetryableException;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.memory.MemoryBudget;
+import capstone.design.topic.memory.MemoryTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * MemoryTopic 메모리 한도 정책(REJECT, EVICT_OLDEST, BLOCK) 테스트.
+ */
+public class MemoryTopicTest {
+
+    static final String NAME = "memory_test";
+
+    TopicManager topicManager;
+
+    @AfterEach
+    void afterEach() {
+        if (topicManager != null) {
+            topicManager.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectTest() {
+        // payload 16바이트 한도, 한도를 넘는 push는 저장하지 않고 retryable 에러
+        MemoryTopic topic = MemoryTopic.of(NAME, 60 * 1000, MemoryBudget.reject(16));
+        topicManager = TopicManager.of(Map.of(NAME, topic));
+        EmbeddedChannel channel = TestChannels.serverChannel(topicManager);
+
+        channel.writeInbound(encode(pushMessage(NAME, new byte[12])));
+        assertResponse(channel);
+        channel.writeInbound(encode(pushMessage(NAME, new byte[8])));
+        Message response = decode(collect(channel));
+        assertEquals(MessageType.RES_PUSH, response.type());
+        assertNotNull(response.header("error"));
+        assertEquals("true", response.header("retryable"));
+        assertEquals(1, topic.count("0", null));
+        assertEquals(12, topic.usedBytes());
+
+        // 남은 공간 안의 push는 저장
+        channel.writeInbound(encode(pushMessage(NAME, new byte[4])));
+        assertResponse(channel);
+        assertEquals(16, topic.usedBytes());
+
+        // 한도가 가득 찬 경우 retryable, 한도보다 큰 메시지는 재시도해도 저장할 수 없으므로 retryable이 아님
+        assertThrows(RetryableException.class, () -> topic.push("0", pushMessage(NAME, new byte[1])));
+        assertThrows(IllegalArgumentException.class, () -> topic.push("0", pushMessage(NAME, new byte[17])));
+        assertEquals(2, topic.count("0", null));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void evictOldestTest() {
+        // 한도 안에 들어올 때까지 가장 오래된 메시지부터 제거
+        MemoryTopic topic = MemoryTopic.of(NAME, 60 * 1000, MemoryBudget.evictOldest(16));
+        for (int i = 0; i < 3; i++) {
+            topic.push("0", pushMessage(NAME, new byte[] { (byte) i, (byte) i, (byte) i, (byte) i, (byte) i, (byte) i }));
+        }
+
+        assertEquals(2, topic.count("0", null));
+        assertEquals(12, topic.usedBytes());
+        assertPeek(topic, 2, (byte) 1);
+
+        // 여러 메시지를 제거해야 들어오는 메시지
+        topic.push("0", pushMessage(NAME, new byte[16]));
+        assertEquals(1, topic.count("0", null));
+        assertEquals(16, topic.usedBytes());
+        assertPeek(topic, 4, (byte) 0);
+        topic.close();
+    }
+
+    @Test
+    void blockBackpressureTest() throws InterruptedException {
+        // payload 16바이트 한도, 한도 이상이면 최대 200ms 동안 producer 채널의 읽기를 멈춤
+        MemoryTopic topic = MemoryTopic.of(NAME, 50, MemoryBudget.block(16, 200));
+        topicManager = TopicManager.of(Map.of(NAME, topic));
+        EmbeddedChannel channel = TestChannels.serverChannel(topicManager);
+
+        channel.writeInbound(encode(pushMessage(NAME, new byte[16])));
+        assertResponse(channel);
+
+        // 한도에 도달했으므로 응답을 미루고 읽기를 멈춤(event loop는 대기하지 않음)
+        ByteBuf blocked = encode(pushMessage(NAME, new byte[8]));
+        channel.writeInbound(blocked);
+        assertNull(channel.readOutbound());
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, blocked.refCnt());
+
+        // 보관 기간이 지나 공간이 생기면 미룬 push를 처리하고 읽기를 재개
+        Thread.sleep(100);
+        topic.clean();
+        channel.runPendingTasks();
+        assertEquals(0, blocked.refCnt());
+        assertResponse(channel);
+        assertTrue(channel.config().isAutoRead());
+        assertEquals(8, topic.usedBytes());
+
+        // 다시 한도에 도달한 뒤 공간이 생기지 않으면 대기 시간 이후 retryable 에러로 응답
+        channel.writeInbound(encode(pushMessage(NAME, new byte[8])));
+        assertResponse(channel);
+        channel.writeInbound(encode(pushMessage(NAME, new byte[8])));
+        assertNull(channel.readOutbound());
+
+        Thread.sleep(400);
+        channel.runPendingTasks();
+        Message response = decode(collect(channel));
+        assertEquals(MessageType.RES_PUSH, response.type());
+        assertEquals("true", response.header("retryable"));
+        assertTrue(channel.config().isAutoRead());
+        assertEquals(16, topic.usedBytes());
+
+        channel.finishAndReleaseAll();
+    }
+
+    // tester의 다음 레코드가 offset이고 payload가 value로 채워져 있는지 확인
+    private static void assertPeek(MemoryTopic topic, int offset, byte value) {
+        TopicRecord record = topic.peek("0", "tester", null);
+        assertNotNull(record);
+        assertEquals(offset, record.message().offset());
+
+        byte[] payload = ByteBufUtil.getBytes((ByteBuf) record.message().payload());
+        byte[] expected = new byte[payload.length];
+        Arrays.fill(expected, value);
+        assertArrayEquals(expected, payload);
+        record.message().release();
+    }
+}
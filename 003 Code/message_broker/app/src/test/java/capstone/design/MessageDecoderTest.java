@@ -0,0 +1,281 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.assertResponse;
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.decode;
+import static capstone.design.TestChannels.encode;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageDecoder;
+import capstone.design.message.MessageType;
+import capstone.design.message.Protocol;
+import capstone.design.netty.client.ClientInboundHandler;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.DiskTopic;
+import capstone.design.topic.memory.MemoryTopic;
+import capstone.design.topic.memory.WorkQueueTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+
+public class MessageDecoderTest {
+
+    static final String MEMORY = "decoder_test_memory";
+    static final String DISK = "decoder_test_disk";
+    static final String QUEUE = "decoder_test_queue";
+
+    MemoryTopic memoryTopic;
+    DiskTopic diskTopic;
+    WorkQueueTopic queueTopic;
+    TopicManager topicManager;
+
+    @BeforeAll
+    static void beforeAll() {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        memoryTopic = MemoryTopic.of(MEMORY);
+        diskTopic = DiskTopic.of(DISK);
+        queueTopic = WorkQueueTopic.of(QUEUE, 60 * 1000, 200);
+        topicManager = TopicManager.of(Map.of(MEMORY, memoryTopic, DISK, diskTopic, QUEUE, queueTopic));
+    }
+
+    @AfterEach
+    void afterEach() {
+        topicManager.shutdownNow();
+        diskTopic.clearAll();
+    }
+
+    @Test
+    void payloadSliceTest() {
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        ByteBuf in = encode(pushMessage(MEMORY, payload));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+        channel.writeInbound(in);
+
+        List<?> messages = channel.readInbound();
+        assertNotNull(messages);
+        assertEquals(1, messages.size());
+
+        // payload는 복사본이 아닌 inbound 버퍼의 slice여야 함
+        Message message = (Message) messages.get(0);
+        ByteBuf slice = assertInstanceOf(ByteBuf.class, message.payload());
+        assertArrayEquals(payload, ByteBufUtil.getBytes(slice));
+        assertEquals(1, in.refCnt());
+
+        message.release();
+        assertEquals(0, in.refCnt());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void clientResponseTest() {
+        // 두 응답이 하나의 inbound 버퍼로 도착하면 디코더는 List<Message> 하나로 전달
+        Map<String, List<CompletableFuture<Message>>> requests = Map.of(
+            "1", List.of(new CompletableFuture<>()),
+            "2", List.of(new CompletableFuture<>())
+        );
+        ByteBuf in = Unpooled.buffer();
+        for (String requestId : requests.keySet()) {
+            Message response = Message.builder()
+                .type(MessageType.RES_PULL)
+                .header("request.id", requestId)
+                .payload(("payload-" + requestId).getBytes(StandardCharsets.UTF_8))
+                .build();
+            ByteBuf encoded = encode(response);
+            in.writeBytes(encoded);
+            encoded.release();
+        }
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(), new ClientInboundHandler(requests::get));
+        channel.writeInbound(in);
+
+        // payload는 byte[]로 복사되고 inbound 버퍼의 slice는 모두 해제되어야 함
+        assertEquals(0, in.refCnt());
+        for (Map.Entry<String, List<CompletableFuture<Message>>> entry : requests.entrySet()) {
+            Message message = entry.getValue().get(0).getNow(null);
+            assertNotNull(message);
+            assertEquals(null, message.header("request.id"));
+            assertArrayEquals(("payload-" + entry.getKey()).getBytes(StandardCharsets.UTF_8), (byte[]) message.payload());
+        }
+
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void memoryPushReleaseTest() {
+        byte[] payload = "memory".getBytes(StandardCharsets.UTF_8);
+        ByteBuf in = encode(pushMessage(MEMORY, payload));
+
+        EmbeddedChannel channel = serverChannel();
+        channel.writeInbound(in);
+
+        // TopicManager.push 이후 inbound 버퍼가 모두 해제되어야 함
+        assertEquals(0, in.refCnt());
+        assertResponse(channel);
+
+        TopicRecord record = memoryTopic.peek("0", "tester", null);
+        assertNotNull(record);
+        assertArrayEquals(payload, (byte[]) record.message().payload());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void diskPushReleaseTest() {
+        byte[] payload = new byte[64 * 1024];
+        ByteBuf in = encode(pushMessage(DISK, payload));
+
+        EmbeddedChannel channel = serverChannel();
+        channel.writeInbound(in);
+
+        assertEquals(0, in.refCnt());
+        assertResponse(channel);
+        assertEquals(1, diskTopic.count("0", null));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void protocolV2Test() {
+        Message message = Message.builder()
+            .type(MessageType.REQ_PULL)
+            .topicName(MEMORY)
+            .partition(3)
+            .offset(7)
+            .count(500)
+            .timeout(1000)
+            .header("user.key", "value")
+            .build();
+        ByteBuf in = encode(message, Protocol.V2);
+        assertEquals(Utils.MAGIC_V2, in.getInt(0));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder());
+        channel.writeInbound(in);
+
+        List<?> messages = channel.readInbound();
+        Message decoded = (Message) messages.get(0);
+        assertEquals("3", decoded.partition());
+        assertEquals(7, decoded.offset());
+        assertEquals(500, decoded.count());
+        assertEquals(1000, decoded.timeout());
+        assertEquals("value", decoded.header("user.key"));
+        assertEquals(Protocol.V2, channel.attr(Protocol.KEY).get());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void responseProtocolTest() {
+        EmbeddedChannel channel = serverChannel();
+
+        // v1(py_client) 요청에는 v1로, v2 요청에는 v2로 응답해야 함
+        for (Protocol protocol : Protocol.values()) {
+            channel.writeInbound(encode(pushMessage(MEMORY, new byte[] { 1 }), protocol));
+
+            ByteBuf response = collect(channel);
+            assertEquals(protocol.magic(), response.getInt(0));
+            response.release();
+        }
+
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void pushBatchTest() {
+        EmbeddedChannel channel = serverChannel();
+
+        // memory topic의 offset은 1부터, disk topic의 offset은 0부터 시작
+        for (Map.Entry<String, Integer> entry : Map.of(MEMORY, 1, DISK, 0).entrySet()) {
+            String topicName = entry.getKey();
+            List<Message> records = List.of(
+                pushMessage(topicName, new byte[] { 1 }),
+                pushMessage(topicName, new byte[] { 2, 2 }),
+                pushMessage(topicName, new byte[] { 3, 3, 3 })
+            );
+            Message batch = Message.builder()
+                .type(MessageType.REQ_PUSH_BATCH)
+                .topicName(topicName)
+                .partition(0)
+                .payload(MessageBatch.encode(UnpooledByteBufAllocator.DEFAULT, records))
+                .build();
+            ByteBuf in = encode(batch);
+            channel.writeInbound(in);
+            assertEquals(0, in.refCnt());
+
+            Message response = decode(collect(channel));
+            assertEquals(MessageType.RES_PUSH_BATCH, response.type());
+            assertEquals(null, response.header("error"));
+            assertEquals(entry.getValue(), response.offset());
+            assertEquals(3, response.count());
+        }
+
+        assertEquals(3, diskTopic.count("0", null));
+        TopicRecord record = memoryTopic.peek("0", "tester", null);
+        assertArrayEquals(new byte[] { 1 }, (byte[]) record.message().payload());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void malformedBatchHeaderTest() {
+        EmbeddedChannel channel = serverChannel();
+
+        // 두 번째 레코드의 header entry 개수를 늘리고 checksum을 다시 계산(길이, checksum은 유효하지만 header는 잘못됨)
+        for (String topicName : List.of(MEMORY, DISK, QUEUE)) {
+            ByteBuf records = MessageBatch.encode(UnpooledByteBufAllocator.DEFAULT, List.of(
+                pushMessage(topicName, new byte[] { 1 }),
+                pushMessage(topicName, new byte[] { 2, 2 })
+            ));
+            int second = MessageBatch.RECORD_PREFIX + records.getInt(0) + records.getInt(Integer.BYTES);
+            int headerLength = records.getInt(second);
+            int payloadLength = records.getInt(second + Integer.BYTES);
+            int headerStart = second + MessageBatch.RECORD_PREFIX;
+            records.setByte(headerStart + Byte.BYTES, records.getUnsignedByte(headerStart + Byte.BYTES) + 1);
+            records.setInt(second + Integer.BYTES * 2, MessageBatch.checksum(records.nioBuffer(headerStart, headerLength + payloadLength)));
+
+            Message batch = Message.builder()
+                .type(MessageType.REQ_PUSH_BATCH)
+                .topicName(topicName)
+                .partition(0)
+                .payload(records)
+                .build();
+            ByteBuf in = encode(batch);
+            channel.writeInbound(in);
+            assertEquals(0, in.refCnt());
+
+            Message response = decode(collect(channel));
+            assertEquals(MessageType.RES_PUSH_BATCH, response.type());
+            assertNotNull(response.header("error"));
+        }
+
+        // 배치 전체가 거부되어 어떤 레코드도 저장되지 않음(disk topic은 partition도 생성되지 않음)
+        assertEquals(-1, diskTopic.count("0", null));
+        assertEquals(null, memoryTopic.peek("0", "tester", null));
+        assertEquals(0, queueTopic.count("0", null));
+        channel.finishAndReleaseAll();
+    }
+
+    private EmbeddedChannel serverChannel() {
+        return TestChannels.serverChannel(topicManager);
+    }
+}
@@ -0,0 +1,91 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageHeader;
+import capstone.design.message.MessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class MessageHeaderTest {
+
+    @Test
+    void lazyReadTest() {
+        MessageHeader header = encodeAndRead(Map.of(
+            "topic.name", "join",
+            "partition", "3",
+            "condition.request.id", "abc",
+            "한글키", "값"
+        ));
+
+        assertEquals("join", header.get("topic.name"));
+        assertEquals("3", header.get("partition"));
+        assertEquals("값", header.get("한글키"));
+        assertNull(header.get("offset"));
+        assertEquals(4, header.size());
+    }
+
+    @Test
+    void overrideTest() {
+        MessageHeader header = encodeAndRead(Map.of(
+            "topic.name", "join",
+            "partition", "3",
+            "client.id", "tester"
+        ));
+
+        header.put("offset", "10");
+        header.put("partition", "4");
+        header.remove("client.id");
+
+        Map<String, String> expected = new HashMap<>(Map.of(
+            "topic.name", "join",
+            "partition", "4",
+            "offset", "10"
+        ));
+        assertEquals(expected, new HashMap<>(header));
+        assertFalse(header.containsKey("client.id"));
+
+        // 변경 사항이 반영된 상태로 다시 인코딩되어야 함
+        assertEquals(expected, new HashMap<>(reencode(header)));
+    }
+
+    @Test
+    void messageTest() {
+        Message message = Message.builder()
+            .type(MessageType.REQ_FIND)
+            .header(encodeAndRead(Map.of("topic.name", "join")))
+            .condition("request.id", "abc")
+            .build();
+
+        assertEquals("join", message.topicName());
+        assertEquals(Map.of("request.id", "abc"), message.condition());
+
+        Message copy = message.copy().addHeader("offset", 1);
+        assertEquals(1, copy.offset());
+        assertEquals(-1, message.offset());
+    }
+
+    private static MessageHeader encodeAndRead(Map<String, String> map) {
+        MessageHeader header = new MessageHeader();
+        header.putAll(map);
+        return reencode(header);
+    }
+
+    private static MessageHeader reencode(MessageHeader header) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            header.writeTo(buf);
+            return MessageHeader.read(buf, buf.readUnsignedByte());
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.assertResponse;
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.decodeRetained;
+import static capstone.design.TestChannels.encode;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.disk.DiskTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * TopicManager의 REQ_PULL_BATCH 처리 테스트(DiskTopic의 segment 구간을 FileRegion으로 전달).
+ */
+public class PullBatchTest {
+
+    static final String NAME = "pull_batch_test";
+
+    DiskTopic topic;
+    TopicManager topicManager;
+
+    @BeforeEach
+    void beforeEach() {
+        topic = DiskTopic.of(NAME);
+        topicManager = TopicManager.of(Map.of(NAME, topic));
+    }
+
+    @AfterEach
+    void afterEach() {
+        topicManager.shutdownNow();
+        topic.clearAll();
+    }
+
+    @Test
+    void pullBatchTest() {
+        EmbeddedChannel channel = TestChannels.serverChannel(topicManager);
+        for (int i = 0; i < 5; i++) {
+            channel.writeInbound(encode(pushMessage(NAME, new byte[] { (byte) i })));
+            assertResponse(channel);
+        }
+
+        // 앞의 3개는 FileRegion 하나로, 나머지 2개는 다음 요청으로 받아야 함
+        int[][] expected = { { 0, 3 }, { 3, 2 } };
+        for (int[] range : expected) {
+            Message request = Message.builder()
+                .type(MessageType.REQ_PULL_BATCH)
+                .topicName(NAME)
+                .partition(0)
+                .clientId("tester")
+                .count(3)
+                .build();
+            channel.writeInbound(encode(request));
+
+            ByteBuf response = collect(channel);
+            Message message = decodeRetained(response);
+            assertEquals(MessageType.RES_PULL_BATCH, message.type());
+            assertEquals(range[0], message.offset());
+            assertEquals(range[1], message.count());
+
+            // payload(MessageBatch)를 레코드 단위로 분리
+            List<Message> records = MessageBatch.decode((ByteBuf) message.payload());
+            assertEquals(range[1], records.size());
+            for (int i = 0; i < records.size(); i++) {
+                ByteBuf record = (ByteBuf) records.get(i).payload();
+                assertEquals(range[0] + i, record.getByte(record.readerIndex()));
+                records.get(i).release();
+            }
+            message.release();
+            response.release();
+        }
+
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,129 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.client.RecordAccumulator;
+import capstone.design.message.Message;
+import capstone.design.message.MessageDecoder;
+import capstone.design.message.MessageEncoder;
+import capstone.design.message.MessageType;
+import capstone.design.netty.client.ClientInboundHandler;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.memory.MemoryTopic;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * producer 배치 누적기 테스트.
+ * 요청을 client 채널로 인코딩해서 server 채널(TopicManager)에 전달하고, 응답을 다시 client 채널로 디코딩하여 future를 완료.
+ */
+public class RecordAccumulatorTest {
+
+    static final String NAME = "accumulator_test";
+
+    MemoryTopic topic;
+    TopicManager topicManager;
+    EmbeddedChannel server;
+    EmbeddedChannel client;
+    AtomicInteger requestCounter = new AtomicInteger(0);
+    RecordAccumulator accumulator;
+
+    @BeforeEach
+    void beforeEach() {
+        topic = MemoryTopic.of(NAME);
+        topicManager = TopicManager.of(Map.of(NAME, topic));
+        server = TestChannels.serverChannel(topicManager);
+
+        Map<String, List<CompletableFuture<Message>>> requests = new ConcurrentHashMap<>();
+        client = new EmbeddedChannel(new MessageDecoder(), new ClientInboundHandler(requests::get), new MessageEncoder());
+
+        // linger 전송은 scheduler 스레드에서 호출되므로 채널 사용을 동기화
+        accumulator = RecordAccumulator.builder(request -> {
+            synchronized (server) {
+                String requestId = String.valueOf(requestCounter.incrementAndGet());
+                CompletableFuture<Message> future = new CompletableFuture<>();
+                requests.put(requestId, List.of(future));
+
+                client.writeOutbound(request.addHeader("request.id", requestId));
+                server.writeInbound(collect(client));
+                client.writeInbound(collect(server));
+                return future;
+            }
+        })
+            .batchCount(3)
+            .batchBytes(1024)
+            .lingerMillis(200)
+            .build();
+    }
+
+    @AfterEach
+    void afterEach() {
+        accumulator.close();
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        topicManager.shutdownNow();
+    }
+
+    @Test
+    void countFlushTest() {
+        // 세 번째 append에서 REQ_PUSH_BATCH 하나로 바로 전송
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(accumulator.append(pushMessage(NAME, new byte[] { (byte) i })));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertAppended(futures.get(i).getNow(null), i + 1);
+        }
+        assertEquals(1, requestCounter.get());
+        assertEquals(3, topic.count("0", null));
+        assertEquals(0, accumulator.bufferedBytes());
+    }
+
+    @Test
+    void sizeFlushTest() {
+        // batchBytes보다 큰 레코드 하나로 바로 전송
+        assertAppended(accumulator.append(pushMessage(NAME, new byte[2048])).getNow(null), 1);
+        assertEquals(1, requestCounter.get());
+        assertEquals(0, accumulator.bufferedBytes());
+    }
+
+    @Test
+    void lingerFlushTest() throws Exception {
+        // 전송 전까지 buffer를 점유하고, lingerMillis 이후 전송되면 반환
+        CompletableFuture<Message> first = accumulator.append(pushMessage(NAME, new byte[] { 1 }));
+        CompletableFuture<Message> second = accumulator.append(pushMessage(NAME, new byte[] { 2 }));
+        assertFalse(first.isDone());
+        assertTrue(accumulator.bufferedBytes() > 0);
+        assertEquals(0, requestCounter.get());
+
+        assertAppended(first.get(5, TimeUnit.SECONDS), 1);
+        assertAppended(second.get(5, TimeUnit.SECONDS), 2);
+        assertEquals(1, requestCounter.get());
+        assertEquals(0, accumulator.bufferedBytes());
+    }
+
+    private static void assertAppended(Message response, int offset) {
+        assertNotNull(response);
+        assertEquals(MessageType.RES_PUSH, response.type());
+        assertNull(response.header("error"));
+        assertEquals(offset, response.offset());
+    }
+}
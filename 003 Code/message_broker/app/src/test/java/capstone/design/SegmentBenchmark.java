@@ -0,0 +1,83 @@
+package capstone.design;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.segment.Segment;
+
+/**
+ * Segment 단건 append, 임의 순서 read의 레코드당 시간 측정(JUnit 테스트가 아니므로 main으로 직접 실행).
+ * 첫 번째 round는 JIT warm-up으로 보고, 이후 round의 결과를 비교.
+ * 동시에 열어 둘 segment 수는 -Dbroker.segment.maxOpen으로 변경.
+ */
+public class SegmentBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int records = (args.length > 0) ? Integer.parseInt(args[0]) : 50_000;
+        int payloadBytes = (args.length > 1) ? Integer.parseInt(args[1]) : 256;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        Path root = Files.createTempDirectory("segment-bench");
+        try {
+            for (int round = 0; round < rounds; round++) {
+                run(root, round, records, payloadBytes);
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void run(Path root, int round, int records, int payloadBytes) {
+        Segment segment = new Segment(round, root.resolve(round + ".log"), root.resolve(round + ".idx"), 0, System.currentTimeMillis());
+        byte[] payload = new byte[payloadBytes];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            Message message = Message.builder()
+                .type(MessageType.REQ_PUSH)
+                .topicName("segment-bench")
+                .partition(0)
+                .offset(i)
+                .payload(payload)
+                .build();
+
+            if (!segment.write(message.toFrame())) {
+                throw new IllegalStateException("append 실패: " + i);
+            }
+        }
+        long appended = System.nanoTime();
+
+        Random random = new Random(round);
+        for (int i = 0; i < records; i++) {
+            TopicRecord record = segment.read(random.nextInt(records));
+            if (record == null) {
+                throw new IllegalStateException("read 실패: " + i);
+            }
+
+            record.message().release();
+        }
+        long read = System.nanoTime();
+
+        System.out.printf(
+            "round: %d, records: %d, payload: %dB, append: %.2fus/op, read: %.2fus/op%n",
+            round, records, payloadBytes, (appended - start) / 1e3 / records, (read - appended) / 1e3 / records
+        );
+
+        segment.clear();
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
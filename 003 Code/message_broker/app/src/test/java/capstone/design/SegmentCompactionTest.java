@@ -0,0 +1,107 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.segment.SegmentManager;
+
+/**
+ * key 기반 compaction 테스트(offset 유지, 제거된 offset 건너뛰기, 교체 후 다시 열기, close 이후 중단).
+ */
+public class SegmentCompactionTest {
+
+    private static final long DURATION = 10 * (60 * 1000);
+    private static final long RETENTION = 30 * (60 * 1000);
+    private static final String KEY = "key";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void compactTest() throws IOException {
+        // seal 된 segment: 0(k1), 1(k2), 2(k1), 3(key 없음)
+        SegmentManager manager = open();
+        assertEquals(0, manager.write(message("k1", "a")));
+        assertEquals(1, manager.write(message("k2", "b")));
+        assertEquals(2, manager.write(message("k1", "c")));
+        assertEquals(3, manager.write(message(null, "d")));
+        manager.close();
+
+        // active segment: 4(k2), 같은 key의 마지막 레코드가 active segment에 있어도 이전 레코드는 제거
+        manager = open();
+        assertEquals(4, manager.write(message("k2", "e")));
+        assertEquals(1, manager.compact());
+        assertCompacted(manager);
+
+        // compaction 결과로 교체된 segment가 다시 열어도 유지됨
+        manager.close();
+        manager = open();
+        assertCompacted(manager);
+        assertEquals(5, manager.write(message("k1", "f")));
+        manager.close();
+    }
+
+    @Test
+    void closedTest() throws IOException {
+        SegmentManager manager = open();
+        manager.write(message("k1", "a"));
+        manager.write(message("k1", "b"));
+        manager.close();
+
+        // close 이후에는 startCompaction() 전까지 compaction 하지 않음(진행 중인 compaction도 segment를 교체하지 않음)
+        assertEquals(0, manager.compact());
+        manager = open();
+        assertRecord(manager.read(0), 0, "a");
+        assertEquals(1, manager.compact());
+        assertRecord(manager.read(0), 1, "b");
+        manager.close();
+    }
+
+    // 제거된 offset(0, 1)은 다음으로 남아 있는 레코드(2)부터 읽으며, 남은 레코드의 offset은 그대로
+    private static void assertCompacted(SegmentManager manager) {
+        assertRecord(manager.read(0), 2, "c");
+        assertRecord(manager.read(1), 2, "c");
+        assertRecord(manager.read(2), 2, "c");
+        assertRecord(manager.read(3), 3, "d");
+        assertRecord(manager.read(4), 4, "e");
+        assertNull(manager.read(5));
+        assertEquals(5, manager.nextOffset());
+        assertRecord(manager.peek("tester"), 2, "c");
+    }
+
+    private static void assertRecord(@Nullable TopicRecord record, int offset, String value) {
+        assertNotNull(record);
+        assertEquals(offset, record.message().offset());
+        assertEquals(value, record.message().header("value"));
+        record.message().release();
+    }
+
+    private SegmentManager open() throws IOException {
+        return new SegmentManager(root, DURATION, RETENTION, KEY);
+    }
+
+    private static Message message(@Nullable String key, String value) {
+        Message.Builder builder = Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName("topic")
+            .partition("0")
+            .header("value", value)
+            .payload("payload-" + value);
+        if (key != null) {
+            builder.header(KEY, key);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,88 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.disk.segment.Segment;
+import capstone.design.topic.disk.segment.SegmentManager;
+
+/**
+ * 색인되지 않은 header 조건으로 여러 segment를 병렬 스캔하는 find 테스트.
+ */
+public class SegmentFindTest {
+
+    private static final long DURATION = 50;
+    private static final long RETENTION = 30 * (60 * 1000);
+
+    @TempDir
+    Path root;
+
+    @Test
+    void earliestOffsetTest() throws Exception {
+        // segment마다 [other, target, target] 기록(DURATION이 지나면 다음 write에서 새 segment)
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        for (int i = 0; i < 3; i++) {
+            manager.write(message("other"));
+            manager.write(message("target"));
+            manager.write(message("target"));
+            Thread.sleep(DURATION + 30);
+        }
+        assertTrue(segmentCount() >= 3);
+
+        // 병렬로 스캔하더라도 가장 앞선 segment의 첫 레코드를 반환
+        assertEquals(1, manager.findAsync(Map.of("k", "target")).get(5, TimeUnit.SECONDS));
+        assertEquals(0, manager.findAsync(Map.of("k", "other")).get(5, TimeUnit.SECONDS));
+        assertEquals(-1, manager.findAsync(Map.of("k", "missing")).get(5, TimeUnit.SECONDS));
+
+        // 마지막 segment에만 있는 레코드는 앞선 segment 스캔이 모두 끝난 뒤 반환
+        manager.write(message("last"));
+        assertEquals(9, manager.findAsync(Map.of("k", "last")).get(5, TimeUnit.SECONDS));
+        manager.close();
+    }
+
+    @Test
+    void cancelledScanTest() {
+        // 앞선 segment에서 찾은 경우(cancelled) 뒤의 segment는 레코드를 확인하지 않고 중단
+        Segment segment = new Segment(0, root.resolve("0.log"), root.resolve("0.idx"), 0, System.currentTimeMillis());
+        segment.write(message("other").toFrame());
+        segment.write(message("target").toFrame());
+
+        assertEquals(1, segment.scan(Map.of("k", "target"), () -> false));
+        assertEquals(-1, segment.scan(Map.of("k", "target"), () -> true));
+
+        int[] checks = {0};
+        assertEquals(-1, segment.scan(Map.of("k", "target"), () -> ++checks[0] > 1));
+        assertEquals(2, checks[0]);
+        segment.clear();
+    }
+
+    private int segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return (int) files
+                .filter(path -> path.getFileName().toString().matches("\\d+\\.log"))
+                .count();
+        }
+    }
+
+    private static Message message(String value) {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName("topic")
+            .partition("1")
+            .header("k", value)
+            .payload("payload-" + value)
+            .build();
+    }
+}
@@ -0,0 +1,318 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.segment.Segment;
+import capstone.design.topic.disk.segment.SegmentManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 비정상 종료 후 segment 복구(쓰다 만 레코드, idx 유실)와 이전 포맷 segment, client offset 변환, tail cache 레코드 시각, time index 복원 테스트.
+ */
+public class SegmentRecoveryTest {
+
+    private static final long DURATION = 10 * (60 * 1000);
+    private static final long RETENTION = 30 * (60 * 1000);
+    private static final int RECORDS = 5;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void tornTailTest() throws IOException {
+        writeRecords();
+        Path log = activeFile(".log");
+        long end = recordsEnd(log, RECORDS);
+
+        // 쓰다 만 레코드(길이는 기록됐지만 header, payload가 일부만 기록됨)
+        try (FileChannel file = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(MessageBatch.RECORD_PREFIX + 4)
+                .putInt(16)
+                .putInt(1024)
+                .putInt(0x12345678)
+                .putLong(System.currentTimeMillis())
+                .putInt(0x0badf00d)
+                .flip();
+            file.write(torn, end);
+        }
+
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(RECORDS, manager.count());
+        assertEquals(end, Files.size(log));
+        assertRecords(manager);
+
+        // 복구 이후에도 이어서 기록
+        assertEquals(RECORDS, manager.write(message(RECORDS)));
+        manager.close();
+    }
+
+    @Test
+    void lostIdxTest() throws IOException {
+        writeRecords();
+        Path idx = activeFile(".idx");
+
+        // idx가 기록되지 않은 경우(preallocate 된 0만 남음) log를 스캔하여 다시 만듦
+        try (FileChannel file = FileChannel.open(idx, StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.allocate((int) file.size()), 0);
+        }
+
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(RECORDS, manager.count());
+        assertRecords(manager);
+        manager.close();
+    }
+
+    @Test
+    void legacyMigrationTest() throws IOException {
+        writeLegacy(false);
+
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(RECORDS, manager.count());
+        assertRecords(manager);
+        assertEquals(RECORDS, manager.write(message(RECORDS)));
+        manager.close();
+
+        // 이전 파일은 제거되고 segments.log는 현재 포맷으로 기록됨
+        assertFalse(Files.exists(root.resolve("0.log")));
+        ByteBuffer segments = ByteBuffer.wrap(Files.readAllBytes(root.resolve("segments.log")));
+        assertEquals(Segment.FORMAT_MARKER, segments.getInt());
+        assertEquals(Segment.FORMAT_VERSION, segments.getInt());
+
+        SegmentManager reopened = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(RECORDS + 1, reopened.count());
+        assertRecords(reopened);
+        reopened.close();
+    }
+
+    @Test
+    void corruptLegacyTest() throws IOException {
+        writeLegacy(true);
+        byte[] segments = Files.readAllBytes(root.resolve("segments.log"));
+        byte[] log = Files.readAllBytes(root.resolve("0.log"));
+        byte[] idx = Files.readAllBytes(root.resolve("0.idx"));
+
+        // 변환할 수 없으면 시작을 중단하고 이전 파일은 그대로 둠
+        assertThrows(IOException.class, () -> new SegmentManager(root, DURATION, RETENTION));
+        assertArrayEquals(segments, Files.readAllBytes(root.resolve("segments.log")));
+        assertArrayEquals(log, Files.readAllBytes(root.resolve("0.log")));
+        assertArrayEquals(idx, Files.readAllBytes(root.resolve("0.idx")));
+    }
+
+    @Test
+    void legacyClientOffsetsTest() throws IOException {
+        writeLegacy(false);
+
+        // 이전 포맷: generation 없이 [client id length][client id][offset] 레코드가 이어짐(같은 client는 마지막 레코드 사용)
+        ByteBuf legacy = Unpooled.buffer();
+        for (Object[] entry : new Object[][] {{"a", 1}, {"b", 2}, {"a", 3}}) {
+            byte[] clientId = ((String) entry[0]).getBytes(StandardCharsets.UTF_8);
+            legacy.writeInt(clientId.length).writeBytes(clientId).writeInt((int) entry[1]);
+        }
+        Files.write(root.resolve("client_offsets.log"), bytes(legacy));
+
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(3, manager.clientOffset("a"));
+        assertEquals(2, manager.clientOffset("b"));
+        manager.commit("b", 3);
+        manager.close();
+        assertFalse(Files.exists(root.resolve("client_offsets.log")));
+
+        SegmentManager reopened = new SegmentManager(root, DURATION, RETENTION);
+        assertEquals(3, reopened.clientOffset("a"));
+        assertEquals(4, reopened.clientOffset("b"));
+        reopened.close();
+    }
+
+    @Test
+    void tailCacheTimestampTest() throws IOException, InterruptedException {
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION, 1024 * 1024);
+        manager.write(message(0));
+        Thread.sleep(30);
+
+        // tail cache에서 읽은 레코드도 조회 시각이 아닌 segment에 기록된 시각을 가짐
+        TopicRecord cached = manager.read(0);
+        assertNotNull(cached);
+        assertEquals(1, manager.tailCache().hits());
+        cached.message().release();
+        manager.close();
+
+        SegmentManager reopened = new SegmentManager(root, DURATION, RETENTION, 0);
+        TopicRecord stored = reopened.read(0);
+        assertNotNull(stored);
+        assertEquals(stored.createdAt(), cached.createdAt());
+        stored.message().release();
+        reopened.close();
+    }
+
+    @Test
+    void timeIndexTest() throws IOException, InterruptedException {
+        Path log = root.resolve("0.log");
+        Path idx = root.resolve("0.idx");
+        long createdAt = System.currentTimeMillis();
+        Segment segment = new Segment(0, log, idx, 0, createdAt);
+        long[] timestamps = new long[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            assertTrue(segment.write(message(i).toFrame()));
+            timestamps[i] = segment.lastTimestamp();
+            Thread.sleep(5);
+        }
+
+        // seal 하면 time index를 .tidx로 기록
+        segment.seal();
+        Path tidx = root.resolve("0.tidx");
+        assertTrue(Files.exists(tidx));
+        byte[] sealed = Files.readAllBytes(tidx);
+        segment.close();
+
+        // 다시 시작한 segment는 .tidx로 복원
+        Segment reopened = new Segment(0, log, idx, 0, createdAt, RECORDS, segment.size(), false, false);
+        assertOffsets(reopened, timestamps);
+        reopened.close();
+
+        // 사용할 수 없는 .tidx는 log의 레코드 시각으로 다시 만들어 기록
+        Files.write(tidx, new byte[] { 1, 2, 3 });
+        Segment rebuilt = new Segment(0, log, idx, 0, createdAt, RECORDS, segment.size(), false, false);
+        assertOffsets(rebuilt, timestamps);
+        assertArrayEquals(sealed, Files.readAllBytes(tidx));
+        rebuilt.clear();
+        assertFalse(Files.exists(tidx));
+    }
+
+    // close 하지 않고(비정상 종료) 레코드를 기록
+    private void writeRecords() throws IOException {
+        SegmentManager manager = new SegmentManager(root, DURATION, RETENTION);
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(i, manager.write(message(i)));
+        }
+
+        assertTrue(manager.force());
+    }
+
+    private void assertRecords(SegmentManager manager) {
+        for (int i = 0; i < RECORDS; i++) {
+            TopicRecord record = manager.read(i);
+            assertNotNull(record);
+            assertEquals(i, record.message().offset());
+            assertEquals("value-" + i, record.message().header("key"));
+            record.message().release();
+        }
+    }
+
+    // 각 레코드의 시각으로 찾으면 그 레코드의 offset, 마지막 레코드 이후 시각은 레코드 수
+    private static void assertOffsets(Segment segment, long[] timestamps) {
+        assertEquals(timestamps[timestamps.length - 1], segment.lastTimestamp());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(i, segment.offsetAt(timestamps[i]));
+        }
+        assertEquals(timestamps.length, segment.offsetAt(timestamps[timestamps.length - 1] + 1));
+    }
+
+    // 가장 최근 segment 파일
+    private Path activeFile(String extension) throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files
+                .filter(path -> path.getFileName().toString().matches("\\d+\\" + extension))
+                .max((a, b) -> Integer.compare(index(a), index(b)))
+                .orElseThrow();
+        }
+    }
+
+    private static int index(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.indexOf('.')));
+    }
+
+    // count개 레코드의 끝 위치
+    private static long recordsEnd(Path log, int count) throws IOException {
+        try (FileChannel file = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES * 2);
+            long position = 0;
+            for (int i = 0; i < count; i++) {
+                file.read(lengths.clear(), position);
+                lengths.flip();
+                position += MessageBatch.RECORD_PREFIX + lengths.getInt() + lengths.getInt();
+            }
+
+            return position;
+        }
+    }
+
+    /**
+     * 이전 포맷 segment를 직접 기록.
+     * segments.log: [index][log path][idx path][startOffset][createdAt], log: [header length][payload length][header][payload], idx: 레코드 위치
+     * @param corrupt 마지막 idx 엔트리가 log 범위를 벗어나도록 기록
+     */
+    private void writeLegacy(boolean corrupt) throws IOException {
+        Path log = root.resolve("0.log");
+        Path idx = root.resolve("0.idx");
+        ByteBuf logBuf = Unpooled.buffer();
+        ByteBuf idxBuf = Unpooled.buffer();
+        for (int i = 0; i < RECORDS; i++) {
+            idxBuf.writeLong(logBuf.writerIndex());
+
+            ByteBuf header = Unpooled.buffer();
+            message(i).addHeader("offset", String.valueOf(i)).writeHeader(header);
+            byte[] payload = ("payload-" + i).getBytes(StandardCharsets.UTF_8);
+            logBuf.writeInt(header.readableBytes())
+                .writeInt(payload.length)
+                .writeBytes(header)
+                .writeBytes(payload);
+        }
+
+        if (corrupt) {
+            idxBuf.setLong(idxBuf.writerIndex() - Long.BYTES, logBuf.writerIndex() + 100);
+        }
+
+        byte[] logPath = log.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] idxPath = idx.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuf segmentsBuf = Unpooled.buffer()
+            .writeInt(0)
+            .writeInt(logPath.length).writeBytes(logPath)
+            .writeInt(idxPath.length).writeBytes(idxPath)
+            .writeInt(0)
+            .writeLong(System.currentTimeMillis());
+
+        Files.write(log, bytes(logBuf));
+        Files.write(idx, bytes(idxBuf));
+        Files.write(root.resolve("segments.log"), bytes(segmentsBuf));
+    }
+
+    private static byte[] bytes(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        return bytes;
+    }
+
+    private static Message message(int i) {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName("topic")
+            .partition("1")
+            .header("key", "value-" + i)
+            .payload("payload-" + i)
+            .build();
+    }
+}
@@ -0,0 +1,124 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.disk.segment.TailCache;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * partition tail cache의 제거, 이어지지 않는 offset, 한도보다 큰 레코드 테스트.
+ */
+public class TailCacheTest {
+
+    private static final int PAYLOAD = 10;
+
+    @Test
+    void evictionTest() {
+        // 레코드 3개 크기의 한도, 한도를 넘으면 가장 오래된 레코드부터 제거
+        int recordBytes = record(0).length;
+        TailCache cache = new TailCache(recordBytes * 3);
+        for (int offset = 0; offset < 100; offset++) {
+            append(cache, offset);
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(recordBytes * 3, cache.bytes());
+        assertNull(cache.get(96));
+        for (int offset = 97; offset < 100; offset++) {
+            assertCached(cache, offset);
+        }
+        assertNull(cache.get(100));
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void nonContiguousTest() {
+        TailCache cache = new TailCache(1024 * 1024);
+        for (int offset = 0; offset < 5; offset++) {
+            append(cache, offset);
+        }
+
+        // 이어지지 않는 offset(다른 곳에서 기록된 뒤 다시 시작한 경우 등)은 캐시를 비우고 그 offset부터 다시 시작
+        append(cache, 10);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(4));
+        assertCached(cache, 10);
+
+        append(cache, 11);
+        assertEquals(2, cache.size());
+        assertCached(cache, 11);
+    }
+
+    @Test
+    void oversizeTest() {
+        int recordBytes = record(0).length;
+        TailCache cache = new TailCache(recordBytes * 2);
+        append(cache, 0);
+        append(cache, 1);
+
+        // 한도보다 큰 레코드는 보관하지 않고 캐시를 비움, 다음 offset부터 이어서 보관
+        byte[] large = record(2, recordBytes * 2);
+        cache.append(2, large, headerLength(), 2);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+
+        append(cache, 3);
+        assertEquals(1, cache.size());
+        assertCached(cache, 3);
+    }
+
+    private static void append(TailCache cache, int offset) {
+        cache.append(offset, record(offset), headerLength(), offset);
+    }
+
+    private static void assertCached(TailCache cache, int offset) {
+        TopicRecord record = cache.get(offset);
+        assertNotNull(record);
+        assertEquals(offset, record.message().offset());
+        assertEquals(offset, record.createdAt());
+        assertEquals("v", record.message().header("k"));
+
+        byte[] expected = new byte[PAYLOAD];
+        expected[0] = (byte) offset;
+        assertArrayEquals(expected, ByteBufUtil.getBytes((ByteBuf) record.message().payload()));
+        record.message().release();
+    }
+
+    // segment log와 같은 [header][payload] 바이트, payload 첫 바이트는 offset
+    private static byte[] record(int offset) {
+        return record(offset, PAYLOAD);
+    }
+
+    private static byte[] record(int offset, int payloadLength) {
+        ByteBuf buf = Unpooled.buffer();
+        header().writeHeader(buf);
+        buf.writeByte(offset).writeZero(payloadLength - 1);
+        return ByteBufUtil.getBytes(buf);
+    }
+
+    private static int headerLength() {
+        ByteBuf buf = Unpooled.buffer();
+        header().writeHeader(buf);
+        return buf.readableBytes();
+    }
+
+    private static Message header() {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .header("k", "v")
+            .build();
+    }
+}
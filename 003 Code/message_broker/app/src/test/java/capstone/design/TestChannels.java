@@ -0,0 +1,127 @@
+package capstone.design;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageDecoder;
+import capstone.design.message.MessageEncoder;
+import capstone.design.message.MessageType;
+import capstone.design.message.Protocol;
+import capstone.design.netty.server.ServerInboundHandler;
+import capstone.design.topic.TopicManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * EmbeddedChannel로 브로커 요청/응답을 주고받는 테스트 공용 메서드.
+ */
+final class TestChannels {
+
+    private TestChannels() {}
+
+    static EmbeddedChannel serverChannel(TopicManager topicManager) {
+        return new EmbeddedChannel(
+            new MessageDecoder(),
+            new ServerInboundHandler(topicManager),
+            new MessageEncoder()
+        );
+    }
+
+    static Message pushMessage(String topicName, byte[] payload) {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName(topicName)
+            .partition(0)
+            .clientId("tester")
+            .payload(payload)
+            .build();
+    }
+
+    // 에러 없는 RES_PUSH 응답 확인
+    static void assertResponse(EmbeddedChannel channel) {
+        Message message = decode(collect(channel));
+        assertEquals(MessageType.RES_PUSH, message.type());
+        assertEquals(null, message.header("error"));
+    }
+
+    static ByteBuf encode(Message message) {
+        return encode(message, Protocol.V1);
+    }
+
+    static ByteBuf encode(Message message, Protocol protocol) {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageEncoder());
+        channel.attr(Protocol.KEY).set(protocol);
+        channel.writeOutbound(message);
+
+        ByteBuf out = collect(channel);
+        channel.finishAndReleaseAll();
+
+        return out;
+    }
+
+    // response를 디코딩 후 해제(payload는 사용할 수 없음)
+    static Message decode(ByteBuf response) {
+        try {
+            Message message = new MessageDecoder().decode(response);
+            assertNotNull(message);
+            message.release();
+            return message;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            response.release();
+        }
+    }
+
+    // payload(response의 slice)를 유지한 채로 디코딩, 사용 후 message.release() 필요
+    static Message decodeRetained(ByteBuf response) {
+        try {
+            Message message = new MessageDecoder().decode(response);
+            assertNotNull(message);
+            return message;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // outbound로 쓰인 ByteBuf, FileRegion을 하나의 버퍼로 모음
+    static ByteBuf collect(EmbeddedChannel channel) {
+        ByteBuf out = Unpooled.buffer();
+        Object part;
+        while ((part = channel.readOutbound()) != null) {
+            if (part instanceof FileRegion region) {
+                transfer(region, out);
+                continue;
+            }
+
+            ByteBuf buf = (ByteBuf) part;
+            out.writeBytes(buf);
+            buf.release();
+        }
+
+        return out;
+    }
+
+    private static void transfer(FileRegion region, ByteBuf out) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(bytes);
+            while (region.transferred() < region.count()) {
+                region.transferTo(target, region.transferred());
+            }
+            out.writeBytes(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } finally {
+            region.release();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.decode;
+import static capstone.design.TestChannels.encode;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.Topic;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.memory.MemoryTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * TopicManager의 요청 처리 순서 테스트(partition 로딩 대기).
+ */
+public class TopicManagerTest {
+
+    static final String NAME = "manager_test";
+
+    @Test
+    void readyTest() {
+        // ready()만 바꾸고 나머지는 MemoryTopic에 위임(로딩 중인 DiskTopic partition과 같은 상태)
+        MemoryTopic memoryTopic = MemoryTopic.of(NAME);
+        CompletableFuture<Void> loading = new CompletableFuture<>();
+        Topic topic = (Topic) Proxy.newProxyInstance(Topic.class.getClassLoader(), new Class<?>[] { Topic.class }, (proxy, method, args) -> {
+            if (method.getName().equals("ready")) {
+                return loading;
+            }
+
+            try {
+                return method.invoke(memoryTopic, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+        TopicManager topicManager = TopicManager.of(Map.of(NAME, topic));
+        EmbeddedChannel channel = TestChannels.serverChannel(topicManager);
+
+        // 로딩이 끝날 때까지 event loop는 대기하지 않고 응답을 미루며 읽기를 멈춤
+        ByteBuf first = encode(pushMessage(NAME, new byte[] { 1 }));
+        channel.writeInbound(first);
+        channel.writeInbound(encode(pushMessage(NAME, new byte[] { 2 })));
+        assertNull(channel.readOutbound());
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, first.refCnt());
+        assertEquals(0, memoryTopic.count("0", null));
+
+        // 로딩이 끝나면 받은 순서대로 처리하고 읽기를 재개
+        loading.complete(null);
+        channel.runPendingTasks();
+        Message response = decode(collect(channel));
+        assertEquals(MessageType.RES_PUSH, response.type());
+        assertEquals(1, response.offset());
+        assertTrue(channel.config().isAutoRead());
+        assertEquals(2, memoryTopic.count("0", null));
+
+        TopicRecord record = memoryTopic.peek("0", "tester", null);
+        assertNotNull(record);
+        assertArrayEquals(new byte[] { 1 }, (byte[]) record.message().payload());
+
+        topicManager.shutdownNow();
+        channel.finishAndReleaseAll();
+    }
+}
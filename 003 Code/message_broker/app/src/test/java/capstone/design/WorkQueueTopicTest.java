@@ -0,0 +1,183 @@
+package capstone.design;
+
+import static capstone.design.TestChannels.assertResponse;
+import static capstone.design.TestChannels.collect;
+import static capstone.design.TestChannels.decode;
+import static capstone.design.TestChannels.decodeRetained;
+import static capstone.design.TestChannels.encode;
+import static capstone.design.TestChannels.pushMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageBatch;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicBatch;
+import capstone.design.topic.TopicManager;
+import capstone.design.topic.TopicRecord;
+import capstone.design.topic.memory.MemoryTopic;
+import capstone.design.topic.memory.WorkQueueTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 작업 큐 토픽의 lease, ack, 재전달, 만료 테스트.
+ */
+public class WorkQueueTopicTest {
+
+    static final String QUEUE = "queue_test";
+    static final String MEMORY = "queue_test_memory";
+
+    WorkQueueTopic queueTopic;
+    TopicManager topicManager;
+
+    @BeforeEach
+    void beforeEach() {
+        queueTopic = WorkQueueTopic.of(QUEUE, 60 * 1000, 200);
+        topicManager = TopicManager.of(Map.of(QUEUE, queueTopic, MEMORY, MemoryTopic.of(MEMORY)));
+    }
+
+    @AfterEach
+    void afterEach() {
+        topicManager.shutdownNow();
+    }
+
+    @Test
+    void ackTest() throws InterruptedException {
+        EmbeddedChannel channel = TestChannels.serverChannel(topicManager);
+        for (int i = 0; i < 2; i++) {
+            channel.writeInbound(encode(pushMessage(QUEUE, new byte[] { (byte) i })));
+            assertResponse(channel);
+        }
+
+        // 같은 레코드를 두 worker에게 동시에 전달하지 않아야 함
+        assertEquals(1, pullOne(channel, "worker-a").offset());
+        assertEquals(2, pullOne(channel, "worker-b").offset());
+
+        // lease 소유자만 ack 할 수 있음
+        assertEquals(0, ack(channel, "worker-b", 1).count());
+        Message acked = ack(channel, "worker-a", 1);
+        assertNull(acked.header("error"));
+        assertEquals(1, acked.count());
+
+        // ack 하지 않은 레코드는 visibility timeout 이후 다른 worker에게 다시 전달
+        Thread.sleep(400);
+        Message redelivered = pullOne(channel, "worker-c");
+        assertEquals(2, redelivered.offset());
+        assertEquals("true", redelivered.header("redelivered"));
+        assertEquals(0, ack(channel, "worker-b", 2).count());
+        assertEquals(1, ack(channel, "worker-c", 2).count());
+        assertEquals(0, queueTopic.count("0", null));
+
+        // 작업 큐가 아닌 토픽은 ack를 지원하지 않음
+        Message request = Message.builder()
+            .type(MessageType.REQ_ACK)
+            .topicName(MEMORY)
+            .partition(0)
+            .clientId("worker-a")
+            .offset(1)
+            .build();
+        channel.writeInbound(encode(request));
+        assertNotNull(decode(collect(channel)).header("error"));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void expiredLeaseTest() {
+        queueTopic.push("0", pushMessage(QUEUE, new byte[] { 1 }));
+        TopicRecord record = queueTopic.peek("0", "worker-a", null);
+        assertNotNull(record);
+        assertEquals(1, queueTopic.leased("0"));
+
+        // lease 중에 보관 기간이 지나 제거된 레코드는 lease도 함께 정리되어 이후 레코드를 가리지 않음
+        queueTopic.clean(System.currentTimeMillis() + 2 * (60 * 1000));
+        assertEquals(0, queueTopic.leased("0"));
+        queueTopic.push("0", pushMessage(QUEUE, new byte[] { 2 }));
+        assertEquals(1, queueTopic.count("0", null));
+        assertEquals(0, queueTopic.ack("0", "worker-a", record.message().offset(), 1));
+    }
+
+    @Test
+    void batchLeftoverTest() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            queueTopic.push("0", pushMessage(QUEUE, new byte[100]));
+        }
+
+        // 두 번째 레코드는 maxBytes를 넘으므로 담지 않고 lease를 반납
+        TopicBatch batch = queueTopic.peekBatch("0", "worker-a", 10, 150);
+        assertNotNull(batch);
+        assertEquals(1, batch.count());
+        batch.release();
+        assertEquals(1, queueTopic.leased("0"));
+
+        // 한 번도 전달되지 않은 레코드이므로 redelivered header 없이 순서대로 전달
+        TopicRecord leftover = queueTopic.peek("0", "worker-b", null);
+        assertNotNull(leftover);
+        assertEquals(2, leftover.message().offset());
+        assertNull(leftover.message().header("redelivered"));
+
+        // 재전달 중 담지 못한 레코드는 다음 전달에도 redelivered header 유지
+        Thread.sleep(400);
+        batch = queueTopic.peekBatch("0", "worker-c", 10, 150);
+        assertNotNull(batch);
+        assertEquals(1, batch.offset());
+        assertEquals(1, batch.count());
+        batch.release();
+
+        TopicRecord redelivered = queueTopic.peek("0", "worker-c", null);
+        assertNotNull(redelivered);
+        assertEquals(2, redelivered.message().offset());
+        assertEquals("true", redelivered.message().header("redelivered"));
+
+        TopicRecord next = queueTopic.peek("0", "worker-c", null);
+        assertNotNull(next);
+        assertEquals(3, next.message().offset());
+        assertNull(next.message().header("redelivered"));
+    }
+
+    // REQ_PULL_BATCH로 레코드 하나를 lease 받아 반환(payload 제외)
+    private static Message pullOne(EmbeddedChannel channel, String clientId) {
+        Message request = Message.builder()
+            .type(MessageType.REQ_PULL_BATCH)
+            .topicName(QUEUE)
+            .partition(0)
+            .clientId(clientId)
+            .count(1)
+            .build();
+        channel.writeInbound(encode(request));
+
+        ByteBuf response = collect(channel);
+        Message message = decodeRetained(response);
+        assertEquals(MessageType.RES_PULL_BATCH, message.type());
+        assertEquals(1, message.count());
+
+        List<Message> records = MessageBatch.decode((ByteBuf) message.payload());
+        Message record = records.get(0).release();
+        message.release();
+        response.release();
+        return record;
+    }
+
+    private static Message ack(EmbeddedChannel channel, String clientId, int offset) {
+        Message request = Message.builder()
+            .type(MessageType.REQ_ACK)
+            .topicName(QUEUE)
+            .partition(0)
+            .clientId(clientId)
+            .offset(offset)
+            .build();
+        channel.writeInbound(encode(request));
+
+        Message response = decode(collect(channel));
+        assertEquals(MessageType.RES_ACK, response.type());
+        return response;
+    }
+}
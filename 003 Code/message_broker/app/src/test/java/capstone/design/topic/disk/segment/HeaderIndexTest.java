@@ -0,0 +1,123 @@
+package capstone.design.topic.disk.segment;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * segment header 색인(.hidx)의 기록과 다시 읽기, bloom filter, 사용할 수 없는 파일 처리 테스트.
+ * broker.segment.indexKeys와 관계없이 key 목록을 직접 지정하므로 같은 package에 둠.
+ */
+public class HeaderIndexTest {
+
+    private static final List<String> KEYS = List.of("k");
+    private static final int RECORDS = 100;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void persistenceTest() throws IOException {
+        Path file = root.resolve("0.hidx");
+        HeaderIndex index = writeIndex(file);
+
+        // active: 메모리 배열, seal 이후: 정렬된 파일을 이진 탐색
+        int[] expected = offsets(3);
+        assertArrayEquals(expected, index.candidates(HeaderIndex.hash("k", "v3"), RECORDS));
+        assertTrue(index.seal(RECORDS));
+        assertTrue(Files.exists(file));
+        assertArrayEquals(expected, index.candidates(HeaderIndex.hash("k", "v3"), RECORDS));
+        assertArrayEquals(offsets(0), index.candidates(HeaderIndex.hash("k", "v0"), RECORDS));
+
+        // 다시 시작한 경우 log를 읽지 않고 파일로 조회
+        HeaderIndex reloaded = new HeaderIndex(file, KEYS);
+        assertTrue(reloaded.seal(RECORDS));
+        for (int value = 0; value < 10; value++) {
+            assertArrayEquals(offsets(value), reloaded.candidates(HeaderIndex.hash("k", "v" + value), RECORDS));
+        }
+    }
+
+    @Test
+    void bloomSkipTest() throws IOException {
+        HeaderIndex index = writeIndex(root.resolve("0.hidx"));
+        assertTrue(index.seal(RECORDS));
+
+        // 색인에 없는 값은 bloom filter로 엔트리를 읽지 않고 건너뜀
+        assertArrayEquals(new int[0], index.candidates(HeaderIndex.hash("k", "missing"), RECORDS));
+        assertArrayEquals(new int[0], index.candidates(HeaderIndex.hash("other", "v3"), RECORDS));
+        assertEquals(2, index.bloomSkips());
+
+        index.candidates(HeaderIndex.hash("k", "v3"), RECORDS);
+        assertEquals(2, index.bloomSkips());
+    }
+
+    @Test
+    void unusableFileTest() throws IOException {
+        Path file = root.resolve("0.hidx");
+        assertTrue(writeIndex(file).seal(RECORDS));
+        byte[] valid = Files.readAllBytes(file);
+
+        // 레코드 수가 다른 파일(비정상 종료 후 segment에 레코드가 더 있는 경우)
+        HeaderIndex index = new HeaderIndex(file, KEYS);
+        assertFalse(index.seal(RECORDS + 1));
+        assertNull(index.candidates(HeaderIndex.hash("k", "v3"), RECORDS + 1));
+
+        // key 목록이 다른 파일
+        assertFalse(new HeaderIndex(file, List.of("k", "other")).seal(RECORDS));
+
+        // 정렬되지 않은 이전 format, 잘린 파일
+        ByteBuffer legacy = ByteBuffer.wrap(valid.clone());
+        legacy.putInt(0, RECORDS);
+        Files.write(file, legacy.array());
+        assertFalse(new HeaderIndex(file, KEYS).seal(RECORDS));
+
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertFalse(new HeaderIndex(file, KEYS).seal(RECORDS));
+
+        // 사용할 수 없으면 호출자(Segment)가 log로 다시 만들고, 다시 만든 색인은 파일을 교체
+        HeaderIndex rebuilt = writeIndex(file);
+        assertTrue(rebuilt.seal(RECORDS));
+        assertArrayEquals(valid, Files.readAllBytes(file));
+    }
+
+    // RECORDS개 레코드(k = v0..v9 반복, 7의 배수 offset은 k 없음)를 색인, key 없는 레코드도 레코드 수에 포함
+    private static HeaderIndex writeIndex(Path file) {
+        HeaderIndex index = new HeaderIndex(file, KEYS);
+        for (int i = 0; i < RECORDS; i++) {
+            Message.Builder builder = Message.builder().type(MessageType.REQ_PUSH).topicName("topic");
+            if (i % 7 != 0) {
+                builder.header("k", "v" + (i % 10));
+            }
+
+            ByteBuf header = Unpooled.buffer();
+            builder.build().writeHeader(header);
+            index.add(header, 0, i);
+        }
+
+        return index;
+    }
+
+    // k = "v" + value인 레코드의 offset
+    private static int[] offsets(int value) {
+        return IntStream.range(0, RECORDS)
+            .filter(i -> i % 7 != 0 && i % 10 == value)
+            .toArray();
+    }
+}
@@ -0,0 +1,166 @@
+package capstone.design.topic.memory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import capstone.design.message.Message;
+import capstone.design.message.MessageType;
+import capstone.design.topic.TopicRecord;
+
+/**
+ * MemoryTopic partition ring buffer의 wraparound, 확장/축소, tombstone, head 이동 테스트.
+ * MemoryPartition이 package-private이므로 같은 package에 둠.
+ */
+public class MemoryPartitionTest {
+
+    @Test
+    void wraparoundTest() {
+        MemoryPartition partition = new MemoryPartition();
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, partition.append(message(i)));
+        }
+
+        // 앞쪽을 비운 뒤 추가하면 크기를 늘리지 않고 ring의 앞쪽 슬롯을 다시 사용
+        partition.remove(1, 8);
+        assertEquals(9, partition.head());
+        for (int i = 11; i <= 24; i++) {
+            partition.append(message(i));
+        }
+
+        assertEquals(16, partition.capacity());
+        assertEquals(16, partition.size());
+        assertRecords(partition, 9, 24);
+        assertNull(partition.get(8));
+        assertNull(partition.get(25));
+    }
+
+    @Test
+    void growTest() {
+        MemoryPartition partition = new MemoryPartition();
+        for (int i = 1; i <= 100; i++) {
+            partition.append(message(i));
+        }
+
+        // 가득 차면 2배로 늘리고 offset 위치를 유지
+        assertEquals(128, partition.capacity());
+        assertEquals(1, partition.head());
+        assertEquals(101, partition.tail());
+        assertRecords(partition, 1, 100);
+
+        // 사용 중인 범위가 1/4 이하가 되면 줄임
+        partition.remove(1, 90);
+        assertEquals(91, partition.head());
+        assertEquals(32, partition.capacity());
+        assertRecords(partition, 91, 100);
+
+        assertEquals(10, partition.clear());
+        assertEquals(101, partition.head());
+        assertEquals(101, partition.tail());
+        assertEquals(101, partition.append(message(101)));
+    }
+
+    @Test
+    void tombstoneTest() {
+        MemoryPartition partition = new MemoryPartition();
+        for (int i = 1; i <= 8; i++) {
+            partition.append(message(i));
+        }
+
+        // 중간 레코드를 commit(ack) 하면 슬롯만 비우고 head는 유지
+        assertEquals(2, partition.remove(4, 5));
+        assertEquals(6, partition.size());
+        assertEquals(1, partition.head());
+        assertNull(partition.get(4));
+        assertNull(partition.get(5));
+
+        // eviction으로 head를 제거하면 다음 레코드로 이동
+        assertEquals(1, partition.removeFirst());
+        assertEquals(2, partition.head());
+
+        // 앞쪽을 commit 하면 head는 tombstone을 건너뛰어 남아 있는 레코드에 위치
+        partition.remove(2, 3);
+        assertEquals(6, partition.head());
+        assertNotNull(partition.get(6));
+        assertEquals(3, partition.size());
+
+        partition.remove(6, 8);
+        assertEquals(-1, partition.removeFirst());
+        assertEquals(9, partition.head());
+        assertEquals(9, partition.tail());
+    }
+
+    @Test
+    void headCreatedAtTest() throws InterruptedException {
+        MemoryPartition partition = new MemoryPartition();
+        assertEquals(Long.MAX_VALUE, partition.headCreatedAt());
+
+        long[] createdAt = new long[7];
+        for (int i = 1; i <= 6; i++) {
+            partition.append(message(i));
+            createdAt[i] = partition.get(i).createdAt();
+            Thread.sleep(5);
+        }
+
+        // head가 비워지면 남아 있는 첫 레코드의 시각(MessageCleaner는 이 시각으로 만료 여부를 판단)
+        partition.remove(2, 3);
+        assertEquals(createdAt[1], partition.headCreatedAt());
+        partition.removeFirst();
+        assertEquals(createdAt[4], partition.headCreatedAt());
+
+        // 만료된 레코드는 head부터 제거하며 만료되지 않은 첫 레코드에서 멈춤
+        assertEquals(1, partition.removeExpired(0, createdAt[5]));
+        assertEquals(5, partition.head());
+        assertEquals(createdAt[5], partition.headCreatedAt());
+        assertEquals(0, partition.removeExpired(0, createdAt[5]));
+
+        partition.clear();
+        assertEquals(Long.MAX_VALUE, partition.headCreatedAt());
+    }
+
+    @Test
+    void offsetAtTest() throws InterruptedException {
+        MemoryPartition partition = new MemoryPartition();
+        long[] createdAt = new long[11];
+        for (int i = 1; i <= 10; i++) {
+            partition.append(message(i));
+            createdAt[i] = partition.get(i).createdAt();
+            Thread.sleep(5);
+        }
+
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, partition.offsetAt(createdAt[i]));
+        }
+        assertEquals(1, partition.offsetAt(0));
+        assertEquals(11, partition.offsetAt(createdAt[10] + 1));
+
+        // commit 된 레코드의 시각은 그 다음에 남아 있는 레코드로 찾음
+        partition.remove(4, 6);
+        partition.remove(9, 10);
+        assertEquals(7, partition.offsetAt(createdAt[4]));
+        assertEquals(7, partition.offsetAt(createdAt[6]));
+        assertEquals(3, partition.offsetAt(createdAt[3]));
+        assertEquals(11, partition.offsetAt(createdAt[9]));
+    }
+
+    // [from, to] 범위의 레코드가 저장한 payload를 가지는지 확인
+    private static void assertRecords(MemoryPartition partition, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            TopicRecord record = partition.get(i);
+            assertNotNull(record);
+            assertEquals(i, record.message().offset());
+            assertArrayEquals(new byte[] { (byte) i }, (byte[]) record.message().payload());
+        }
+    }
+
+    private static Message message(int i) {
+        return Message.builder()
+            .type(MessageType.REQ_PUSH)
+            .topicName("partition_test")
+            .payload(new byte[] { (byte) i })
+            .build();
+    }
+}